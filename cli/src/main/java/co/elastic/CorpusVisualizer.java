@@ -0,0 +1,177 @@
+package co.elastic;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import co.elastic.lattice.LatticePruning;
+import co.elastic.render.GraphvizExecutable;
+import co.elastic.render.OutputFormat;
+import co.elastic.render.Renderer;
+import co.elastic.render.Renderers;
+
+/**
+ * Visualizes every line of a corpus file, one sentence per line.
+ *
+ * The file is streamed, so its size doesn't matter. Lines are handed to a fixed number of worker
+ * threads through a bounded window; each worker borrows a tokenizer from a pool sized to the
+ * workers and renders with a dot process that it waits for before taking the next line, so at
+ * most {@code workers} dot processes run at any time. Outputs are named after the line number
+ * ({@code line_000001.jpg}), blank lines are skipped, and failures are written to
+ * {@code failures.txt} in the output directory.
+ */
+public class CorpusVisualizer {
+
+  private static final int MAX_TRACKED_MILLIS = 60000;
+
+  private final String outputPath;
+  private final String modeStr;
+  private final String lang;
+  private final String userDictPath;
+  private final Renderer renderer;
+  private final LatticePruning pruning;
+  private final int workers;
+
+  private final AtomicInteger succeeded = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicLong totalMillis = new AtomicLong();
+  // Per-item latency histogram in milliseconds, so the summary costs the same for any corpus size.
+  private final AtomicLongArray latencies = new AtomicLongArray(MAX_TRACKED_MILLIS + 1);
+
+  public CorpusVisualizer(String osname, String outputPath, String modeStr, String lang,
+      String userDictPath, String renderer, OutputFormat format, LatticePruning pruning, int workers) {
+    this.outputPath = outputPath;
+    this.modeStr = modeStr;
+    this.lang = lang;
+    this.userDictPath = userDictPath;
+    this.renderer = Renderers.create(GraphvizExecutable.resolve(osname, ""), renderer, format);
+    this.pruning = pruning;
+    this.workers = workers;
+  }
+
+  public void visualize(String inputPath) throws IOException {
+    CompiledUserDictionary userDict = null;
+    if (!userDictPath.equals("")) {
+      userDict = CompiledUserDictionary.compile(lang, Files.readAllBytes(Paths.get(userDictPath)));
+    }
+
+    long start = System.nanoTime();
+    int lines = 0;
+    int skipped = 0;
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    // Keeps the reader at most a couple of lines per worker ahead of the workers.
+    Semaphore window = new Semaphore(workers * 2);
+
+    try (TokenizerPool tokenizerPool = new TokenizerPool(workers, workers * 2, 60000);
+        BufferedReader reader = Files.newBufferedReader(Paths.get(inputPath), StandardCharsets.UTF_8);
+        Writer failures = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(outputPath + "failures.txt"), StandardCharsets.UTF_8))) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        if (line.trim().isEmpty()) {
+          skipped++;
+          continue;
+        }
+
+        window.acquire();
+        int lineNumber = lines;
+        String text = line;
+        CompiledUserDictionary dict = userDict;
+        executor.execute(() -> {
+          try {
+            visualizeLine(lineNumber, text, dict, tokenizerPool, failures);
+          } finally {
+            window.release();
+          }
+        });
+      }
+
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      executor.shutdownNow();
+      throw new IOException("Interrupted while visualizing " + inputPath, e);
+    }
+
+    if (failed.get() == 0) {
+      new File(outputPath + "failures.txt").delete();
+    }
+    printSummary(lines, skipped, (System.nanoTime() - start) / 1000000);
+  }
+
+  private void visualizeLine(int lineNumber, String text, CompiledUserDictionary userDict,
+      TokenizerPool tokenizerPool, Writer failures) {
+    long start = System.nanoTime();
+    File output = new File(outputPath + String.format("line_%06d.%s", lineNumber,
+        renderer.getFileExtension()));
+
+    try (OutputStream out = new FileOutputStream(output)) {
+      LatticeVisualizer visualizer = new LatticeVisualizer(modeStr, text, lang, userDict, tokenizerPool,
+          renderer);
+      visualizer.setPruning(pruning);
+      visualizer.visualize(out);
+      succeeded.incrementAndGet();
+    } catch (IOException | RuntimeException e) {
+      failed.incrementAndGet();
+      output.delete();
+      synchronized (failures) {
+        try {
+          failures.write(lineNumber + "\t" + e + "\n");
+        } catch (IOException e1) {
+          System.out.println(e1.getMessage());
+        }
+      }
+    }
+
+    long millis = (System.nanoTime() - start) / 1000000;
+    totalMillis.addAndGet(millis);
+    latencies.incrementAndGet((int) Math.min(millis, MAX_TRACKED_MILLIS));
+  }
+
+  private void printSummary(int lines, int skipped, long elapsedMillis) {
+    int done = succeeded.get() + failed.get();
+    System.out.println("------- corpus summary");
+    System.out.println("lines:      " + lines + " (" + skipped + " blank, skipped)");
+    System.out.println("succeeded:  " + succeeded.get());
+    System.out.println("failed:     " + failed.get()
+        + (failed.get() > 0 ? " (see " + outputPath + "failures.txt)" : ""));
+    System.out.println("workers:    " + workers);
+    System.out.println("elapsed:    " + elapsedMillis + " ms"
+        + (elapsedMillis > 0 ? String.format(" (%.1f lines/s)", done * 1000.0 / elapsedMillis) : ""));
+    if (done > 0) {
+      System.out.println("per line:   avg " + totalMillis.get() / done + " ms, p50 " + percentile(done, 0.5)
+          + " ms, p95 " + percentile(done, 0.95) + " ms, p99 " + percentile(done, 0.99) + " ms, max "
+          + percentile(done, 1.0) + " ms");
+    }
+  }
+
+  private long percentile(int count, double quantile) {
+    long rank = Math.max(1, (long) Math.ceil(count * quantile));
+    long seen = 0;
+    for (int millis = 0; millis <= MAX_TRACKED_MILLIS; millis++) {
+      seen += latencies.get(millis);
+      if (seen >= rank) {
+        return millis;
+      }
+    }
+    return MAX_TRACKED_MILLIS;
+  }
+}
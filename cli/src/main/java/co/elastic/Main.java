@@ -0,0 +1,272 @@
+package co.elastic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import co.elastic.analysis.TokenStreamWriter;
+import co.elastic.corpus.CorpusAnalyzer;
+import co.elastic.corpus.CorpusStats;
+import co.elastic.lattice.LatticePruning;
+import co.elastic.render.OutputFormat;
+import co.elastic.render.Renderers;
+
+public class Main {
+
+  private final static String osName = System.getProperty("os.name");
+
+  public static void main(String[] args) {
+
+    String option;
+    String outputPath = System.getProperty("user.dir");
+    String modeStr = "";
+    String text = "";
+    String lang = "";
+    String userDictPath = "";
+    String renderer = "graphviz";
+    OutputFormat format = null;
+    LatticePruning pruning = LatticePruning.NONE;
+    String inputPath = "";
+    int workers = Runtime.getRuntime().availableProcessors();
+    boolean streamTokens = false;
+    boolean analyzeCorpus = false;
+    int top = 100;
+
+    if (args.length < 1) {
+      help();
+    } else {
+      for (int i = 0; i < args.length; i++) {
+        option = args[i];
+
+        if (option.equalsIgnoreCase("-o")) {
+          i++;
+          outputPath = args[i];
+          if (!outputPath.endsWith(File.separator))
+            outputPath += File.separator;
+        } else if (option.equalsIgnoreCase("-h") || option.equalsIgnoreCase("--help")) {
+          i++;
+          help();
+        } else if (option.equalsIgnoreCase("-m")) {
+          i++;
+          modeStr = args[i];
+          if (!modeStr.equalsIgnoreCase("none") && !modeStr.equalsIgnoreCase("discard") &&
+              !modeStr.equalsIgnoreCase("mixed") && !modeStr.equalsIgnoreCase("normal") &&
+              !modeStr.equalsIgnoreCase("search") && !modeStr.equalsIgnoreCase("extended")) {
+            System.out.println("The mode \"" + modeStr + "\" doesn't exist.");
+            System.exit(0);
+          }
+        } else if (option.equalsIgnoreCase("-t")) {
+          i++;
+          text = args[i];
+        } else if (option.equalsIgnoreCase("-l")) {
+          i++;
+          lang = args[i];
+          if (!lang.equalsIgnoreCase("ko") && !lang.equalsIgnoreCase("ja")) {
+            System.out
+                .println("The language \"" + lang + " doesn't match one of supported language.");
+            System.exit(0);
+          }
+        } else if (option.equalsIgnoreCase("-d")) {
+          i++;
+          userDictPath = args[i];
+        } else if (option.equalsIgnoreCase("-r")) {
+          i++;
+          renderer = args[i];
+          if (!renderer.equalsIgnoreCase("graphviz") && !renderer.equalsIgnoreCase("svg")) {
+            System.out.println("The renderer \"" + renderer + "\" doesn't exist.");
+            System.exit(0);
+          }
+        } else if (option.equalsIgnoreCase("-e")) {
+          i++;
+          try {
+            format = OutputFormat.parse(args[i]);
+          } catch (IllegalArgumentException e) {
+            System.out.println("The output format \"" + args[i] + "\" doesn't exist.");
+            System.exit(0);
+          }
+        } else if (option.equalsIgnoreCase("-p")) {
+          i++;
+          try {
+            pruning = LatticePruning.parse(args[i]);
+          } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(0);
+          }
+        } else if (option.equalsIgnoreCase("-f")) {
+          i++;
+          inputPath = args[i];
+        } else if (option.equalsIgnoreCase("-w")) {
+          i++;
+          try {
+            workers = Integer.parseInt(args[i]);
+          } catch (NumberFormatException e) {
+            workers = 0;
+          }
+          if (workers < 1) {
+            System.out.println("The number of workers should be a positive number.");
+            System.exit(0);
+          }
+        } else if (option.equalsIgnoreCase("-s")) {
+          streamTokens = true;
+        } else if (option.equalsIgnoreCase("-a")) {
+          analyzeCorpus = true;
+        } else if (option.equalsIgnoreCase("-n")) {
+          i++;
+          try {
+            top = Integer.parseInt(args[i]);
+          } catch (NumberFormatException e) {
+            top = 0;
+          }
+          if (top < 1) {
+            System.out.println("The number of top tokens should be a positive number.");
+            System.exit(0);
+          }
+        } else {
+          System.out.println("Illegal option: " + args[i]);
+        }
+      }
+    }
+
+    if (analyzeCorpus) {
+      if (text.length() == 0 && inputPath.length() == 0) {
+        System.out.println("Text should be set by using -t option or a file by using -f option.");
+        System.exit(0);
+      }
+      try {
+        analyzeCorpus(text, inputPath, modeStr, lang, userDictPath, workers, top);
+      } catch (IOException | IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+      }
+      return;
+    }
+
+    if (streamTokens) {
+      if (text.length() == 0 && inputPath.length() == 0) {
+        System.out.println("Text should be set by using -t option or a file by using -f option.");
+        System.exit(0);
+      }
+      try {
+        streamTokens(text, inputPath, modeStr, lang, userDictPath);
+      } catch (IOException e) {
+        System.out.println(e.getMessage());
+      }
+      return;
+    }
+
+    try {
+      format = Renderers.check(renderer, format);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(0);
+    }
+
+    if (inputPath.length() > 0) {
+      CorpusVisualizer corpusVisualizer = new CorpusVisualizer(osName, outputPath, modeStr, lang,
+          userDictPath, renderer, format, pruning, workers);
+      try {
+        corpusVisualizer.visualize(inputPath);
+      } catch (IOException e) {
+        System.out.println(e.getMessage());
+      }
+      return;
+    }
+
+    if (text.length() == 0) {
+      System.out.println("Text should be set by using -t option or a file by using -f option.");
+      System.exit(0);
+    }
+
+    Visualizer visualizer = new Visualizer(osName, outputPath, modeStr, text, lang, userDictPath,
+        renderer, format, pruning);
+    visualizer.vizualize();
+  }
+
+  /**
+   * Writes the tokens of the text, or of the whole -f file read as one document, to stdout as
+   * NDJSON while it is being tokenized.
+   */
+  private static void streamTokens(String text, String inputPath, String modeStr, String lang,
+      String userDictPath) throws IOException {
+    CompiledUserDictionary userDict = null;
+    if (!userDictPath.equals("")) {
+      userDict = CompiledUserDictionary.compile(lang, Files.readAllBytes(Paths.get(userDictPath)));
+    }
+
+    try (TokenizerPool tokenizerPool = new TokenizerPool(1, 1, 60000);
+        Reader reader = inputPath.length() > 0
+            ? Files.newBufferedReader(Paths.get(inputPath), StandardCharsets.UTF_8)
+            : new StringReader(text);
+        TokenStreamWriter writer = new TokenStreamWriter(System.out, TokenStreamWriter.NDJSON)) {
+      new LatticeVisualizer(modeStr, "", lang, userDict, tokenizerPool, null).stream(reader, writer);
+    }
+  }
+
+  /**
+   * Writes token, part-of-speech, unknown-word and compound-split statistics of the text, or of
+   * the whole -f file, to stdout as JSON: for the -m mode only, or else for every mode of the
+   * language. A summary goes to stderr.
+   */
+  private static void analyzeCorpus(String text, String inputPath, String modeStr, String lang,
+      String userDictPath, int workers, int top) throws IOException {
+    CompiledUserDictionary userDict = null;
+    if (!userDictPath.equals("")) {
+      userDict = CompiledUserDictionary.compile(lang, Files.readAllBytes(Paths.get(userDictPath)));
+    }
+
+    try (TokenizerPool tokenizerPool = new TokenizerPool(workers, workers * 3, 60000);
+        CorpusAnalyzer analyzer = new CorpusAnalyzer(tokenizerPool, workers, 65536, 10000);
+        Reader reader = inputPath.length() > 0
+            ? Files.newBufferedReader(Paths.get(inputPath), StandardCharsets.UTF_8)
+            : new StringReader(text)) {
+      CorpusStats stats = analyzer.analyze(reader, lang.length() > 0 ? lang : "ko",
+          modeStr.length() > 0 ? Collections.singletonList(modeStr) : null, userDict, top);
+      stats.write(System.out);
+      System.out.println();
+      System.err.println(stats);
+    }
+  }
+
+  private static void help() {
+    System.out.println("Token Visualizer for Korean(nori) and Japanese(kuromoji)");
+    System.out.println("Installing Graphviz is needed: https://graphviz.org/download/");
+    System.out.println("Usage: java -jar TokenVisualizer.jar [Options]");
+    System.out.println("Options:");
+    System.out.println("    -h  help");
+    System.out.println("    -o  output path (default: current directory)");
+    System.out
+        .println("    -m  decompound mode: discard|none|mixed for Korean (default: discard), search|normal|extended for Japanese (default: search)");
+    System.out.println("    -l  language: ko for Korean, ja for Japapnese (default: ko)");
+    System.out.println("    -t  \"text\" you want to analyze");
+    System.out.println("    -d  user dictionary path");
+    System.out.println("    -f  input file with one text per line, visualized as line_000001.jpg, line_000002.jpg, ...");
+    System.out.println("    -w  number of worker threads for -f (default: number of cores)");
+    System.out.println("    -s  stream the tokens of -t or of the whole -f file to stdout as NDJSON instead of visualizing");
+    System.out.println("    -a  write token, POS, unknown-word and compound-split statistics of -t or of the whole -f file to stdout as JSON, for -m or every mode");
+    System.out.println("    -n  number of most frequent tokens and unknown tokens listed by -a (default: 100)");
+    System.out.println("    -r  renderer: graphviz for a .jpg via dot, svg for a .svg without Graphviz (default: graphviz)");
+    System.out.println("    -p  prune the lattice: best for the best path only, top:K for the K cheapest paths to each position, cost:N for nodes within N of the best path");
+    System.out.println("    -e  output format: jpg|png|svg|dot (default: jpg, or svg with -r svg; dot writes the graph source only)");
+    System.out.println();
+    System.out.println("Example 1: java -jar TokenVisualizer.jar -t \"뿌리가 깊은 나무\"");
+    System.out
+        .println("Example 2: java -jar TokenVisualizer.jar -o /Users/elastic/Desktop/ -m mixed -t \"뿌리가 깊은 나무\"");
+    System.out
+        .println("Example 3: java -jar TokenVisualizer.jar -o /Users/elastic/Desktop/ -t \"세종시는 행정 수도\" -d /Users/elastic/Desktop/userdict.txt");
+    System.out.println("Example 4: java -jar TokenVisualizer.jar -l ja -t \"シンプルさは究極の洗練である\"");
+    System.out
+        .println("Example 5: java -jar TokenVisualizer.jar -o /Users/elastic/Desktop/ -l ja -t \"シンプルさは究極の洗練である\" -d /Users/elastic/Desktop/userdict.txt");
+    System.out.println("Example 6: java -jar TokenVisualizer.jar -r svg -t \"뿌리가 깊은 나무\"");
+    System.out.println("Example 7: java -jar TokenVisualizer.jar -o /Users/elastic/Desktop/ -w 4 -f /Users/elastic/Desktop/corpus.txt");
+    System.out.println("Example 8: java -jar TokenVisualizer.jar -s -f /Users/elastic/Desktop/document.txt > tokens.ndjson");
+    System.out.println("Example 9: java -jar TokenVisualizer.jar -e png -t \"뿌리가 깊은 나무\"");
+    System.out.println("Example 10: java -jar TokenVisualizer.jar -p top:3 -t \"뿌리가 깊은 나무\"");
+    System.out.println("Example 11: java -jar TokenVisualizer.jar -a -w 8 -n 50 -f /Users/elastic/Desktop/corpus.txt > stats.json");
+    System.exit(0);
+  }
+
+}
@@ -0,0 +1,92 @@
+package co.elastic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import co.elastic.lattice.LatticePruning;
+import co.elastic.render.GraphvizExecutable;
+import co.elastic.render.OutputFormat;
+import co.elastic.render.Renderer;
+import co.elastic.render.Renderers;
+
+/**
+ * Visualizes a single text: writes the lattice as a {@code graphviz_*.dot} file to the output
+ * path and renders it next to it in the chosen format: a {@code .jpg}, {@code .png} or
+ * {@code .svg} through dot, or an {@code .svg} with the built-in renderer. For {@code dot} the
+ * graph file is the output.
+ */
+public class Visualizer {
+
+  private String fileName = "graphviz_";
+  private String outputPath;
+  private String modeStr;
+  private String text;
+  private String lang;
+  private String userDictPath;
+  private Renderer renderer;
+  private LatticePruning pruning;
+
+  public Visualizer(String osname, String outputPath, String modeStr, String text, String lang,
+      String userDictPath, String renderer, OutputFormat format, LatticePruning pruning) {
+
+    this.outputPath = outputPath;
+    this.modeStr = modeStr;
+    this.text = text;
+    this.lang = lang;
+    this.userDictPath = userDictPath;
+    this.renderer = Renderers.create(GraphvizExecutable.resolve(osname, ""), renderer, format);
+    this.pruning = pruning;
+  }
+
+  public void vizualize() {
+    CompiledUserDictionary userDict = null;
+    if (!userDictPath.equals("")) {
+      try {
+        userDict = CompiledUserDictionary.compile(lang, Files.readAllBytes(Paths.get(userDictPath)));
+      } catch (IOException e) {
+        System.out.println(e.getMessage());
+      }
+    }
+
+    try (TokenizerPool tokenizerPool = new TokenizerPool(1, 1, 60000)) {
+      LatticeVisualizer visualizer = new LatticeVisualizer(modeStr, text, lang, userDict,
+          tokenizerPool, renderer);
+      visualizer.setPruning(pruning);
+
+      System.out.println("------- tokenizing...");
+      String dotOut = visualizer.generateDot();
+      if (!pruning.isNone()) {
+        System.out.println("------- pruned " + visualizer.getPrunedNodes() + " nodes and "
+            + visualizer.getPrunedEdges() + " edges (" + pruning + ")");
+      }
+
+      System.out.println("------- generate a graphviz dot file");
+      File dotFile = File.createTempFile(fileName, ".dot", new File(outputPath));
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(dotFile), StandardCharsets.UTF_8)) {
+        writer.write(dotOut);
+      }
+
+      if (renderer.getFileExtension().equals(OutputFormat.DOT.getFileExtension())) {
+        return;
+      }
+
+      System.out.println("------- render the lattice to a " + renderer.getFileExtension() + " file");
+      String dotPath = dotFile.getAbsolutePath();
+      String imagePath = dotPath.substring(0, dotPath.lastIndexOf(".dot")) + "."
+          + renderer.getFileExtension();
+      try (OutputStream out = new FileOutputStream(imagePath)) {
+        visualizer.render(dotOut, out);
+      }
+    } catch (IOException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+}
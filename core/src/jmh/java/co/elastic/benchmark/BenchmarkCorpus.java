@@ -0,0 +1,80 @@
+package co.elastic.benchmark;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Reproducible Korean and Japanese input for the benchmarks.
+ *
+ * Texts are built by cycling through a fixed set of sentences until the requested length is
+ * reached, and user dictionaries are generated from a fixed seed, so every run sees exactly the
+ * same input.
+ */
+final class BenchmarkCorpus {
+
+    private static final String[] KOREAN = {
+        "뿌리가 깊은 나무는 바람에 아니 뮐세.",
+        "샘이 깊은 물은 가뭄에 아니 그칠세.",
+        "세종시는 대한민국의 행정 수도입니다.",
+        "엘라스틱서치는 분산 검색 엔진으로 널리 쓰인다.",
+        "형태소 분석기는 문장을 의미 있는 단위로 나눈다.",
+        "오늘 서울의 날씨는 맑고 기온이 조금 높겠습니다.",
+        "가장 짧은 경로를 찾기 위해 비터비 알고리즘을 사용한다.",
+        "사용자 사전을 추가하면 신조어도 올바르게 분석된다."
+    };
+
+    private static final String[] JAPANESE = {
+        "シンプルさは究極の洗練である。",
+        "関西国際空港から東京駅まで新幹線で移動した。",
+        "形態素解析は日本語の検索に欠かせない処理です。",
+        "今日の東京は晴れ、最高気温は二十五度の予想です。",
+        "ビタビアルゴリズムで最小コストの経路を求める。",
+        "ユーザー辞書を使えば新しい言葉も正しく分割できる。",
+        "吾輩は猫である。名前はまだ無い。",
+        "分散検索エンジンは大量の文書を高速に検索する。"
+    };
+
+    private static final char[] KOREAN_SYLLABLES = "가나다라마바사아자차카타파하강난달람맘밤산안잔찬".toCharArray();
+    private static final char[] KATAKANA = "アイウエオカキクケコサシスセソタチツテトナニヌネノ".toCharArray();
+
+    private BenchmarkCorpus() {
+    }
+
+    static String text(String lang, int length) {
+        String[] sentences = lang.equals("ja") ? JAPANESE : KOREAN;
+        StringBuilder sb = new StringBuilder(length + 64);
+        for (int i = 0; sb.length() < length; i++) {
+            if (sb.length() > 0 && !lang.equals("ja")) {
+                sb.append(' ');
+            }
+            sb.append(sentences[i % sentences.length]);
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    /** A user dictionary with {@code entries} distinct nouns in the format nori or kuromoji expects. */
+    static String userDictionary(String lang, int entries) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        Set<String> seen = new HashSet<>();
+        char[] alphabet = lang.equals("ja") ? KATAKANA : KOREAN_SYLLABLES;
+        while (seen.size() < entries) {
+            StringBuilder word = new StringBuilder();
+            int wordLength = 2 + random.nextInt(4);
+            for (int i = 0; i < wordLength; i++) {
+                word.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            if (!seen.add(word.toString())) {
+                continue;
+            }
+            if (lang.equals("ja")) {
+                sb.append(word).append(',').append(word).append(',').append(word).append(",カスタム名詞\n");
+            } else {
+                sb.append(word).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package co.elastic.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of {@code GraphvizFormatter.finish()} and the size of the DOT text it returns, against the
+ * input length. The size is reported as the {@code dotChars} secondary result.
+ *
+ * finish() can only be called once per formatter, so every invocation tokenizes the text again
+ * in an untimed setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DotFinishBenchmark {
+
+    @Param({ "ko:discard", "ja:search" })
+    public String mode;
+
+    @Param({ "16", "128", "1024" })
+    public int length;
+
+    private LatticeTokenizer tokenizer;
+    private String text;
+    private LatticeTokenizer.Formatter formatter;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class DotSize {
+        public long dotChars;
+    }
+
+    @Setup
+    public void setup() {
+        tokenizer = new LatticeTokenizer(mode);
+        text = BenchmarkCorpus.text(LatticeTokenizer.language(mode), length);
+    }
+
+    @Setup(Level.Invocation)
+    public void tokenize() throws IOException {
+        formatter = tokenizer.tokenize(text);
+    }
+
+    @Benchmark
+    public String finish(DotSize size) {
+        String dot = formatter.finish();
+        size.dotChars = dot.length();
+        return dot;
+    }
+}
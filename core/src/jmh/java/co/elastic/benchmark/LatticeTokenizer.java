@@ -0,0 +1,62 @@
+package co.elastic.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.ko.GraphvizFormatter;
+import org.apache.lucene.analysis.ko.KoreanTokenizer;
+import org.apache.lucene.analysis.ko.dict.ConnectionCosts;
+
+/**
+ * A reusable nori or kuromoji tokenizer for a {@code lang:mode} pair such as {@code ko:discard},
+ * which runs each text with a fresh GraphvizFormatter attached, the way LatticeVisualizer does.
+ */
+final class LatticeTokenizer {
+
+    private final Tokenizer tokenizer;
+
+    LatticeTokenizer(String langMode) {
+        String[] parts = langMode.split(":");
+        if (parts[0].equals("ja")) {
+            tokenizer = new JapaneseTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, null, true,
+                    JapaneseTokenizer.Mode.valueOf(parts[1].toUpperCase()));
+        } else {
+            tokenizer = new KoreanTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, null,
+                    KoreanTokenizer.DecompoundMode.valueOf(parts[1].toUpperCase()), false, true);
+        }
+    }
+
+    static String language(String langMode) {
+        return langMode.substring(0, langMode.indexOf(':'));
+    }
+
+    /** Tokenizes the text and returns the formatter holding its lattice, not yet finished. */
+    Formatter tokenize(String text) throws IOException {
+        Formatter formatter;
+        if (tokenizer instanceof JapaneseTokenizer) {
+            org.apache.lucene.analysis.ja.GraphvizFormatter ja = new org.apache.lucene.analysis.ja.GraphvizFormatter(
+                    org.apache.lucene.analysis.ja.dict.ConnectionCosts.getInstance());
+            ((JapaneseTokenizer) tokenizer).setGraphvizFormatter(ja);
+            formatter = ja::finish;
+        } else {
+            GraphvizFormatter ko = new GraphvizFormatter(ConnectionCosts.getInstance());
+            ((KoreanTokenizer) tokenizer).setGraphvizFormatter(ko);
+            formatter = ko::finish;
+        }
+
+        tokenizer.setReader(new StringReader(text));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+        }
+        tokenizer.end();
+        tokenizer.close();
+        return formatter;
+    }
+
+    interface Formatter {
+        String finish();
+    }
+}
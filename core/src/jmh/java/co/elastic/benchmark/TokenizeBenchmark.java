@@ -0,0 +1,50 @@
+package co.elastic.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenization with a GraphvizFormatter attached, for every decompound mode and input length.
+ * The formatter records the whole lattice while the tokenizer runs, so this is the tokenize stage
+ * of a visualize request rather than plain tokenization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizeBenchmark {
+
+    @Param({ "ko:none", "ko:discard", "ko:mixed", "ja:normal", "ja:search", "ja:extended" })
+    public String mode;
+
+    @Param({ "16", "128", "1024" })
+    public int length;
+
+    private LatticeTokenizer tokenizer;
+    private String text;
+
+    @Setup
+    public void setup() {
+        tokenizer = new LatticeTokenizer(mode);
+        text = BenchmarkCorpus.text(LatticeTokenizer.language(mode), length);
+    }
+
+    @Benchmark
+    public Object tokenize() throws IOException {
+        return tokenizer.tokenize(text);
+    }
+}
@@ -0,0 +1,52 @@
+package co.elastic.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.ko.dict.UserDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of compiling a user dictionary into its FST, which is paid whenever a dictionary isn't
+ * already in the cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserDictionaryBenchmark {
+
+    @Param({ "ko", "ja" })
+    public String lang;
+
+    @Param({ "100", "1000", "10000" })
+    public int entries;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkCorpus.userDictionary(lang, entries);
+    }
+
+    @Benchmark
+    public Object open() throws IOException {
+        if (lang.equals("ja")) {
+            return org.apache.lucene.analysis.ja.dict.UserDictionary.open(new StringReader(source));
+        }
+        return UserDictionary.open(new StringReader(source));
+    }
+}
@@ -0,0 +1,87 @@
+package co.elastic.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import co.elastic.TokenizerPool;
+import co.elastic.LatticeVisualizer;
+import co.elastic.render.Renderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The end-to-end {@link LatticeVisualizer#visualizeAndReturnImage()} path with a stub renderer, so
+ * that everything but Graphviz itself is measured: tokenizer pooling, tokenization, finish() and
+ * handing the DOT text to the renderer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VisualizeBenchmark {
+
+    @Param({ "ko:discard", "ja:search" })
+    public String mode;
+
+    @Param({ "16", "128", "1024" })
+    public int length;
+
+    private TokenizerPool tokenizerPool;
+    private String text;
+
+    /** Stands in for dot: consumes the DOT text and writes a few bytes, like a tiny JPEG. */
+    static class StubRenderer implements Renderer {
+
+        private static final byte[] IMAGE = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9 };
+
+        @Override
+        public void render(String dot, OutputStream out) throws IOException {
+            if (dot.isEmpty()) {
+                throw new IOException("Empty graph");
+            }
+            out.write(IMAGE);
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/jpeg";
+        }
+
+        @Override
+        public String getFileExtension() {
+            return "jpg";
+        }
+    }
+
+    private final Renderer renderer = new StubRenderer();
+
+    @Setup
+    public void setup() {
+        tokenizerPool = new TokenizerPool(4, 32, 300000);
+        text = BenchmarkCorpus.text(LatticeTokenizer.language(mode), length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tokenizerPool.close();
+    }
+
+    @Benchmark
+    public byte[] visualize() throws IOException {
+        String[] parts = mode.split(":");
+        return new LatticeVisualizer(parts[1], text, parts[0], null, tokenizerPool, renderer).visualizeAndReturnImage();
+    }
+}
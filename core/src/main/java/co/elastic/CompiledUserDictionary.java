@@ -0,0 +1,93 @@
+package co.elastic;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.lucene.analysis.ko.dict.UserDictionary;
+
+/**
+ * A user dictionary compiled into the nori or kuromoji FST, identified by the SHA-256 hash of the
+ * text it was built from.
+ */
+public final class CompiledUserDictionary {
+
+    private final String hash;
+    private final String lang;
+    private final long sourceBytes;
+    private final UserDictionary korean;
+    private final org.apache.lucene.analysis.ja.dict.UserDictionary japanese;
+
+    private CompiledUserDictionary(String hash, String lang, long sourceBytes, UserDictionary korean,
+                                   org.apache.lucene.analysis.ja.dict.UserDictionary japanese) {
+        this.hash = hash;
+        this.lang = lang;
+        this.sourceBytes = sourceBytes;
+        this.korean = korean;
+        this.japanese = japanese;
+    }
+
+    public static CompiledUserDictionary compile(String lang, byte[] source) throws IOException {
+        return compile(lang, source, sha256(source));
+    }
+
+    /**
+     * Compiles {@code source}. Throws {@link IllegalArgumentException} for an entry nori or
+     * kuromoji can't parse, which they report with a variety of runtime exceptions.
+     */
+    public static CompiledUserDictionary compile(String lang, byte[] source, String hash) throws IOException {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8)) {
+            if (lang.equalsIgnoreCase("ja")) {
+                return new CompiledUserDictionary(hash, "ja", source.length, null,
+                        org.apache.lucene.analysis.ja.dict.UserDictionary.open(reader));
+            }
+            return new CompiledUserDictionary(hash, "ko", source.length, UserDictionary.open(reader), null);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid user dictionary: " + e.getMessage(), e);
+        }
+    }
+
+    public static String sha256(byte[] source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] hashed = digest.digest(source);
+        StringBuilder sb = new StringBuilder(hashed.length * 2);
+        for (byte b : hashed) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    /** The nori dictionary, or null if this was compiled for Japanese or had no entries. */
+    public UserDictionary getKorean() {
+        return korean;
+    }
+
+    /** The kuromoji dictionary, or null if this was compiled for Korean or had no entries. */
+    public org.apache.lucene.analysis.ja.dict.UserDictionary getJapanese() {
+        return japanese;
+    }
+}
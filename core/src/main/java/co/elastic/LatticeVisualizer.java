@@ -0,0 +1,246 @@
+package co.elastic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import co.elastic.analysis.AnalyzedToken;
+import co.elastic.analysis.TokenAttributes;
+import co.elastic.analysis.TokenStreamWriter;
+import co.elastic.lattice.DotLatticeParser;
+import co.elastic.lattice.DotLatticeWriter;
+import co.elastic.lattice.Lattice;
+import co.elastic.lattice.LatticeAnalysis;
+import co.elastic.lattice.LatticePruning;
+
+import co.elastic.render.ImageBuffer;
+import co.elastic.render.Renderer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer.Mode;
+import org.apache.lucene.analysis.ko.GraphvizFormatter;
+import org.apache.lucene.analysis.ko.KoreanTokenizer;
+import org.apache.lucene.analysis.ko.KoreanTokenizer.DecompoundMode;
+import org.apache.lucene.analysis.ko.dict.ConnectionCosts;
+import org.apache.lucene.analysis.ko.dict.UserDictionary;
+
+/**
+ * Tokenizes a text with nori or kuromoji and turns the lattice the tokenizer built into an image,
+ * a {@link LatticeAnalysis} or a stream of tokens. The CLI and the web service both go through it.
+ */
+public class LatticeVisualizer {
+
+    private String text;
+    private String lang;
+    private CompiledUserDictionary userDict;
+    private TokenizerPool tokenizerPool;
+    private Renderer renderer;
+    private StageListener listener = StageListener.NONE;
+    private LatticePruning pruning = LatticePruning.NONE;
+    private int prunedNodes;
+    private int prunedEdges;
+
+    private DecompoundMode modeKo = KoreanTokenizer.DEFAULT_DECOMPOUND;
+    private Mode modeJa = JapaneseTokenizer.DEFAULT_MODE;
+
+    public LatticeVisualizer(String modeStr, String text, String lang, CompiledUserDictionary userDict,
+                         TokenizerPool tokenizerPool, Renderer renderer) {
+
+        if (modeStr.equalsIgnoreCase("none")) {
+            this.modeKo = DecompoundMode.NONE;
+        } else if (modeStr.equalsIgnoreCase("discard")) {
+            this.modeKo = DecompoundMode.DISCARD;
+        } else if (modeStr.equalsIgnoreCase("mixed")) {
+            this.modeKo = DecompoundMode.MIXED;
+        } else if (modeStr.equalsIgnoreCase("normal")) {
+            this.modeJa = Mode.NORMAL;
+        } else if (modeStr.equalsIgnoreCase("search")) {
+            this.modeJa = Mode.SEARCH;
+        } else if (modeStr.equalsIgnoreCase("extended")) {
+            this.modeJa = Mode.EXTENDED;
+        }
+
+        this.text = text;
+        this.lang = lang;
+        this.userDict = userDict;
+        this.tokenizerPool = tokenizerPool;
+        this.renderer = renderer;
+    }
+
+    public void setStageListener(StageListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Prunes the lattice before it is turned into DOT or returned by {@link #analyze}, which keeps
+     * long or ambiguous inputs small enough for {@code dot} to lay out quickly.
+     */
+    public void setPruning(LatticePruning pruning) {
+        this.pruning = pruning;
+    }
+
+    /** How many lattice nodes the last run pruned. */
+    public int getPrunedNodes() {
+        return prunedNodes;
+    }
+
+    /** How many lattice edges the last run pruned. */
+    public int getPrunedEdges() {
+        return prunedEdges;
+    }
+
+    public byte[] visualizeAndReturnImage() throws IOException {
+        ImageBuffer image = new ImageBuffer();
+        visualize(image);
+        return image.toByteArray();
+    }
+
+    /**
+     * Tokenizes the text and streams the rendered lattice to {@code out}, without going through
+     * temp files.
+     */
+    public void visualize(OutputStream out) throws IOException {
+        render(generateDot(), out);
+    }
+
+    /** Tokenizes the text and returns its lattice as DOT, for callers that render it separately. */
+    public String generateDot() throws IOException {
+        String dotContent = tokenize(null);
+        if (!pruning.isNone()) {
+            long start = System.nanoTime();
+            dotContent = DotLatticeWriter.write(prune(DotLatticeParser.parse(dotContent)));
+            listener.stageCompleted(StageListener.PRUNE, System.nanoTime() - start);
+        }
+        listener.dotGenerated(dotContent.length());
+        return dotContent;
+    }
+
+    public void render(String dotContent, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        renderer.render(dotContent, out);
+        listener.stageCompleted(StageListener.RENDER, System.nanoTime() - start);
+    }
+
+    /**
+     * Tokenizes the text and returns the lattice together with the tokens that were emitted, for
+     * clients that draw the lattice themselves.
+     */
+    public LatticeAnalysis analyze() throws IOException {
+        List<AnalyzedToken> tokens = new ArrayList<>();
+        String dotContent = tokenize(tokens);
+        listener.dotGenerated(dotContent.length());
+        Lattice lattice = DotLatticeParser.parse(dotContent);
+        if (!pruning.isNone()) {
+            long start = System.nanoTime();
+            lattice = prune(lattice);
+            listener.stageCompleted(StageListener.PRUNE, System.nanoTime() - start);
+        }
+        return new LatticeAnalysis(lattice, tokens, prunedNodes, prunedEdges);
+    }
+
+    private Lattice prune(Lattice lattice) {
+        Lattice pruned = pruning.prune(lattice);
+        prunedNodes = lattice.getNodeCount() - pruned.getNodeCount();
+        prunedEdges = lattice.getEdgeCount() - pruned.getEdgeCount();
+        return pruned;
+    }
+
+    /**
+     * Tokenizes {@code reader} instead of the text and writes every token as soon as the tokenizer
+     * emits it. No Graphviz formatter is attached, so nothing but the tokenizer's own buffers is
+     * kept and memory doesn't grow with the input. Returns the number of tokens written.
+     */
+    public long stream(Reader reader, TokenStreamWriter out) throws IOException {
+        long start = System.nanoTime();
+        if (lang.equalsIgnoreCase("ja")) {
+            try (TokenizerPool.Lease<JapaneseTokenizer> lease = tokenizerPool.borrowJapanese(modeJa,
+                    userDict == null ? null : userDict.getJapanese())) {
+                stream(lease.get(), reader, out);
+            }
+        } else {
+            try (TokenizerPool.Lease<KoreanTokenizer> lease = tokenizerPool.borrowKorean(modeKo,
+                    userDict == null ? null : userDict.getKorean())) {
+                stream(lease.get(), reader, out);
+            }
+        }
+        listener.stageCompleted(StageListener.TOKENIZE, System.nanoTime() - start);
+        return out.getTokens();
+    }
+
+    private static void stream(Tokenizer tokenizer, Reader reader, TokenStreamWriter out) throws IOException {
+        tokenizer.setReader(reader);
+        TokenAttributes attributes = TokenAttributes.of(tokenizer);
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            out.write(attributes);
+        }
+        tokenizer.end();
+    }
+
+    private String tokenize(List<AnalyzedToken> tokens) throws IOException {
+        if (lang.equalsIgnoreCase("ja")) {
+            return visualizeJapanese(tokens);
+        }
+        return visualizeKorean(tokens);
+    }
+
+    private String visualizeKorean(List<AnalyzedToken> tokens) throws IOException {
+        UserDictionary userDict = this.userDict == null ? null : this.userDict.getKorean();
+        GraphvizFormatter graphvizFormatter = new GraphvizFormatter(ConnectionCosts.getInstance());
+        long start = System.nanoTime();
+
+        try (TokenizerPool.Lease<KoreanTokenizer> lease = tokenizerPool.borrowKorean(modeKo, userDict)) {
+            KoreanTokenizer tokenizer = lease.get();
+            tokenizer.setReader(new StringReader(text));
+            tokenizer.setGraphvizFormatter(graphvizFormatter);
+
+            TokenAttributes attributes = tokens == null ? null : TokenAttributes.of(tokenizer);
+            tokenizer.reset();
+            while (tokenizer.incrementToken()) {
+                if (attributes != null) {
+                    tokens.add(attributes.read());
+                }
+            }
+            tokenizer.end();
+        }
+
+        return finish(start, graphvizFormatter::finish);
+    }
+
+    private String visualizeJapanese(List<AnalyzedToken> tokens) throws IOException {
+        org.apache.lucene.analysis.ja.dict.UserDictionary userDict = this.userDict == null ? null : this.userDict
+                .getJapanese();
+        org.apache.lucene.analysis.ja.GraphvizFormatter graphvizFormatter = new org.apache.lucene.analysis.ja.GraphvizFormatter(org.apache.lucene.analysis.ja.dict.ConnectionCosts
+                .getInstance());
+        long start = System.nanoTime();
+
+        try (TokenizerPool.Lease<JapaneseTokenizer> lease = tokenizerPool.borrowJapanese(modeJa, userDict)) {
+            JapaneseTokenizer tokenizer = lease.get();
+            tokenizer.setReader(new StringReader(text));
+            tokenizer.setGraphvizFormatter(graphvizFormatter);
+
+            TokenAttributes attributes = tokens == null ? null : TokenAttributes.of(tokenizer);
+            tokenizer.reset();
+            while (tokenizer.incrementToken()) {
+                if (attributes != null) {
+                    tokens.add(attributes.read());
+                }
+            }
+            tokenizer.end();
+        }
+
+        return finish(start, graphvizFormatter::finish);
+    }
+
+    private String finish(long start, Supplier<String> formatter) {
+        long tokenized = System.nanoTime();
+        listener.stageCompleted(StageListener.TOKENIZE, tokenized - start);
+        String dotContent = formatter.get();
+        listener.stageCompleted(StageListener.FINISH, System.nanoTime() - tokenized);
+        return dotContent;
+    }
+}
@@ -0,0 +1,28 @@
+package co.elastic;
+
+/**
+ * Receives the duration of each stage of a visualize run, so that callers can record metrics
+ * without the visualizer depending on a metrics library.
+ */
+public interface StageListener {
+
+    String TOKENIZE = "tokenize";
+    String FINISH = "finish";
+    String PRUNE = "prune";
+    String RENDER = "render";
+
+    StageListener NONE = new StageListener() {
+        @Override
+        public void stageCompleted(String stage, long nanos) {
+        }
+
+        @Override
+        public void dotGenerated(int length) {
+        }
+    };
+
+    void stageCompleted(String stage, long nanos);
+
+    /** Called with the length of the DOT text once the formatter is finished and the lattice pruned. */
+    void dotGenerated(int length);
+}
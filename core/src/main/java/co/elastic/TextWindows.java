@@ -0,0 +1,129 @@
+package co.elastic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits long text into windows that can be tokenized and rendered on their own.
+ *
+ * Windows end at sentence boundaries (sentence-final punctuation or a line break), where nori and
+ * kuromoji reset their lattice anyway, so a window's lattice is the same as that part of the full
+ * lattice. Sentences are packed into a window until it would exceed {@code maxChars}; a single
+ * sentence longer than that is cut at the last whitespace that fits, or hard at {@code maxChars}.
+ * Whitespace between windows belongs to neither.
+ */
+public final class TextWindows {
+
+    public static final class Window {
+        private final int index;
+        private final int start;
+        private final int end;
+        private final String text;
+
+        Window(int index, int start, int end, String text) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /** Offset of the window's first character in the full text. */
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private TextWindows() {
+    }
+
+    public static List<Window> split(String text, int maxChars) {
+        return split(text, maxChars, true);
+    }
+
+    /**
+     * Splits the text into single sentences, each at most {@code maxChars} long, for callers that
+     * want the finest segments rather than the fewest windows.
+     */
+    public static List<Window> sentences(String text, int maxChars) {
+        return split(text, maxChars, false);
+    }
+
+    private static List<Window> split(String text, int maxChars, boolean packSentences) {
+        List<Window> windows = new ArrayList<>();
+        int pos = skipWhitespace(text, 0);
+        while (pos < text.length()) {
+            int end = windowEnd(text, pos, maxChars, packSentences);
+            int trimmedEnd = end;
+            while (trimmedEnd > pos && Character.isWhitespace(text.charAt(trimmedEnd - 1))) {
+                trimmedEnd--;
+            }
+            windows.add(new Window(windows.size(), pos, trimmedEnd, text.substring(pos, trimmedEnd)));
+            pos = skipWhitespace(text, end);
+        }
+        return windows;
+    }
+
+    private static int windowEnd(String text, int start, int maxChars, boolean packSentences) {
+        int limit = Math.min(text.length(), start + maxChars);
+        if (packSentences && limit == text.length()) {
+            return limit;
+        }
+
+        int lastSentenceEnd = -1;
+        int lastWhitespace = -1;
+        for (int i = start; i < limit; i++) {
+            char c = text.charAt(i);
+            if (isSentenceEnd(c)) {
+                lastSentenceEnd = i + 1;
+                if (!packSentences) {
+                    break;
+                }
+            } else if (Character.isWhitespace(c)) {
+                lastWhitespace = i;
+            }
+        }
+        if (lastSentenceEnd > start) {
+            return lastSentenceEnd;
+        }
+        if (limit == text.length()) {
+            return limit;
+        }
+        return lastWhitespace > start ? lastWhitespace : limit;
+    }
+
+    /** Whether {@code c} ends a sentence, where nori and kuromoji start a new lattice. */
+    public static boolean isSentenceEnd(char c) {
+        switch (c) {
+            case '.':
+            case '!':
+            case '?':
+            case '\n':
+            case '。':
+            case '！':
+            case '？':
+            case '…':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int skipWhitespace(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,244 @@
+package co.elastic;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer.Mode;
+import org.apache.lucene.analysis.ko.KoreanTokenizer;
+import org.apache.lucene.analysis.ko.KoreanTokenizer.DecompoundMode;
+import org.apache.lucene.analysis.ko.dict.UserDictionary;
+
+/**
+ * Keeps closed nori/kuromoji tokenizers around so that they can be handed out again with
+ * {@link Tokenizer#setReader} instead of being constructed for every request.
+ *
+ * Tokenizers are keyed by language, mode and the identity of the user dictionary they were
+ * built with. At most {@code maxIdlePerKey} instances per key and {@code maxIdleTotal} instances
+ * overall are retained, and instances that stay idle longer than {@code idleTimeoutMillis} are
+ * dropped by a background evictor.
+ */
+public class TokenizerPool implements AutoCloseable {
+
+    private final int maxIdlePerKey;
+    private final int maxIdleTotal;
+    private final long idleTimeoutMillis;
+
+    private final Map<Key, Deque<IdleTokenizer>> idle = new HashMap<>();
+    private int idleCount;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final ScheduledExecutorService evictor;
+
+    public TokenizerPool(int maxIdlePerKey, int maxIdleTotal, long idleTimeoutMillis) {
+        this.maxIdlePerKey = maxIdlePerKey;
+        this.maxIdleTotal = maxIdleTotal;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tokenizer-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, idleTimeoutMillis / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Lease<KoreanTokenizer> borrowKorean(DecompoundMode mode, UserDictionary userDict) {
+        Key key = new Key("ko", mode, userDict);
+        Tokenizer tokenizer = poll(key);
+        if (tokenizer == null) {
+            tokenizer = new KoreanTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, userDict, mode, false, true);
+        }
+        return new Lease<>(this, key, (KoreanTokenizer) tokenizer);
+    }
+
+    public Lease<JapaneseTokenizer> borrowJapanese(Mode mode,
+                                                   org.apache.lucene.analysis.ja.dict.UserDictionary userDict) {
+        Key key = new Key("ja", mode, userDict);
+        Tokenizer tokenizer = poll(key);
+        if (tokenizer == null) {
+            tokenizer = new JapaneseTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, userDict, true, mode);
+        }
+        return new Lease<>(this, key, (JapaneseTokenizer) tokenizer);
+    }
+
+    private synchronized Tokenizer poll(Key key) {
+        Deque<IdleTokenizer> queue = idle.get(key);
+        IdleTokenizer pooled = queue == null ? null : queue.pollFirst();
+        if (pooled == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (queue.isEmpty()) {
+            idle.remove(key);
+        }
+        idleCount--;
+        hits.incrementAndGet();
+        return pooled.tokenizer;
+    }
+
+    private void release(Key key, Tokenizer tokenizer) {
+        // Detach the per-request formatter so the pooled instance doesn't keep the last lattice alive.
+        if (tokenizer instanceof KoreanTokenizer) {
+            ((KoreanTokenizer) tokenizer).setGraphvizFormatter(null);
+        } else if (tokenizer instanceof JapaneseTokenizer) {
+            ((JapaneseTokenizer) tokenizer).setGraphvizFormatter(null);
+        }
+
+        try {
+            tokenizer.close();
+        } catch (IOException | RuntimeException e) {
+            // A tokenizer that can't be closed cleanly can't be reused either.
+            return;
+        }
+
+        synchronized (this) {
+            Deque<IdleTokenizer> queue = idle.computeIfAbsent(key, k -> new ArrayDeque<>());
+            if (queue.size() >= maxIdlePerKey || idleCount >= maxIdleTotal) {
+                if (queue.isEmpty()) {
+                    idle.remove(key);
+                }
+                evictions.incrementAndGet();
+                return;
+            }
+            queue.addFirst(new IdleTokenizer(tokenizer, System.currentTimeMillis()));
+            idleCount++;
+        }
+    }
+
+    synchronized void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<Map.Entry<Key, Deque<IdleTokenizer>>> it = idle.entrySet().iterator();
+        while (it.hasNext()) {
+            Deque<IdleTokenizer> queue = it.next().getValue();
+            // Most recently released instances are at the head, so stale ones collect at the tail.
+            while (!queue.isEmpty() && queue.peekLast().releasedAt < cutoff) {
+                queue.pollLast();
+                idleCount--;
+                evictions.incrementAndGet();
+            }
+            if (queue.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", getHits());
+        stats.put("misses", getMisses());
+        stats.put("hitRate", getHitRate());
+        stats.put("idle", getIdleCount());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        synchronized (this) {
+            idle.clear();
+            idleCount = 0;
+        }
+    }
+
+    /**
+     * A tokenizer borrowed from the pool. Closing the lease closes the tokenizer and returns it to
+     * the pool, so it should be used with try-with-resources in place of the tokenizer itself.
+     */
+    public static final class Lease<T extends Tokenizer> implements AutoCloseable {
+        private final TokenizerPool pool;
+        private final Key key;
+        private final T tokenizer;
+        private boolean released;
+
+        private Lease(TokenizerPool pool, Key key, T tokenizer) {
+            this.pool = pool;
+            this.key = key;
+            this.tokenizer = tokenizer;
+        }
+
+        public T get() {
+            return tokenizer;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                pool.release(key, tokenizer);
+            }
+        }
+    }
+
+    private static final class IdleTokenizer {
+        final Tokenizer tokenizer;
+        final long releasedAt;
+
+        IdleTokenizer(Tokenizer tokenizer, long releasedAt) {
+            this.tokenizer = tokenizer;
+            this.releasedAt = releasedAt;
+        }
+    }
+
+    private static final class Key {
+        final String lang;
+        final Enum<?> mode;
+        // Compared by identity: two dictionaries parsed from the same file are still different FSTs.
+        final Object userDict;
+
+        Key(String lang, Enum<?> mode, Object userDict) {
+            this.lang = lang;
+            this.mode = mode;
+            this.userDict = userDict;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return lang.equals(other.lang) && mode == other.mode && userDict == other.userDict;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lang, mode) * 31 + System.identityHashCode(userDict);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package co.elastic.analysis;
+
+/**
+ * A token emitted by nori or kuromoji, copied out of the tokenizer's attributes so that it
+ * outlives the tokenizer it came from.
+ */
+public class AnalyzedToken {
+
+    private final String term;
+    private final int startOffset;
+    private final int endOffset;
+    private final String partOfSpeech;
+    private final String reading;
+
+    public AnalyzedToken(String term, int startOffset, int endOffset, String partOfSpeech, String reading) {
+        this.term = term;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.partOfSpeech = partOfSpeech;
+        this.reading = reading;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    /** The POS tag, e.g. {@code NNG} or {@code VV+EP} for nori and {@code 名詞-一般} for kuromoji. */
+    public String getPartOfSpeech() {
+        return partOfSpeech;
+    }
+
+    public String getReading() {
+        return reading;
+    }
+}
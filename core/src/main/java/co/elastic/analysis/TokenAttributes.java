@@ -0,0 +1,289 @@
+package co.elastic.analysis;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.ko.DictionaryToken;
+import org.apache.lucene.analysis.ko.POS;
+import org.apache.lucene.analysis.ko.Token;
+import org.apache.lucene.analysis.ko.dict.Dictionary;
+import org.apache.lucene.analysis.ko.tokenattributes.PartOfSpeechAttribute;
+import org.apache.lucene.analysis.ko.tokenattributes.ReadingAttribute;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+/**
+ * Reads the current token of a nori or kuromoji tokenizer into an {@link AnalyzedToken}, or
+ * writes it with all of its attributes as JSON.
+ *
+ * The attributes are looked up once per tokenizer, so an instance should be created after the
+ * tokenizer is borrowed and used for every {@code incrementToken()} of that run.
+ */
+public abstract class TokenAttributes {
+
+    protected final CharTermAttribute termAtt;
+    protected final OffsetAttribute offsetAtt;
+    protected final PositionIncrementAttribute posIncAtt;
+    protected final PositionLengthAttribute posLenAtt;
+
+    private TokenAttributes(Tokenizer tokenizer) {
+        this.termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        this.offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+        this.posIncAtt = tokenizer.addAttribute(PositionIncrementAttribute.class);
+        this.posLenAtt = tokenizer.addAttribute(PositionLengthAttribute.class);
+    }
+
+    public static TokenAttributes of(Tokenizer tokenizer) {
+        if (tokenizer instanceof JapaneseTokenizer) {
+            return new Japanese(tokenizer);
+        }
+        return new Korean(tokenizer);
+    }
+
+    /** The current term's characters; only the first {@link #termLength()} of them are valid. */
+    public char[] termBuffer() {
+        return termAtt.buffer();
+    }
+
+    public int termLength() {
+        return termAtt.length();
+    }
+
+    public AnalyzedToken read() {
+        return new AnalyzedToken(termAtt.toString(), offsetAtt.startOffset(), offsetAtt.endOffset(),
+                partOfSpeech(), reading());
+    }
+
+    /**
+     * Writes the current token as a JSON object:
+     *
+     * <pre>
+     * {"term":"뿌리","start":0,"end":2,"positionIncrement":1,"positionLength":1,"type":"known",
+     *  "pos":"NNG","posType":"morpheme","leftPos":"NNG","rightPos":"NNG"}
+     * </pre>
+     *
+     * {@code type} is the dictionary the token was found in: {@code known}, {@code unknown} or
+     * {@code user}. Korean tokens add the POS type, the left and right tags and, for compounds and
+     * inflections, their {@code morphemes}; Japanese tokens add the base form, inflection and
+     * pronunciation. Fields without a value are left out.
+     */
+    public void write(JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("term", termAtt.toString());
+        json.writeNumberField("start", offsetAtt.startOffset());
+        json.writeNumberField("end", offsetAtt.endOffset());
+        json.writeNumberField("positionIncrement", posIncAtt.getPositionIncrement());
+        json.writeNumberField("positionLength", posLenAtt.getPositionLength());
+        writeField(json, "type", dictionaryType());
+        writeField(json, "pos", partOfSpeech());
+        writeFeatures(json);
+        json.writeEndObject();
+    }
+
+    /** The POS tag of the current token, e.g. {@code NNG} or {@code 名詞-一般}. */
+    public abstract String partOfSpeech();
+
+    protected abstract String reading();
+
+    /** {@code known}, {@code unknown} or {@code user}, or null for a part of a decompounded token. */
+    public abstract String dictionaryType();
+
+    protected abstract void writeFeatures(JsonGenerator json) throws IOException;
+
+    private static void writeField(JsonGenerator json, String name, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(name, value);
+        }
+    }
+
+    private static String lowerCase(Enum<?> value) {
+        return value == null ? null : value.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Korean extends TokenAttributes {
+
+        private final PartOfSpeechAttribute posAtt;
+        private final ReadingAttribute readingAtt;
+        private final KoreanTokenCapture capture = new KoreanTokenCapture();
+
+        Korean(Tokenizer tokenizer) {
+            super(tokenizer);
+            this.posAtt = tokenizer.addAttribute(PartOfSpeechAttribute.class);
+            this.readingAtt = tokenizer.addAttribute(ReadingAttribute.class);
+        }
+
+        @Override
+        public String partOfSpeech() {
+            POS.Tag left = posAtt.getLeftPOS();
+            POS.Tag right = posAtt.getRightPOS();
+            if (left == null) {
+                return null;
+            }
+            return right == null || right == left ? left.name() : left.name() + "+" + right.name();
+        }
+
+        @Override
+        protected String reading() {
+            return readingAtt.getReading();
+        }
+
+        /** Parts of a decompounded token aren't dictionary entries of their own, so they have no type. */
+        @Override
+        public String dictionaryType() {
+            ((AttributeImpl) posAtt).copyTo(capture);
+            Token token = capture.token;
+            return token instanceof DictionaryToken ? lowerCase(((DictionaryToken) token).getType()) : null;
+        }
+
+        @Override
+        protected void writeFeatures(JsonGenerator json) throws IOException {
+            writeField(json, "posType", lowerCase(posAtt.getPOSType()));
+            writeField(json, "leftPos", tagName(posAtt.getLeftPOS()));
+            writeField(json, "rightPos", tagName(posAtt.getRightPOS()));
+            writeField(json, "reading", reading());
+            Dictionary.Morpheme[] morphemes = posAtt.getMorphemes();
+            if (morphemes != null) {
+                json.writeArrayFieldStart("morphemes");
+                for (Dictionary.Morpheme morpheme : morphemes) {
+                    json.writeStartObject();
+                    json.writeStringField("surface", morpheme.surfaceForm);
+                    json.writeStringField("pos", morpheme.posTag.name());
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+            }
+        }
+
+        private static String tagName(POS.Tag tag) {
+            return tag == null ? null : tag.name();
+        }
+    }
+
+    private static class Japanese extends TokenAttributes {
+
+        private final org.apache.lucene.analysis.ja.tokenattributes.PartOfSpeechAttribute posAtt;
+        private final org.apache.lucene.analysis.ja.tokenattributes.ReadingAttribute readingAtt;
+        private final org.apache.lucene.analysis.ja.tokenattributes.BaseFormAttribute baseFormAtt;
+        private final org.apache.lucene.analysis.ja.tokenattributes.InflectionAttribute inflectionAtt;
+        private final JapaneseTokenCapture capture = new JapaneseTokenCapture();
+
+        Japanese(Tokenizer tokenizer) {
+            super(tokenizer);
+            this.posAtt = tokenizer.addAttribute(org.apache.lucene.analysis.ja.tokenattributes.PartOfSpeechAttribute.class);
+            this.readingAtt = tokenizer.addAttribute(org.apache.lucene.analysis.ja.tokenattributes.ReadingAttribute.class);
+            this.baseFormAtt = tokenizer.addAttribute(org.apache.lucene.analysis.ja.tokenattributes.BaseFormAttribute.class);
+            this.inflectionAtt = tokenizer.addAttribute(org.apache.lucene.analysis.ja.tokenattributes.InflectionAttribute.class);
+        }
+
+        @Override
+        public String partOfSpeech() {
+            return posAtt.getPartOfSpeech();
+        }
+
+        @Override
+        protected String reading() {
+            return readingAtt.getReading();
+        }
+
+        @Override
+        public String dictionaryType() {
+            ((AttributeImpl) posAtt).copyTo(capture);
+            return capture.token == null ? null : lowerCase(capture.token.getType());
+        }
+
+        @Override
+        protected void writeFeatures(JsonGenerator json) throws IOException {
+            writeField(json, "reading", reading());
+            writeField(json, "pronunciation", readingAtt.getPronunciation());
+            writeField(json, "baseForm", baseFormAtt.getBaseForm());
+            writeField(json, "inflectionType", inflectionAtt.getInflectionType());
+            writeField(json, "inflectionForm", inflectionAtt.getInflectionForm());
+        }
+    }
+
+    /**
+     * The tokenizers only expose the dictionary a token came from on their internal token, which
+     * the part-of-speech attribute hands to any attribute it is copied to. These stand-ins are
+     * that copy target.
+     */
+    private static final class KoreanTokenCapture extends AttributeImpl implements PartOfSpeechAttribute {
+
+        private Token token;
+
+        @Override
+        public void setToken(Token token) {
+            this.token = token;
+        }
+
+        @Override
+        public POS.Type getPOSType() {
+            return token == null ? null : token.getPOSType();
+        }
+
+        @Override
+        public POS.Tag getLeftPOS() {
+            return token == null ? null : token.getLeftPOS();
+        }
+
+        @Override
+        public POS.Tag getRightPOS() {
+            return token == null ? null : token.getRightPOS();
+        }
+
+        @Override
+        public Dictionary.Morpheme[] getMorphemes() {
+            return token == null ? null : token.getMorphemes();
+        }
+
+        @Override
+        public void clear() {
+            token = null;
+        }
+
+        @Override
+        public void reflectWith(AttributeReflector reflector) {
+        }
+
+        @Override
+        public void copyTo(AttributeImpl target) {
+            ((PartOfSpeechAttribute) target).setToken(token);
+        }
+    }
+
+    private static final class JapaneseTokenCapture extends AttributeImpl
+            implements org.apache.lucene.analysis.ja.tokenattributes.PartOfSpeechAttribute {
+
+        private org.apache.lucene.analysis.ja.Token token;
+
+        @Override
+        public void setToken(org.apache.lucene.analysis.ja.Token token) {
+            this.token = token;
+        }
+
+        @Override
+        public String getPartOfSpeech() {
+            return token == null ? null : token.getPartOfSpeech();
+        }
+
+        @Override
+        public void clear() {
+            token = null;
+        }
+
+        @Override
+        public void reflectWith(AttributeReflector reflector) {
+        }
+
+        @Override
+        public void copyTo(AttributeImpl target) {
+            ((org.apache.lucene.analysis.ja.tokenattributes.PartOfSpeechAttribute) target).setToken(token);
+        }
+    }
+}
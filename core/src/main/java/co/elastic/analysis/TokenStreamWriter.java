@@ -0,0 +1,97 @@
+package co.elastic.analysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes tokens one record at a time as they come out of the tokenizer, either as NDJSON (one
+ * JSON object per line) or as Server-Sent Events:
+ *
+ * <pre>
+ * event: token
+ * data: {"term":"뿌리","start":0,"end":2,...}
+ *
+ * event: end
+ * data: {"tokens":5}
+ * </pre>
+ *
+ * The tokenizers emit tokens in bursts, one per stretch of text they could decide on, so the
+ * output is flushed every {@link #FLUSH_TOKENS} tokens or when {@link #FLUSH_NANOS} have passed
+ * since the last flush, whichever comes first.
+ */
+public class TokenStreamWriter implements Closeable {
+
+    public static final String NDJSON = "ndjson";
+    public static final String SSE = "sse";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int FLUSH_TOKENS = 256;
+    private static final long FLUSH_NANOS = 50000000L;
+
+    private final JsonGenerator json;
+    private final boolean sse;
+    private long tokens;
+    private int unflushed;
+    private long lastFlush = System.nanoTime();
+
+    public TokenStreamWriter(OutputStream out, String format) throws IOException {
+        this.json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.json.setRootValueSeparator(null);
+        this.sse = SSE.equalsIgnoreCase(format);
+    }
+
+    public static String contentType(String format) {
+        return SSE.equalsIgnoreCase(format) ? "text/event-stream" : "application/x-ndjson";
+    }
+
+    public void write(TokenAttributes token) throws IOException {
+        if (sse) {
+            json.writeRaw("event: token\ndata: ");
+        }
+        token.write(json);
+        json.writeRaw(sse ? "\n\n" : "\n");
+        tokens++;
+
+        long now = System.nanoTime();
+        if (++unflushed >= FLUSH_TOKENS || now - lastFlush >= FLUSH_NANOS) {
+            json.flush();
+            unflushed = 0;
+            lastFlush = now;
+        }
+    }
+
+    /** Reports a failure after tokens have already been sent, when the status can no longer change. */
+    public void error(String message) throws IOException {
+        if (sse) {
+            json.writeRaw("event: error\ndata: ");
+        }
+        json.writeStartObject();
+        json.writeStringField("error", message == null ? "" : message);
+        json.writeEndObject();
+        json.writeRaw(sse ? "\n\n" : "\n");
+        json.flush();
+    }
+
+    public long getTokens() {
+        return tokens;
+    }
+
+    /** Ends the stream; with SSE the client is told how many tokens were sent. */
+    @Override
+    public void close() throws IOException {
+        if (sse) {
+            json.writeRaw("event: end\ndata: ");
+            json.writeStartObject();
+            json.writeNumberField("tokens", tokens);
+            json.writeEndObject();
+            json.writeRaw("\n\n");
+        }
+        json.close();
+    }
+}
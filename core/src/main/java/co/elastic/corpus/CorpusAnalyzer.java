@@ -0,0 +1,324 @@
+package co.elastic.corpus;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import co.elastic.CompiledUserDictionary;
+import co.elastic.TextWindows;
+import co.elastic.TokenizerPool;
+import co.elastic.analysis.TokenAttributes;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.ko.KoreanTokenizer;
+
+/**
+ * Token and part-of-speech statistics of a corpus of any size.
+ *
+ * The text is read in chunks of about {@code chunkChars} that end at a sentence boundary, where
+ * nori and kuromoji start a new lattice anyway, and the chunks are tokenized in parallel. Each of
+ * {@code parallelism} workers keeps one tokenizer per mode for the whole run and counts into
+ * statistics of its own, so workers never share anything but the chunk queue; their statistics
+ * are merged once the text is read. Token frequencies are counted exactly per chunk and then fed
+ * into a bounded {@link HeavyHitters} sketch, and at most twice {@code parallelism} chunks are in
+ * memory at a time, so memory doesn't grow with the corpus.
+ *
+ * All runs share one fixed pool of {@code parallelism} threads.
+ */
+public class CorpusAnalyzer implements AutoCloseable {
+
+    public static final List<String> KOREAN_MODES = Collections.unmodifiableList(
+            Arrays.asList("none", "discard", "mixed"));
+    public static final List<String> JAPANESE_MODES = Collections.unmodifiableList(
+            Arrays.asList("normal", "search", "extended"));
+
+    /** Slots a per-chunk count table may keep between chunks. */
+    private static final int MAX_CHUNK_TABLE = 1 << 16;
+
+    private final TokenizerPool tokenizerPool;
+    private final int parallelism;
+    private final int chunkChars;
+    private final int sketchCapacity;
+    private final ExecutorService executor;
+
+    public CorpusAnalyzer(TokenizerPool tokenizerPool, int parallelism, int chunkChars, int sketchCapacity) {
+        if (chunkChars < 2) {
+            throw new IllegalArgumentException("The chunk size should be at least 2 characters: " + chunkChars);
+        }
+        this.tokenizerPool = tokenizerPool;
+        this.parallelism = parallelism;
+        this.chunkChars = chunkChars;
+        this.sketchCapacity = sketchCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "corpus-analyzer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Analyzes the text of {@code reader} under each of {@code modes}, or every mode of the
+     * language when none are given, and keeps the {@code top} most frequent tokens and unknown
+     * tokens of each.
+     */
+    public CorpusStats analyze(Reader reader, String language, List<String> modes, CompiledUserDictionary userDict,
+                               int top) throws IOException {
+        boolean japanese = language.equalsIgnoreCase("ja");
+        List<String> selected = modes(language, modes);
+        int capacity = Math.max(sketchCapacity, top);
+        long start = System.nanoTime();
+
+        BlockingQueue<Worker> idle = new ArrayBlockingQueue<>(parallelism);
+        List<Worker> workers = new ArrayList<>(parallelism);
+        int window = parallelism * 2;
+        Semaphore inFlight = new Semaphore(window);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long chars = 0;
+        long chunks = 0;
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                Worker worker = new Worker(japanese, selected, userDict, capacity);
+                workers.add(worker);
+                idle.add(worker);
+            }
+
+            ChunkReader chunkReader = new ChunkReader(reader, chunkChars);
+            String chunk;
+            while (failure.get() == null && (chunk = chunkReader.next()) != null) {
+                inFlight.acquire();
+                chars += chunk.length();
+                chunks++;
+                String text = chunk;
+                try {
+                    executor.execute(() -> {
+                        Worker worker = null;
+                        try {
+                            worker = idle.take();
+                            worker.analyze(text);
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            if (worker != null) {
+                                idle.add(worker);
+                            }
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Corpus analysis interrupted");
+        } finally {
+            // Workers can only give their tokenizers back once no chunk is using them.
+            inFlight.acquireUninterruptibly(window);
+            for (Worker worker : workers) {
+                worker.close();
+            }
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new IOException(error);
+        }
+
+        List<CorpusStats.ModeStats> merged = new ArrayList<>(selected.size());
+        for (int i = 0; i < selected.size(); i++) {
+            CorpusStats.ModeStats stats = new CorpusStats.ModeStats(selected.get(i), capacity);
+            for (Worker worker : workers) {
+                stats.merge(worker.runs[i].stats);
+            }
+            merged.add(stats);
+        }
+        return new CorpusStats(japanese ? "ja" : "ko", merged, chars, chunks,
+                (System.nanoTime() - start) / 1000000, top);
+    }
+
+    /**
+     * The modes an analysis of {@code modes} runs: each of them once, or every mode of the language
+     * when none are given. Throws {@link IllegalArgumentException} for a mode the language lacks.
+     */
+    public static List<String> modes(String language, List<String> modes) {
+        boolean japanese = language.equalsIgnoreCase("ja");
+        List<String> supported = japanese ? JAPANESE_MODES : KOREAN_MODES;
+        if (modes == null || modes.isEmpty()) {
+            return supported;
+        }
+        List<String> selected = new ArrayList<>();
+        for (String mode : modes) {
+            String normalized = mode.trim().toLowerCase(Locale.ROOT);
+            if (!supported.contains(normalized)) {
+                throw new IllegalArgumentException("Unknown mode for " + (japanese ? "ja" : "ko") + ": " + mode);
+            }
+            if (!selected.contains(normalized)) {
+                selected.add(normalized);
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /** One tokenizer and one set of statistics per mode, used by one chunk at a time. */
+    private final class Worker implements AutoCloseable {
+        final ModeRun[] runs;
+
+        Worker(boolean japanese, List<String> modes, CompiledUserDictionary userDict, int capacity) {
+            this.runs = new ModeRun[modes.size()];
+            for (int i = 0; i < runs.length; i++) {
+                String mode = modes.get(i);
+                TokenizerPool.Lease<? extends Tokenizer> lease = japanese
+                        ? tokenizerPool.borrowJapanese(JapaneseTokenizer.Mode.valueOf(mode.toUpperCase(Locale.ROOT)),
+                                userDict == null ? null : userDict.getJapanese())
+                        : tokenizerPool.borrowKorean(KoreanTokenizer.DecompoundMode.valueOf(
+                                mode.toUpperCase(Locale.ROOT)), userDict == null ? null : userDict.getKorean());
+                runs[i] = new ModeRun(lease, new CorpusStats.ModeStats(mode, capacity));
+            }
+        }
+
+        void analyze(String text) throws IOException {
+            for (ModeRun run : runs) {
+                run.analyze(text);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (ModeRun run : runs) {
+                if (run != null) {
+                    run.lease.close();
+                }
+            }
+        }
+    }
+
+    private static final class ModeRun {
+        final TokenizerPool.Lease<? extends Tokenizer> lease;
+        final TokenAttributes attributes;
+        final CorpusStats.ModeStats stats;
+        final TermCounts chunkTokens = new TermCounts();
+        final TermCounts chunkUnknown = new TermCounts();
+
+        ModeRun(TokenizerPool.Lease<? extends Tokenizer> lease, CorpusStats.ModeStats stats) {
+            this.lease = lease;
+            this.attributes = TokenAttributes.of(lease.get());
+            this.stats = stats;
+        }
+
+        void analyze(String text) throws IOException {
+            long start = System.nanoTime();
+            Tokenizer tokenizer = lease.get();
+            tokenizer.setReader(new StringReader(text));
+            tokenizer.reset();
+            while (tokenizer.incrementToken()) {
+                String type = attributes.dictionaryType();
+                // nori's parts of a decompounded token come from no dictionary of their own.
+                if (type == null) {
+                    stats.splitTokens++;
+                }
+                if ("unknown".equals(type)) {
+                    stats.unknownTokens++;
+                    chunkUnknown.add(attributes.termBuffer(), attributes.termLength(), 1);
+                } else if ("user".equals(type)) {
+                    stats.userTokens++;
+                }
+                String pos = attributes.partOfSpeech();
+                if (pos != null) {
+                    stats.partsOfSpeech.add(pos, 1);
+                }
+                chunkTokens.add(attributes.termBuffer(), attributes.termLength(), 1);
+                stats.tokens++;
+            }
+            tokenizer.end();
+            // Closed so the tokenizer takes the next chunk; the lease closes it once more at the end.
+            tokenizer.close();
+
+            chunkTokens.forEach(stats.topTokens::add);
+            chunkUnknown.forEach(stats.topUnknown::add);
+            chunkTokens.clear(MAX_CHUNK_TABLE);
+            chunkUnknown.clear(MAX_CHUNK_TABLE);
+            stats.tokenizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Reads text in chunks of at most {@code chunkChars}, cut after the last sentence end in the
+     * chunk, else at its last whitespace, else anywhere but inside a surrogate pair. What follows
+     * the cut starts the next chunk.
+     */
+    static final class ChunkReader {
+        private final Reader reader;
+        private final char[] buffer;
+        private int length;
+        private boolean eof;
+
+        ChunkReader(Reader reader, int chunkChars) {
+            this.reader = reader;
+            this.buffer = new char[chunkChars];
+        }
+
+        /** Returns the next chunk, or null once the text is read. */
+        String next() throws IOException {
+            while (!eof && length < buffer.length) {
+                int read = reader.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+            }
+            if (length == 0) {
+                return null;
+            }
+            int end = eof ? length : cut();
+            String chunk = new String(buffer, 0, end);
+            System.arraycopy(buffer, end, buffer, 0, length - end);
+            length -= end;
+            return chunk;
+        }
+
+        private int cut() {
+            int lastWhitespace = -1;
+            for (int i = length; i > 0; i--) {
+                char c = buffer[i - 1];
+                if (TextWindows.isSentenceEnd(c)) {
+                    return i;
+                }
+                if (lastWhitespace < 0 && Character.isWhitespace(c)) {
+                    lastWhitespace = i;
+                }
+            }
+            if (lastWhitespace > 0) {
+                return lastWhitespace;
+            }
+            return Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package co.elastic.corpus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Token and part-of-speech statistics of a corpus under one or more modes, written as JSON:
+ *
+ * <pre>
+ * {"language":"ko","chars":1048576,"chunks":16,"elapsedMillis":2350,
+ *  "modes":[{"mode":"discard","tokens":402311,
+ *            "unknown":{"tokens":1893,"rate":0.0047},"user":{"tokens":0,"rate":0.0},
+ *            "compoundSplit":{"tokens":12044,"rate":0.0299},
+ *            "pos":{"NNG":120544,"JKS":30110,...},
+ *            "topTokens":[{"term":"이","count":9120,"error":0},...],
+ *            "topUnknown":[{"term":"ㅋㅋ","count":212,"error":0},...]}]}
+ * </pre>
+ *
+ * {@code compoundSplit} counts the tokens that are parts of a word nori decompounded, so it is 0
+ * for its {@code none} mode. Kuromoji doesn't mark the parts of the words it splits, so Japanese
+ * statistics leave it out. Top lists come from {@link HeavyHitters}: a non-zero {@code error}
+ * means the count may be that much too high.
+ */
+public class CorpusStats {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** The statistics of one mode, accumulated by one worker or merged from all of them. */
+    static final class ModeStats {
+        final String mode;
+        long tokens;
+        long unknownTokens;
+        long userTokens;
+        long splitTokens;
+        long tokenizeNanos;
+        final TermCounts partsOfSpeech = new TermCounts();
+        final HeavyHitters topTokens;
+        final HeavyHitters topUnknown;
+
+        ModeStats(String mode, int sketchCapacity) {
+            this.mode = mode;
+            this.topTokens = new HeavyHitters(sketchCapacity);
+            this.topUnknown = new HeavyHitters(sketchCapacity);
+        }
+
+        void merge(ModeStats other) {
+            tokens += other.tokens;
+            unknownTokens += other.unknownTokens;
+            userTokens += other.userTokens;
+            splitTokens += other.splitTokens;
+            tokenizeNanos += other.tokenizeNanos;
+            partsOfSpeech.addAll(other.partsOfSpeech);
+            topTokens.merge(other.topTokens);
+            topUnknown.merge(other.topUnknown);
+        }
+    }
+
+    private final String language;
+    private final List<ModeStats> modes;
+    private final long chars;
+    private final long chunks;
+    private final long elapsedMillis;
+    private final int top;
+
+    CorpusStats(String language, List<ModeStats> modes, long chars, long chunks, long elapsedMillis, int top) {
+        this.language = language;
+        this.modes = modes;
+        this.chars = chars;
+        this.chunks = chunks;
+        this.elapsedMillis = elapsedMillis;
+        this.top = top;
+    }
+
+    public long getChars() {
+        return chars;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    /** The tokens of every mode together. */
+    public long getTokens() {
+        long tokens = 0;
+        for (ModeStats mode : modes) {
+            tokens += mode.tokens;
+        }
+        return tokens;
+    }
+
+    /**
+     * The time the workers spent tokenizing and counting, over every mode and chunk. Unlike the
+     * elapsed time it leaves out reading the text, and adds up the workers running in parallel.
+     */
+    public long getTokenizeNanos() {
+        long nanos = 0;
+        for (ModeStats mode : modes) {
+            nanos += mode.tokenizeNanos;
+        }
+        return nanos;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            write(json);
+        }
+    }
+
+    public void write(JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("language", language);
+        json.writeNumberField("chars", chars);
+        json.writeNumberField("chunks", chunks);
+        json.writeNumberField("elapsedMillis", elapsedMillis);
+        json.writeArrayFieldStart("modes");
+        for (ModeStats mode : modes) {
+            json.writeStartObject();
+            json.writeStringField("mode", mode.mode);
+            json.writeNumberField("tokens", mode.tokens);
+            writeRate(json, "unknown", mode.unknownTokens, mode.tokens);
+            writeRate(json, "user", mode.userTokens, mode.tokens);
+            if (!language.equals("ja")) {
+                writeRate(json, "compoundSplit", mode.splitTokens, mode.tokens);
+            }
+            writePartsOfSpeech(json, mode.partsOfSpeech);
+            writeTop(json, "topTokens", mode.topTokens);
+            writeTop(json, "topUnknown", mode.topUnknown);
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private static void writeRate(JsonGenerator json, String name, long count, long tokens) throws IOException {
+        json.writeObjectFieldStart(name);
+        json.writeNumberField("tokens", count);
+        json.writeNumberField("rate", tokens == 0 ? 0.0 : (double) count / tokens);
+        json.writeEndObject();
+    }
+
+    /** Tags by count, most frequent first. */
+    private static void writePartsOfSpeech(JsonGenerator json, TermCounts partsOfSpeech) throws IOException {
+        List<HeavyHitters.Entry> tags = new ArrayList<>(partsOfSpeech.size());
+        partsOfSpeech.forEach((tag, count) -> tags.add(new HeavyHitters.Entry(tag, count, 0)));
+        tags.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.term.compareTo(b.term));
+        json.writeObjectFieldStart("pos");
+        for (HeavyHitters.Entry tag : tags) {
+            json.writeNumberField(tag.term, tag.count);
+        }
+        json.writeEndObject();
+    }
+
+    private void writeTop(JsonGenerator json, String name, HeavyHitters sketch) throws IOException {
+        json.writeArrayFieldStart(name);
+        for (HeavyHitters.Entry entry : sketch.top(top)) {
+            json.writeStartObject();
+            json.writeStringField("term", entry.term);
+            json.writeNumberField("count", entry.count);
+            json.writeNumberField("error", entry.error);
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder(String.format(Locale.ROOT, "%d chars in %d chunks, %d ms",
+                chars, chunks, elapsedMillis));
+        for (ModeStats mode : modes) {
+            summary.append(String.format(Locale.ROOT, "%n  %s: %d tokens, unknown %.2f%%", mode.mode, mode.tokens,
+                    percent(mode.unknownTokens, mode.tokens)));
+            if (!language.equals("ja")) {
+                summary.append(String.format(Locale.ROOT, ", compound split %.2f%%",
+                        percent(mode.splitTokens, mode.tokens)));
+            }
+        }
+        return summary.toString();
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0 : 100.0 * count / total;
+    }
+}
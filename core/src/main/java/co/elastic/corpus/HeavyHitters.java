@@ -0,0 +1,181 @@
+package co.elastic.corpus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most frequent terms of a stream in a fixed amount of memory, by the Space-Saving algorithm.
+ *
+ * At most {@code capacity} terms are monitored. A new term takes the place of the least counted
+ * one and inherits its count as the error of its own, so every reported count is an upper bound
+ * and {@code count - error} a lower bound on the true count. Any term more frequent than
+ * {@code total / capacity} is guaranteed to be monitored, so a capacity well above the number of
+ * terms reported makes the top of the list exact in practice.
+ *
+ * The monitored terms are kept in a min-heap on their counts so that the least counted one is
+ * found in constant time. Not thread-safe; sketches of different workers are combined with
+ * {@link #merge}.
+ */
+final class HeavyHitters {
+
+    /** A monitored term, its count and how much of that count may belong to evicted terms. */
+    static final class Entry {
+        final String term;
+        final long count;
+        final long error;
+
+        Entry(String term, long count, long error) {
+            this.term = term;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private final int capacity;
+    private final String[] terms;
+    private final long[] counts;
+    private final long[] errors;
+    // heap[i] is a slot; position[slot] is where the slot is in the heap.
+    private final int[] heap;
+    private final int[] position;
+    private final Map<String, Integer> slots;
+    private int size;
+
+    HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity should be a positive number: " + capacity);
+        }
+        this.capacity = capacity;
+        this.terms = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.position = new int[capacity];
+        this.slots = new HashMap<>(capacity * 2);
+    }
+
+    void add(String term, long count) {
+        add(term, count, 0);
+    }
+
+    private void add(String term, long count, long error) {
+        Integer slot = slots.get(term);
+        if (slot != null) {
+            counts[slot] += count;
+            errors[slot] += error;
+            siftDown(position[slot]);
+        } else if (size < capacity) {
+            int free = size++;
+            terms[free] = term;
+            counts[free] = count;
+            errors[free] = error;
+            heap[free] = free;
+            position[free] = free;
+            slots.put(term, free);
+            siftUp(free);
+        } else {
+            int min = heap[0];
+            long floor = counts[min];
+            slots.remove(terms[min]);
+            terms[min] = term;
+            counts[min] = floor + count;
+            errors[min] = floor + error;
+            slots.put(term, min);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * The count below which a term may have been evicted: the least monitored count once the
+     * sketch is full, and 0 before that.
+     */
+    long floor() {
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    /**
+     * Adds another sketch of the same capacity to this one. A term monitored by only one of them
+     * may have had up to the other's {@link #floor} occurrences there, so that is added to both its
+     * count and its error, and the {@code capacity} largest counts are kept.
+     */
+    void merge(HeavyHitters other) {
+        long floor = floor();
+        long otherFloor = other.floor();
+        Map<String, long[]> merged = new HashMap<>((size + other.size) * 2);
+        for (int slot = 0; slot < size; slot++) {
+            merged.put(terms[slot], new long[] { counts[slot] + otherFloor, errors[slot] + otherFloor });
+        }
+        for (int slot = 0; slot < other.size; slot++) {
+            long[] entry = merged.get(other.terms[slot]);
+            if (entry == null) {
+                merged.put(other.terms[slot], new long[] { other.counts[slot] + floor, other.errors[slot] + floor });
+            } else {
+                entry[0] += other.counts[slot] - otherFloor;
+                entry[1] += other.errors[slot] - otherFloor;
+            }
+        }
+
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        slots.clear();
+        size = 0;
+        for (Map.Entry<String, long[]> entry : entries.subList(0, Math.min(capacity, entries.size()))) {
+            add(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+    }
+
+    /** The {@code n} terms with the highest counts, highest first. */
+    List<Entry> top(int n) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Long.compare(counts[b], counts[a])
+                : terms[a].compareTo(terms[b]));
+        List<Entry> top = new ArrayList<>(Math.min(n, size));
+        for (int i = 0; i < Math.min(n, size); i++) {
+            top.add(new Entry(terms[order[i]], counts[order[i]], errors[order[i]]));
+        }
+        return top;
+    }
+
+    private void siftUp(int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(slot, index);
+    }
+
+    private void siftDown(int index) {
+        int slot = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[slot]) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(slot, index);
+    }
+
+    private void place(int slot, int index) {
+        heap[index] = slot;
+        position[slot] = index;
+    }
+}
@@ -0,0 +1,158 @@
+package co.elastic.corpus;
+
+import java.util.Arrays;
+
+/**
+ * Counts of terms in an open-addressing table with {@code long} values, so that counting a token
+ * neither boxes its count nor, for a term already seen, copies the tokenizer's term buffer into a
+ * new string.
+ *
+ * Not thread-safe: every worker counts into its own instances, which are merged once it is done.
+ */
+final class TermCounts {
+
+    interface Visitor {
+        void visit(String term, long count);
+    }
+
+    private static final int MIN_CAPACITY = 64;
+
+    private String[] keys;
+    private int[] hashes;
+    private long[] counts;
+    private int size;
+    private long total;
+
+    TermCounts() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+    }
+
+    /** Adds {@code delta} to the count of the first {@code length} chars of {@code buffer}. */
+    void add(char[] buffer, int length, long delta) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                insert(slot, new String(buffer, 0, length), hash, delta);
+                return;
+            }
+            if (hashes[slot] == hash && equals(key, buffer, length)) {
+                counts[slot] += delta;
+                total += delta;
+                return;
+            }
+        }
+    }
+
+    void add(String term, long delta) {
+        // The same hash as the char[] variant, since both are String.hashCode().
+        int hash = term.hashCode();
+        int mask = keys.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                insert(slot, term, hash, delta);
+                return;
+            }
+            if (hashes[slot] == hash && key.equals(term)) {
+                counts[slot] += delta;
+                total += delta;
+                return;
+            }
+        }
+    }
+
+    private void insert(int slot, String term, int hash, long delta) {
+        keys[slot] = term;
+        hashes[slot] = hash;
+        counts[slot] = delta;
+        size++;
+        total += delta;
+        // Kept at most half full, so probe sequences stay short.
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static boolean equals(String key, char[] buffer, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Spreads the low bits of String hashes, which differ little between short terms. */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** The sum of all counts. */
+    long total() {
+        return total;
+    }
+
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                visitor.visit(keys[i], counts[i]);
+            }
+        }
+    }
+
+    void addAll(TermCounts other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Empties the table for the next chunk. A table that grew past {@code maxCapacity} slots is
+     * dropped rather than cleared, so one chunk of unusual text doesn't pin its memory.
+     */
+    void clear(int maxCapacity) {
+        if (keys.length > maxCapacity) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(keys, null);
+        }
+        size = 0;
+        total = 0;
+    }
+}
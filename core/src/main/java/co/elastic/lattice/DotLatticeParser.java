@@ -0,0 +1,81 @@
+package co.elastic.lattice;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the lattice back out of the DOT text written by nori's and kuromoji's GraphvizFormatter,
+ * which is the only view the tokenizers give of the lattice they build.
+ *
+ * The formatter writes one statement per line: {@code 2.1 [label="2: 3534"]} for a node at
+ * offset 2 and {@code 0.0 -> 2.1 [label="뿌리 2215-1158" ...]} for an edge with word cost 2215 and
+ * connection cost -1158. Edges on the best path carry the formatter's green color.
+ */
+public final class DotLatticeParser {
+
+    private static final Pattern NODE = Pattern.compile("^\\s*(\\d+)\\.\\d+ \\[label=\"\\d+: (-?\\d+)\"\\]");
+    private static final Pattern EDGE = Pattern.compile("^\\s*(\\S+) -> (\\S+) \\[label=\"((?:[^\"\\\\]|\\\\.)*)\"(.*)$");
+    private static final Pattern COSTS = Pattern.compile("^(.*) (-?\\d+)([+-]\\d+)$");
+    private static final String BEST_PATH_COLOR = "color=\"#40e050\"";
+
+    private DotLatticeParser() {
+    }
+
+    public static Lattice parse(String dot) {
+        Lattice lattice = new Lattice();
+        lattice.addNode(new LatticeNode(Lattice.BOS, 0, -1));
+
+        int maxOffset = 0;
+        boolean reachesEos = false;
+        for (String line : dot.split("\n")) {
+            Matcher node = NODE.matcher(line);
+            if (node.find()) {
+                String id = line.substring(0, line.indexOf(" [")).trim();
+                int offset = Integer.parseInt(node.group(1));
+                lattice.addNode(new LatticeNode(id, offset, Integer.parseInt(node.group(2))));
+                maxOffset = Math.max(maxOffset, offset);
+                continue;
+            }
+
+            Matcher edge = EDGE.matcher(line);
+            if (!edge.find()) {
+                continue;
+            }
+            String from = edge.group(1);
+            String to = edge.group(2);
+            String label = edge.group(3).replace("\\\"", "\"").replace("\\\\", "\\");
+            boolean bestPath = edge.group(4).contains(BEST_PATH_COLOR);
+
+            addImplicitNode(lattice, from);
+            if (Lattice.EOS.equals(to)) {
+                reachesEos = true;
+            } else {
+                addImplicitNode(lattice, to);
+            }
+
+            Matcher costs = COSTS.matcher(label);
+            if (costs.matches()) {
+                lattice.addEdge(new LatticeEdge(from, to, costs.group(1), Integer.parseInt(costs.group(2)),
+                        Integer.parseInt(costs.group(3).replace("+", "")), bestPath));
+            } else {
+                // BOS and EOS edges have no costs and are always on the best path.
+                lattice.addEdge(new LatticeEdge(from, to, label, 0, 0, true));
+            }
+        }
+
+        if (reachesEos) {
+            lattice.addNode(new LatticeNode(Lattice.EOS, maxOffset, -1));
+        }
+        return lattice;
+    }
+
+    private static void addImplicitNode(Lattice lattice, String id) {
+        if (lattice.getNode(id) != null) {
+            return;
+        }
+        // Nodes are only declared when they're reached by an edge, so the start node at offset 0 isn't.
+        int dot = id.indexOf('.');
+        int offset = Integer.parseInt(dot < 0 ? id : id.substring(0, dot));
+        lattice.addNode(new LatticeNode(id, offset, -1));
+    }
+}
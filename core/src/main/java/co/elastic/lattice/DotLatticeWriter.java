@@ -0,0 +1,60 @@
+package co.elastic.lattice;
+
+/**
+ * Writes a {@link Lattice} back as DOT in the layout and colors of the tokenizers'
+ * GraphvizFormatter, so that a pruned lattice renders like an unpruned one and can be read again
+ * by {@link DotLatticeParser}.
+ */
+public final class DotLatticeWriter {
+
+    private static final String BEST_PATH_STYLE = " color=\"#40e050\" fontcolor=\"#40a050\" penwidth=3 fontsize=20";
+
+    private DotLatticeWriter() {
+    }
+
+    public static String write(Lattice lattice) {
+        StringBuilder dot = new StringBuilder(64 * (lattice.getNodeCount() + lattice.getEdgeCount()));
+        dot.append("digraph viterbi {\n");
+        dot.append("  graph [ fontsize=30 labelloc=\"t\" label=\"\" splines=true overlap=false rankdir = \"LR\"];\n");
+        dot.append("  edge [ fontname=\"Helvetica\" fontcolor=\"red\" color=\"#606060\" ]\n");
+        dot.append("  node [ style=\"filled\" fillcolor=\"#e8e8f0\" shape=\"Mrecord\" fontname=\"Helvetica\" ]\n");
+
+        for (LatticeNode node : lattice.getNodes()) {
+            if (node.isBos() || node.isEos()) {
+                dot.append("  ").append(node.getId()).append(" [style=invis]\n");
+            } else if (node.getContextId() >= 0) {
+                dot.append("  ").append(node.getId()).append(" [label=\"").append(node.getOffset()).append(": ")
+                        .append(node.getContextId()).append("\"]\n");
+            }
+        }
+
+        for (LatticeEdge edge : lattice.getEdges()) {
+            dot.append("  ").append(edge.getFrom()).append(" -> ").append(edge.getTo()).append(" [label=\"");
+            appendEscaped(dot, edge.getSurface());
+            if (!edge.isBoundary()) {
+                dot.append(' ').append(edge.getWordCost());
+                if (edge.getConnectionCost() >= 0) {
+                    dot.append('+');
+                }
+                dot.append(edge.getConnectionCost());
+            }
+            dot.append('"');
+            if (edge.isBestPath() && !edge.isBoundary()) {
+                dot.append(BEST_PATH_STYLE);
+            }
+            dot.append("]\n");
+        }
+        dot.append('}');
+        return dot.toString();
+    }
+
+    private static void appendEscaped(StringBuilder dot, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                dot.append('\\');
+            }
+            dot.append(c);
+        }
+    }
+}
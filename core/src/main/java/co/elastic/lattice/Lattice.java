@@ -0,0 +1,47 @@
+package co.elastic.lattice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Viterbi lattice nori/kuromoji built for a text, as recorded by their GraphvizFormatter.
+ */
+public class Lattice {
+
+    public static final String BOS = "init";
+    public static final String EOS = "fini";
+
+    private final Map<String, LatticeNode> nodes = new LinkedHashMap<>();
+    private final List<LatticeEdge> edges = new ArrayList<>();
+
+    public void addNode(LatticeNode node) {
+        nodes.put(node.getId(), node);
+    }
+
+    public void addEdge(LatticeEdge edge) {
+        edges.add(edge);
+    }
+
+    public LatticeNode getNode(String id) {
+        return nodes.get(id);
+    }
+
+    public List<LatticeNode> getNodes() {
+        return Collections.unmodifiableList(new ArrayList<>(nodes.values()));
+    }
+
+    public List<LatticeEdge> getEdges() {
+        return Collections.unmodifiableList(edges);
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    public int getEdgeCount() {
+        return edges.size();
+    }
+}
@@ -0,0 +1,46 @@
+package co.elastic.lattice;
+
+import java.util.Collections;
+import java.util.List;
+
+import co.elastic.analysis.AnalyzedToken;
+
+/**
+ * The lattice of a tokenization run together with the tokens the run emitted.
+ */
+public class LatticeAnalysis {
+
+    private final Lattice lattice;
+    private final List<AnalyzedToken> tokens;
+    private final int prunedNodes;
+    private final int prunedEdges;
+
+    public LatticeAnalysis(Lattice lattice, List<AnalyzedToken> tokens) {
+        this(lattice, tokens, 0, 0);
+    }
+
+    public LatticeAnalysis(Lattice lattice, List<AnalyzedToken> tokens, int prunedNodes, int prunedEdges) {
+        this.lattice = lattice;
+        this.tokens = Collections.unmodifiableList(tokens);
+        this.prunedNodes = prunedNodes;
+        this.prunedEdges = prunedEdges;
+    }
+
+    public Lattice getLattice() {
+        return lattice;
+    }
+
+    public List<AnalyzedToken> getTokens() {
+        return tokens;
+    }
+
+    /** How many nodes of the lattice were dropped by a {@link LatticePruning}. */
+    public int getPrunedNodes() {
+        return prunedNodes;
+    }
+
+    /** How many edges of the lattice were dropped by a {@link LatticePruning}. */
+    public int getPrunedEdges() {
+        return prunedEdges;
+    }
+}
@@ -0,0 +1,63 @@
+package co.elastic.lattice;
+
+/**
+ * A candidate token in the Viterbi lattice, leading from the node at its start offset to the node
+ * at its end offset.
+ */
+public class LatticeEdge {
+
+    private final String from;
+    private final String to;
+    private final String surface;
+    private final int wordCost;
+    private final int connectionCost;
+    private final boolean bestPath;
+
+    public LatticeEdge(String from, String to, String surface, int wordCost, int connectionCost,
+                       boolean bestPath) {
+        this.from = from;
+        this.to = to;
+        this.surface = surface;
+        this.wordCost = wordCost;
+        this.connectionCost = connectionCost;
+        this.bestPath = bestPath;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * The token's surface form. For Korean it keeps the leading space that marks a token preceded
+     * by whitespace, which is what the space penalty is charged for.
+     */
+    public String getSurface() {
+        return surface;
+    }
+
+    public int getWordCost() {
+        return wordCost;
+    }
+
+    public int getConnectionCost() {
+        return connectionCost;
+    }
+
+    public int getCost() {
+        return wordCost + connectionCost;
+    }
+
+    /** Whether this edge is on the Viterbi path, i.e. one of the tokens the tokenizer emitted. */
+    public boolean isBestPath() {
+        return bestPath;
+    }
+
+    /** Whether this is the synthetic BOS or EOS edge rather than a token. */
+    public boolean isBoundary() {
+        return Lattice.BOS.equals(from) || Lattice.EOS.equals(to);
+    }
+}
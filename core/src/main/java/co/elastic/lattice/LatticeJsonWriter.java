@@ -0,0 +1,131 @@
+package co.elastic.lattice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import co.elastic.analysis.AnalyzedToken;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes a {@link LatticeAnalysis} as compact JSON, straight to the output stream:
+ *
+ * <pre>
+ * {"nodes":[{"id":"2.1","offset":2,"contextId":3534},...],
+ *  "edges":[{"from":"0.0","to":"2.1","surface":"뿌리","start":0,"end":2,"pos":"NNG",
+ *            "wordCost":2215,"connectionCost":-1158,"best":true},...],
+ *  "tokens":[{"term":"뿌리","start":0,"end":2,"pos":"NNG"},...],
+ *  "pruned":{"nodes":120,"edges":310}}
+ * </pre>
+ *
+ * As in the DOT output, candidate tokens are the edges of the lattice and nodes are the
+ * boundaries between them. The formatter doesn't record the POS of candidates, so {@code pos} is
+ * only known for edges on the best path, which are matched up with the emitted tokens. Fields
+ * without a value are left out rather than written as null.
+ */
+public final class LatticeJsonWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private LatticeJsonWriter() {
+    }
+
+    public static void write(LatticeAnalysis analysis, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            write(analysis, json);
+        }
+    }
+
+    /** Writes the analysis as the next value of {@code json}, e.g. as a field of an enclosing object. */
+    public static void write(LatticeAnalysis analysis, JsonGenerator json) throws IOException {
+        Lattice lattice = analysis.getLattice();
+        Map<String, String> posByToken = new HashMap<>();
+        for (AnalyzedToken token : analysis.getTokens()) {
+            if (token.getPartOfSpeech() != null) {
+                posByToken.putIfAbsent(tokenKey(token.getEndOffset(), token.getTerm()), token.getPartOfSpeech());
+            }
+        }
+
+        json.writeStartObject();
+
+        json.writeArrayFieldStart("nodes");
+        for (LatticeNode node : lattice.getNodes()) {
+            json.writeStartObject();
+            json.writeStringField("id", node.getId());
+            json.writeNumberField("offset", node.getOffset());
+            if (node.getContextId() >= 0) {
+                json.writeNumberField("contextId", node.getContextId());
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+
+        json.writeArrayFieldStart("edges");
+        for (LatticeEdge edge : lattice.getEdges()) {
+            writeEdge(json, lattice, edge, posByToken);
+        }
+        json.writeEndArray();
+
+        json.writeArrayFieldStart("tokens");
+        for (AnalyzedToken token : analysis.getTokens()) {
+            json.writeStartObject();
+            json.writeStringField("term", token.getTerm());
+            json.writeNumberField("start", token.getStartOffset());
+            json.writeNumberField("end", token.getEndOffset());
+            if (token.getPartOfSpeech() != null) {
+                json.writeStringField("pos", token.getPartOfSpeech());
+            }
+            if (token.getReading() != null) {
+                json.writeStringField("reading", token.getReading());
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+
+        if (analysis.getPrunedNodes() > 0 || analysis.getPrunedEdges() > 0) {
+            json.writeObjectFieldStart("pruned");
+            json.writeNumberField("nodes", analysis.getPrunedNodes());
+            json.writeNumberField("edges", analysis.getPrunedEdges());
+            json.writeEndObject();
+        }
+
+        json.writeEndObject();
+    }
+
+    private static void writeEdge(JsonGenerator json, Lattice lattice, LatticeEdge edge,
+                                  Map<String, String> posByToken) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("from", edge.getFrom());
+        json.writeStringField("to", edge.getTo());
+        if (edge.isBoundary()) {
+            json.writeStringField("surface", edge.getSurface());
+        } else {
+            // Korean surfaces keep the whitespace before the token; the offsets skip it, like the emitted tokens do.
+            String surface = edge.getSurface();
+            String trimmed = surface.trim();
+            int start = lattice.getNode(edge.getFrom()).getOffset() + surface.indexOf(trimmed);
+            int end = lattice.getNode(edge.getTo()).getOffset();
+            json.writeStringField("surface", trimmed);
+            json.writeNumberField("start", start);
+            json.writeNumberField("end", end);
+            String pos = edge.isBestPath() ? posByToken.get(tokenKey(end, trimmed)) : null;
+            if (pos != null) {
+                json.writeStringField("pos", pos);
+            }
+            json.writeNumberField("wordCost", edge.getWordCost());
+            json.writeNumberField("connectionCost", edge.getConnectionCost());
+        }
+        if (edge.isBestPath()) {
+            json.writeBooleanField("best", true);
+        }
+        json.writeEndObject();
+    }
+
+    private static String tokenKey(int endOffset, String term) {
+        return endOffset + ":" + term;
+    }
+}
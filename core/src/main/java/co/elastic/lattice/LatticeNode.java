@@ -0,0 +1,39 @@
+package co.elastic.lattice;
+
+/**
+ * A position in the Viterbi lattice: the boundary at {@code offset} reached with the
+ * connection context {@code contextId}. The synthetic start and end nodes have ids
+ * {@link Lattice#BOS} and {@link Lattice#EOS}.
+ */
+public class LatticeNode {
+
+    private final String id;
+    private final int offset;
+    private final int contextId;
+
+    public LatticeNode(String id, int offset, int contextId) {
+        this.id = id;
+        this.offset = offset;
+        this.contextId = contextId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getContextId() {
+        return contextId;
+    }
+
+    public boolean isBos() {
+        return Lattice.BOS.equals(id);
+    }
+
+    public boolean isEos() {
+        return Lattice.EOS.equals(id);
+    }
+}
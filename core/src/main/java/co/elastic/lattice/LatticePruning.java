@@ -0,0 +1,284 @@
+package co.elastic.lattice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Drops the candidates of a {@link Lattice} that are far from the Viterbi path, so that long or
+ * ambiguous inputs render as a readable graph instead of a wall of high-cost dead ends.
+ *
+ * The formatters only record the cheapest way the tokenizer found to reach each node, so the
+ * lattice is a tree rooted at BOS in which the Viterbi path is the only one that reaches EOS.
+ * Candidates are therefore compared position by position, by the summed word and connection costs
+ * of the path that reaches them:
+ * <ul>
+ *   <li>{@code best} keeps the Viterbi path alone,</li>
+ *   <li>{@code top:K} keeps the K cheapest nodes at every offset, i.e. the K best partial paths
+ *       to each position,</li>
+ *   <li>{@code cost:N} keeps the nodes that cost at most N more than the Viterbi path at the
+ *       same position.</li>
+ * </ul>
+ * Edges on the Viterbi path are always kept, as are the edges leading to a kept node, and a node
+ * is kept as long as a kept edge touches it.
+ */
+public final class LatticePruning {
+
+    public static final LatticePruning NONE = new LatticePruning(Strategy.NONE, 0);
+
+    private enum Strategy { NONE, BEST, TOP, COST }
+
+    private static final long UNREACHABLE = Long.MAX_VALUE / 4;
+
+    private final Strategy strategy;
+    private final int limit;
+
+    private LatticePruning(Strategy strategy, int limit) {
+        this.strategy = strategy;
+        this.limit = limit;
+    }
+
+    public static LatticePruning bestPath() {
+        return new LatticePruning(Strategy.BEST, 1);
+    }
+
+    public static LatticePruning topPaths(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of paths should be a positive number: " + k);
+        }
+        return new LatticePruning(Strategy.TOP, k);
+    }
+
+    public static LatticePruning costMargin(int margin) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("The cost margin can't be negative: " + margin);
+        }
+        return new LatticePruning(Strategy.COST, margin);
+    }
+
+    /** Parses {@code none}, {@code best}, {@code top:K} or {@code cost:N}; null or empty is none. */
+    public static LatticePruning parse(String spec) {
+        if (spec == null || spec.trim().isEmpty() || spec.trim().equalsIgnoreCase("none")) {
+            return NONE;
+        }
+        String normalized = spec.trim().toLowerCase();
+        if (normalized.equals("best")) {
+            return bestPath();
+        }
+        int colon = normalized.indexOf(':');
+        if (colon > 0) {
+            String name = normalized.substring(0, colon);
+            int value;
+            try {
+                value = Integer.parseInt(normalized.substring(colon + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Illegal pruning: " + spec);
+            }
+            if (name.equals("top")) {
+                return topPaths(value);
+            }
+            if (name.equals("cost")) {
+                return costMargin(value);
+            }
+        }
+        throw new IllegalArgumentException("Illegal pruning: " + spec);
+    }
+
+    public boolean isNone() {
+        return strategy == Strategy.NONE;
+    }
+
+    /**
+     * A rough upper bound on the edges left of a lattice of {@code edges} edges over
+     * {@code textLength} characters, for estimating what it costs to render before it is built.
+     */
+    public int expectedEdges(int edges, int textLength) {
+        switch (strategy) {
+            case BEST:
+                return Math.min(edges, textLength + 2);
+            case TOP:
+                return (int) Math.min(edges, (long) textLength * limit + 2);
+            default:
+                return edges;
+        }
+    }
+
+    /** Returns the pruned lattice; the lattice itself is left as is. */
+    public Lattice prune(Lattice lattice) {
+        if (strategy == Strategy.NONE) {
+            return lattice;
+        }
+
+        List<LatticeEdge> edges = lattice.getEdges();
+        boolean[] keep = new boolean[edges.size()];
+        for (int i = 0; i < keep.length; i++) {
+            keep[i] = edges.get(i).isBestPath();
+        }
+        if (strategy == Strategy.TOP) {
+            keepTopPaths(lattice, keep);
+        } else if (strategy == Strategy.COST) {
+            keepWithinMargin(lattice, keep);
+        }
+
+        Set<String> touched = new HashSet<>();
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                touched.add(edges.get(i).getFrom());
+                touched.add(edges.get(i).getTo());
+            }
+        }
+        Lattice pruned = new Lattice();
+        for (LatticeNode node : lattice.getNodes()) {
+            if (node.isBos() || node.isEos() || touched.contains(node.getId())) {
+                pruned.addNode(node);
+            }
+        }
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                pruned.addEdge(edges.get(i));
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * Keeps, for every offset, the {@code limit} nodes reached at the lowest cost, with the edges
+     * that lead to them.
+     */
+    private void keepTopPaths(Lattice lattice, boolean[] keep) {
+        Graph graph = new Graph(lattice);
+        Map<Integer, List<Integer>> byOffset = new HashMap<>();
+        for (int node : graph.order) {
+            if (graph.forward[node] < UNREACHABLE && graph.backEdge[node] >= 0) {
+                byOffset.computeIfAbsent(graph.offset[node], offset -> new ArrayList<>()).add(node);
+            }
+        }
+        for (List<Integer> nodes : byOffset.values()) {
+            nodes.sort((a, b) -> Long.compare(graph.forward[a], graph.forward[b]));
+            for (int i = 0; i < Math.min(limit, nodes.size()); i++) {
+                graph.keepPathTo(nodes.get(i), keep);
+            }
+        }
+    }
+
+    /**
+     * Keeps every node whose cost exceeds that of the best path by at most the margin, with the
+     * edges that lead to it. A node is compared with the best path where that path last ended a
+     * token at or before the node's offset.
+     */
+    private void keepWithinMargin(Lattice lattice, boolean[] keep) {
+        Graph graph = new Graph(lattice);
+        TreeMap<Integer, Long> bestCosts = new TreeMap<>();
+        List<LatticeEdge> edges = lattice.getEdges();
+        for (int edge = 0; edge < edges.size(); edge++) {
+            int to = graph.to[edge];
+            if (edges.get(edge).isBestPath() && graph.forward[to] < UNREACHABLE) {
+                bestCosts.merge(graph.offset[to], graph.forward[to], Math::min);
+            }
+        }
+        for (int node : graph.order) {
+            Map.Entry<Integer, Long> best = bestCosts.floorEntry(graph.offset[node]);
+            if (best != null && graph.backEdge[node] >= 0 && graph.forward[node] - best.getValue() <= limit) {
+                graph.keepPathTo(node, keep);
+            }
+        }
+    }
+
+    /** The spec this pruning was parsed from, e.g. {@code top:3}. */
+    @Override
+    public String toString() {
+        switch (strategy) {
+            case BEST:
+                return "best";
+            case TOP:
+                return "top:" + limit;
+            case COST:
+                return "cost:" + limit;
+            default:
+                return "none";
+        }
+    }
+
+    /**
+     * The lattice as arrays indexed by node and edge. Every token edge ends at a later offset than
+     * it starts, so ordering the nodes by offset, with BOS first and EOS last, is a topological
+     * order.
+     */
+    private static final class Graph {
+        final int[] order;
+        final int[] offset;
+        final int[] from;
+        final int[] to;
+        final long[] forward;
+        final int[] backEdge;
+
+        Graph(Lattice lattice) {
+            List<LatticeNode> nodes = lattice.getNodes();
+            Map<String, Integer> index = new HashMap<>();
+            this.offset = new int[nodes.size()];
+            for (int i = 0; i < nodes.size(); i++) {
+                index.put(nodes.get(i).getId(), i);
+                offset[i] = rank(nodes.get(i));
+            }
+
+            List<LatticeEdge> edges = lattice.getEdges();
+            this.from = new int[edges.size()];
+            this.to = new int[edges.size()];
+            List<List<Integer>> incoming = new ArrayList<>(nodes.size());
+            for (int i = 0; i < nodes.size(); i++) {
+                incoming.add(new ArrayList<>(1));
+            }
+            for (int i = 0; i < edges.size(); i++) {
+                from[i] = index.get(edges.get(i).getFrom());
+                to[i] = index.get(edges.get(i).getTo());
+                incoming.get(to[i]).add(i);
+            }
+
+            Integer[] sorted = new Integer[nodes.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, (a, b) -> Integer.compare(offset[a], offset[b]));
+            this.order = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                order[i] = sorted[i];
+            }
+
+            this.forward = new long[nodes.size()];
+            this.backEdge = new int[nodes.size()];
+            Arrays.fill(forward, UNREACHABLE);
+            Arrays.fill(backEdge, -1);
+            forward[index.get(Lattice.BOS)] = 0;
+            for (int node : order) {
+                for (int edge : incoming.get(node)) {
+                    long cost = forward[from[edge]] + edges.get(edge).getCost();
+                    if (forward[from[edge]] < UNREACHABLE && cost < forward[node]) {
+                        forward[node] = cost;
+                        backEdge[node] = edge;
+                    }
+                }
+            }
+        }
+
+        /** Keeps the cheapest chain of edges from BOS to {@code node}. */
+        void keepPathTo(int node, boolean[] keep) {
+            int edge = backEdge[node];
+            while (edge >= 0 && !keep[edge]) {
+                keep[edge] = true;
+                edge = backEdge[from[edge]];
+            }
+        }
+
+        private static int rank(LatticeNode node) {
+            if (node.isBos()) {
+                return -1;
+            }
+            return node.isEos() ? Integer.MAX_VALUE : node.getOffset();
+        }
+    }
+}
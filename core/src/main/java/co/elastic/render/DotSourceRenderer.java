@@ -0,0 +1,26 @@
+package co.elastic.render;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * "Renders" a graph as its DOT source, for clients that lay it out themselves.
+ */
+public class DotSourceRenderer implements Renderer {
+
+    @Override
+    public void render(String dot, OutputStream out) throws IOException {
+        out.write(dot.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String getContentType() {
+        return OutputFormat.DOT.getContentType();
+    }
+
+    @Override
+    public String getFileExtension() {
+        return OutputFormat.DOT.getFileExtension();
+    }
+}
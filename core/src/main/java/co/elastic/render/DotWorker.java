@@ -0,0 +1,83 @@
+package co.elastic.render;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A long-lived {@code dot} process that renders one graph at a time: each graph is written to
+ * its stdin and the image is read back from its stdout.
+ */
+final class DotWorker {
+
+    private final OutputFormat format;
+    private final Process process;
+    private final Writer stdin;
+    private final InputStream stdout;
+    private volatile String lastError = "";
+    private int jobs;
+
+    DotWorker(String exec, OutputFormat format) throws IOException {
+        this.format = format;
+        ProcessBuilder processBuilder = new ProcessBuilder(exec, "-T" + format.getFileExtension());
+        this.process = processBuilder.start();
+        this.stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        this.stdout = new BufferedInputStream(process.getInputStream());
+
+        // dot reports warnings on stderr; it has to be drained or the process eventually blocks.
+        Thread drainer = new Thread(this::drainStderr, "dot-worker-stderr");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    void render(String dot, OutputStream out) throws IOException {
+        jobs++;
+        // Warnings of earlier graphs don't explain why this one fails.
+        lastError = "";
+        stdin.write(dot);
+        // GraphvizFormatter doesn't terminate its last line, which line-oriented readers wait for.
+        stdin.write('\n');
+        stdin.flush();
+
+        try {
+            ImageFrames.copy(format, stdout, out);
+        } catch (IOException e) {
+            String error = lastError;
+            throw error.isEmpty() ? e : new IOException("Graphviz failed: " + error, e);
+        }
+    }
+
+    OutputFormat getFormat() {
+        return format;
+    }
+
+    int getJobs() {
+        return jobs;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    void destroy() {
+        process.destroyForcibly();
+    }
+
+    private void drainStderr() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lastError = line;
+            }
+        } catch (IOException e) {
+            // The process is gone.
+        }
+    }
+}
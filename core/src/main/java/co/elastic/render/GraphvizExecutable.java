@@ -0,0 +1,38 @@
+package co.elastic.render;
+
+import java.io.File;
+
+/**
+ * Locates the Graphviz {@code dot} executable.
+ */
+public final class GraphvizExecutable {
+
+    private GraphvizExecutable() {
+    }
+
+    /**
+     * Returns the configured path if there is one, otherwise the usual install location for the
+     * given OS if it exists, otherwise plain {@code dot} to be looked up on the PATH.
+     */
+    public static String resolve(String osName, String configuredPath) {
+        if (configuredPath != null && !configuredPath.isEmpty()) {
+            return configuredPath;
+        }
+
+        String defaultPath;
+        if (osName.contains("Windows")) {
+            defaultPath = "C:/Program Files (x86)/Graphviz2.46.1/bin/dot.exe";
+        } else if (osName.contains("Linux")) {
+            defaultPath = "/usr/bin/dot";
+        } else if (osName.contains("Mac")) {
+            defaultPath = "/usr/local/bin/dot";
+        } else {
+            defaultPath = null;
+        }
+
+        if (defaultPath != null && new File(defaultPath).canExecute()) {
+            return defaultPath;
+        }
+        return osName.contains("Windows") ? "dot.exe" : "dot";
+    }
+}
@@ -0,0 +1,335 @@
+package co.elastic.render;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders graphs on a fixed number of warm {@code dot} processes.
+ *
+ * Jobs wait in a bounded queue for one of the {@code workers} render threads, each of which takes
+ * an idle {@link DotWorker}. A worker is replaced after {@code maxJobsPerWorker} renders, and
+ * whenever a render fails or times out, since its stdout can no longer be trusted to be at an
+ * image boundary. When the queue is full, {@link #render} fails fast with
+ * {@link RenderQueueFullException} instead of piling up more work. The timeout of a render starts
+ * when a render thread picks it up, so time spent in the queue never counts against it.
+ *
+ * Idle workers are kept per {@link OutputFormat}, since a dot process is started for a single
+ * {@code -T} format. The pool itself renders JPEG; {@link #forFormat} gives a view that renders
+ * another format on the same threads. A render that finds no idle worker for its format replaces
+ * an idle worker of another format, so there are never more than {@code workers} processes.
+ */
+public class GraphvizRendererPool implements Renderer, AutoCloseable {
+
+    private final String exec;
+    private final int queueCapacity;
+    private final int maxJobsPerWorker;
+    private final long timeoutMillis;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final Map<OutputFormat, BlockingQueue<DotWorker>> idleWorkers = new EnumMap<>(OutputFormat.class);
+    private final Map<OutputFormat, Renderer> views = new EnumMap<>(OutputFormat.class);
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private static final ThreadLocal<Long> LAST_WAIT_NANOS = new ThreadLocal<>();
+
+    public GraphvizRendererPool(String exec, int workers, int queueCapacity, int maxJobsPerWorker,
+                                long timeoutMillis) {
+        this.exec = exec;
+        this.queueCapacity = queueCapacity;
+        this.maxJobsPerWorker = maxJobsPerWorker;
+        this.timeoutMillis = timeoutMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "dot-renderer-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.prestartAllCoreThreads();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dot-renderer-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (OutputFormat format : OutputFormat.values()) {
+            if (format != OutputFormat.DOT) {
+                idleWorkers.put(format, new LinkedBlockingQueue<>());
+                views.put(format, new FormatView(format));
+            }
+        }
+
+        for (int i = 0; i < workers; i++) {
+            try {
+                idleWorkers.get(OutputFormat.JPG).add(new DotWorker(exec, OutputFormat.JPG));
+            } catch (IOException e) {
+                // dot may not be installed; workers are started on demand and the error surfaces there.
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void render(String dot, OutputStream out) throws IOException {
+        render(OutputFormat.JPG, dot, out);
+    }
+
+    /** A renderer that draws {@code format} on this pool's workers. */
+    public Renderer forFormat(OutputFormat format) {
+        Renderer view = views.get(format);
+        if (view == null) {
+            throw new IllegalArgumentException("Graphviz does not draw " + format);
+        }
+        return view;
+    }
+
+    private void render(OutputFormat format, String dot, OutputStream out) throws IOException {
+        Job job = new Job(format, dot);
+        try {
+            executor.execute(job::run);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new RenderQueueFullException(queueCapacity);
+        }
+
+        try {
+            // Jobs time themselves out once they run, so this only waits for the queue and the render.
+            job.result.get();
+            LAST_WAIT_NANOS.set(job.waitNanos);
+            job.frame.writeTo(out);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.abort();
+            throw new IOException("Render was interrupted", e);
+        }
+    }
+
+    @Override
+    public String getContentType() {
+        return "image/jpeg";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "jpg";
+    }
+
+    private DotWorker acquire(OutputFormat format) throws IOException {
+        BlockingQueue<DotWorker> idle = idleWorkers.get(format);
+        DotWorker worker = idle.poll();
+        while (worker != null && !worker.isAlive()) {
+            recycled.incrementAndGet();
+            worker = idle.poll();
+        }
+        if (worker != null) {
+            return worker;
+        }
+
+        for (BlockingQueue<DotWorker> other : idleWorkers.values()) {
+            DotWorker evicted = other.poll();
+            if (evicted != null) {
+                evicted.destroy();
+                recycled.incrementAndGet();
+                break;
+            }
+        }
+        return new DotWorker(exec, format);
+    }
+
+    private void release(DotWorker worker, boolean healthy) {
+        BlockingQueue<DotWorker> idle = idleWorkers.get(worker.getFormat());
+        if (healthy && worker.isAlive() && worker.getJobs() < maxJobsPerWorker && !executor.isShutdown()) {
+            idle.add(worker);
+            return;
+        }
+        worker.destroy();
+        recycled.incrementAndGet();
+        if (!executor.isShutdown()) {
+            try {
+                idle.add(new DotWorker(exec, worker.getFormat()));
+            } catch (IOException e) {
+                // Retried on the next acquire.
+            }
+        }
+    }
+
+    /**
+     * How long the last render of the calling thread waited for a render thread, or 0 if it hasn't
+     * finished a render on a pool since it last asked. Lets callers that time a render tell the
+     * time spent queued from the time spent rendering.
+     */
+    public static long takeWaitNanos() {
+        Long waitNanos = LAST_WAIT_NANOS.get();
+        LAST_WAIT_NANOS.remove();
+        return waitNanos == null ? 0 : waitNanos;
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        do {
+            max = maxWaitNanos.get();
+        } while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public Map<String, Object> getStats() {
+        long jobs = completed.get() + failed.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", executor.getCorePoolSize());
+        stats.put("active", executor.getActiveCount());
+        Map<String, Integer> idle = new LinkedHashMap<>();
+        idleWorkers.forEach((format, workers) -> idle.put(format.getFileExtension(), workers.size()));
+        stats.put("idle", idle);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("recycled", recycled.get());
+        stats.put("avgWaitMillis", jobs == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / jobs);
+        stats.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+        for (BlockingQueue<DotWorker> idle : idleWorkers.values()) {
+            DotWorker worker;
+            while ((worker = idle.poll()) != null) {
+                worker.destroy();
+            }
+        }
+    }
+
+    private final class FormatView implements Renderer {
+        private final OutputFormat format;
+
+        FormatView(OutputFormat format) {
+            this.format = format;
+        }
+
+        @Override
+        public void render(String dot, OutputStream out) throws IOException {
+            GraphvizRendererPool.this.render(format, dot, out);
+        }
+
+        @Override
+        public String getContentType() {
+            return format.getContentType();
+        }
+
+        @Override
+        public String getFileExtension() {
+            return format.getFileExtension();
+        }
+    }
+
+    private final class Job {
+        private final OutputFormat format;
+        private final String dot;
+        // The caller copies the image once the job has succeeded, so a render that times out
+        // halfway never leaves part of an image in its output.
+        final ImageBuffer frame = new ImageBuffer();
+        private final long enqueuedAt = System.nanoTime();
+        private volatile DotWorker worker;
+        private volatile boolean aborted;
+        private volatile boolean timedOut;
+        private volatile long waitNanos;
+        // Completed by the render thread, or by the watchdog when the render times out.
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Job(OutputFormat format, String dot) {
+            this.format = format;
+            this.dot = dot;
+        }
+
+        void run() {
+            try {
+                render();
+                result.complete(null);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void render() throws IOException {
+            waitNanos = System.nanoTime() - enqueuedAt;
+            recordWait(waitNanos);
+            if (aborted) {
+                throw new IOException("Render was abandoned before it started");
+            }
+
+            DotWorker current = acquire(format);
+            worker = current;
+            ScheduledFuture<?> deadline = watchdog.schedule(this::timeOut, timeoutMillis, TimeUnit.MILLISECONDS);
+            boolean healthy = false;
+            try {
+                current.render(dot, frame);
+                healthy = !aborted;
+                completed.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                if (timedOut) {
+                    throw new RenderTimeoutException(timeoutMillis, e);
+                }
+                throw e;
+            } finally {
+                deadline.cancel(false);
+                worker = null;
+                release(current, healthy);
+            }
+        }
+
+        /**
+         * Fails the render and kills its worker. The caller is released right away rather than when
+         * the render thread notices, since a process can leave children that keep its stdout open.
+         */
+        private void timeOut() {
+            timedOut = true;
+            result.completeExceptionally(new RenderTimeoutException(timeoutMillis, null));
+            abort();
+        }
+
+        /** Kills the worker this job is running on, which unblocks the render thread reading from it. */
+        void abort() {
+            aborted = true;
+            DotWorker current = worker;
+            if (current != null) {
+                current.destroy();
+            }
+        }
+    }
+}
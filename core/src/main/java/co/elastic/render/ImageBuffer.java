@@ -0,0 +1,100 @@
+package co.elastic.render;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds a rendered image in a list of chunks.
+ *
+ * Unlike {@link java.io.ByteArrayOutputStream} it never copies what it already holds, neither
+ * while growing nor when the image is handed on: {@link #writeTo} writes the chunks as they are.
+ */
+public final class ImageBuffer extends OutputStream {
+
+    private static final int MIN_CHUNK_SIZE = 4 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current;
+    private int position;
+    private long size;
+    private Map<String, String> properties = Collections.emptyMap();
+
+    @Override
+    public void write(int b) {
+        if (current == null || position == current.length) {
+            nextChunk();
+        }
+        current[position++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (current == null || position == current.length) {
+                nextChunk();
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(b, off, current, position, n);
+            position += n;
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    private void nextChunk() {
+        // Chunks grow with the image so small lattices don't pin large arrays in the render cache.
+        current = new byte[(int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size))];
+        chunks.add(current);
+        position = 0;
+    }
+
+    /**
+     * Records a fact about how the image was made, e.g. how much of the lattice was pruned, which
+     * is kept with the image wherever it is cached.
+     */
+    public void setProperty(String name, String value) {
+        if (properties.isEmpty()) {
+            properties = new LinkedHashMap<>(4);
+        }
+        properties.put(name, value);
+    }
+
+    public Map<String, String> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        int last = chunks.size() - 1;
+        for (int i = 0; i < last; i++) {
+            out.write(chunks.get(i));
+        }
+        if (last >= 0) {
+            out.write(chunks.get(last), 0, position);
+        }
+    }
+
+    /** Copies the image into a single array, for callers that need one. */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            int n = i == chunks.size() - 1 ? position : chunk.length;
+            System.arraycopy(chunk, 0, bytes, offset, n);
+            offset += n;
+        }
+        return bytes;
+    }
+}
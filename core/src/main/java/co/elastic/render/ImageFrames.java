@@ -0,0 +1,167 @@
+package co.elastic.render;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads exactly one image off a stream that carries several images back to back, which is what
+ * a long-lived {@code dot} process writes to its stdout when it is fed one graph after another.
+ */
+final class ImageFrames {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int PNG_IEND = 0x49454E44;
+    private static final byte[] SVG_END = "</svg>".getBytes(StandardCharsets.US_ASCII);
+
+    private ImageFrames() {
+    }
+
+    /** Copies one image in {@code format}, which must be one that Graphviz draws. */
+    static void copy(OutputFormat format, InputStream in, OutputStream out) throws IOException {
+        switch (format) {
+            case JPG:
+                copyJpeg(in, out);
+                return;
+            case PNG:
+                copyPng(in, out);
+                return;
+            case SVG:
+                copySvg(in, out);
+                return;
+            default:
+                throw new IllegalArgumentException("Graphviz does not draw " + format);
+        }
+    }
+
+    /**
+     * Copies one JPEG image from {@code in} to {@code out}, stopping right after its EOI marker.
+     *
+     * Segments are skipped by their declared length, so marker bytes inside headers are not
+     * mistaken for the end of the image. Inside entropy-coded data a 0xFF byte is always followed
+     * by a stuffed zero, a restart marker or the next real marker.
+     */
+    static void copyJpeg(InputStream in, OutputStream out) throws IOException {
+        if (read(in, out) != 0xFF || read(in, out) != 0xD8) {
+            throw new IOException("Renderer output is not a JPEG image");
+        }
+
+        int marker = nextMarker(in, out);
+        while (true) {
+            if (marker == 0xD9) {
+                return;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                marker = nextMarker(in, out);
+                continue;
+            }
+
+            int length = (read(in, out) << 8) | read(in, out);
+            copy(in, out, length - 2);
+
+            marker = marker == 0xDA ? skipScan(in, out) : nextMarker(in, out);
+        }
+    }
+
+    /**
+     * Copies one PNG image, stopping right after its IEND chunk. Every chunk is a big-endian
+     * length, a type, the data and a CRC.
+     */
+    static void copyPng(InputStream in, OutputStream out) throws IOException {
+        for (byte b : PNG_SIGNATURE) {
+            if (read(in, out) != (b & 0xFF)) {
+                throw new IOException("Renderer output is not a PNG image");
+            }
+        }
+
+        while (true) {
+            int length = readInt(in, out);
+            int type = readInt(in, out);
+            copy(in, out, length);
+            copy(in, out, 4);
+            if (type == PNG_IEND) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies one SVG document, stopping right after its closing {@code </svg>} tag. Labels are
+     * escaped, so the tag can't occur earlier. Whitespace left over from the previous document is
+     * skipped rather than copied, since nothing may precede the XML declaration.
+     */
+    static void copySvg(InputStream in, OutputStream out) throws IOException {
+        int b = in.read();
+        while (b == '\n' || b == '\r' || b == ' ' || b == '\t') {
+            b = in.read();
+        }
+        if (b != '<') {
+            throw new IOException(b < 0 ? "Renderer output ended before the image"
+                    : "Renderer output is not an SVG image");
+        }
+        out.write(b);
+
+        int matched = 0;
+        while (matched < SVG_END.length) {
+            b = read(in, out);
+            if (b == SVG_END[matched]) {
+                matched++;
+            } else {
+                matched = b == SVG_END[0] ? 1 : 0;
+            }
+        }
+    }
+
+    private static int nextMarker(InputStream in, OutputStream out) throws IOException {
+        if (read(in, out) != 0xFF) {
+            throw new IOException("Corrupt JPEG stream from renderer");
+        }
+        int marker = read(in, out);
+        while (marker == 0xFF) {
+            marker = read(in, out);
+        }
+        return marker;
+    }
+
+    private static int skipScan(InputStream in, OutputStream out) throws IOException {
+        while (true) {
+            if (read(in, out) != 0xFF) {
+                continue;
+            }
+            int next = read(in, out);
+            while (next == 0xFF) {
+                next = read(in, out);
+            }
+            if (next != 0x00 && (next < 0xD0 || next > 0xD7)) {
+                return next;
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, int length) throws IOException {
+        byte[] buffer = new byte[Math.min(Math.max(length, 0), 8192)];
+        while (length > 0) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new EOFException("Renderer output ended in the middle of an image");
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    private static int readInt(InputStream in, OutputStream out) throws IOException {
+        return (read(in, out) << 24) | (read(in, out) << 16) | (read(in, out) << 8) | read(in, out);
+    }
+
+    private static int read(InputStream in, OutputStream out) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Renderer output ended in the middle of an image");
+        }
+        out.write(b);
+        return b;
+    }
+}
@@ -0,0 +1,54 @@
+package co.elastic.render;
+
+/**
+ * The formats a lattice can be written in: images drawn by Graphviz or the built-in SVG renderer,
+ * or the DOT source itself.
+ */
+public enum OutputFormat {
+
+    JPG("jpg", "image/jpeg", false),
+    PNG("png", "image/png", false),
+    SVG("svg", "image/svg+xml", true),
+    DOT("dot", "text/vnd.graphviz", true);
+
+    private final String fileExtension;
+    private final String contentType;
+    private final boolean text;
+
+    OutputFormat(String fileExtension, String contentType, boolean text) {
+        this.fileExtension = fileExtension;
+        this.contentType = contentType;
+        this.text = text;
+    }
+
+    /** Also the name Graphviz knows the format by, as in {@code dot -Tpng}. */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /** Whether the format is text, which compresses well, rather than an already compressed image. */
+    public boolean isText() {
+        return text;
+    }
+
+    /** Parses a format name such as {@code png}, also accepting {@code jpeg} and {@code gv}. */
+    public static OutputFormat parse(String name) {
+        String normalized = name.trim().toLowerCase();
+        if (normalized.equals("jpeg")) {
+            return JPG;
+        }
+        if (normalized.equals("gv")) {
+            return DOT;
+        }
+        for (OutputFormat format : values()) {
+            if (format.fileExtension.equals(normalized)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name);
+    }
+}
@@ -0,0 +1,68 @@
+package co.elastic.render;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Forks a new {@code dot} process for every render, piping the graph into its stdin and the image
+ * out of its stdout.
+ */
+public class ProcessRenderer implements Renderer {
+
+    private final String exec;
+    private final OutputFormat format;
+
+    public ProcessRenderer(String exec) {
+        this(exec, OutputFormat.JPG);
+    }
+
+    public ProcessRenderer(String exec, OutputFormat format) {
+        this.exec = exec;
+        this.format = format;
+    }
+
+    @Override
+    public void render(String dot, OutputStream out) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(exec, "-T" + format.getFileExtension());
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = processBuilder.start();
+
+        try {
+            // dot reads the whole graph before it writes anything, so this can't deadlock.
+            try (Writer stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                stdin.write(dot);
+            }
+
+            try (InputStream stdout = process.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = stdout.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            if (process.waitFor() != 0) {
+                throw new IOException("Graphviz command failed with exit code: " + process.exitValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Process was interrupted", e);
+        } finally {
+            process.destroy();
+        }
+    }
+
+    @Override
+    public String getContentType() {
+        return format.getContentType();
+    }
+
+    @Override
+    public String getFileExtension() {
+        return format.getFileExtension();
+    }
+}
@@ -0,0 +1,13 @@
+package co.elastic.render;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a render is rejected because the renderer's job queue is already full.
+ */
+public class RenderQueueFullException extends IOException {
+
+    public RenderQueueFullException(int capacity) {
+        super("Render queue is full (capacity " + capacity + ")");
+    }
+}
@@ -0,0 +1,14 @@
+package co.elastic.render;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a render takes longer than the renderer allows; the time a job spent queued doesn't
+ * count.
+ */
+public class RenderTimeoutException extends IOException {
+
+    public RenderTimeoutException(long timeoutMillis, Throwable cause) {
+        super("Graphviz render timed out after " + timeoutMillis + " ms", cause);
+    }
+}
@@ -0,0 +1,22 @@
+package co.elastic.render;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Turns a Graphviz DOT graph into an image.
+ */
+public interface Renderer {
+
+    /**
+     * Writes the image for {@code dot} to {@code out}. If this throws, whatever was written to
+     * {@code out} so far is incomplete and should be discarded.
+     */
+    void render(String dot, OutputStream out) throws IOException;
+
+    /** The media type of the images this renderer produces. */
+    String getContentType();
+
+    /** The file extension for the images this renderer produces, without the dot. */
+    String getFileExtension();
+}
@@ -0,0 +1,50 @@
+package co.elastic.render;
+
+/**
+ * Picks the renderer for a backend and output format.
+ */
+public final class Renderers {
+
+    public static final String BACKEND_GRAPHVIZ = "graphviz";
+    public static final String BACKEND_SVG = "svg";
+
+    private Renderers() {
+    }
+
+    /**
+     * The format a backend draws in when none is asked for: JPEG for Graphviz and SVG for the
+     * built-in renderer.
+     */
+    public static OutputFormat defaultFormat(String backend) {
+        return BACKEND_SVG.equalsIgnoreCase(backend) ? OutputFormat.SVG : OutputFormat.JPG;
+    }
+
+    /**
+     * Checks that the backend can produce the format. The built-in renderer only draws SVG, and
+     * DOT needs no backend at all.
+     */
+    public static OutputFormat check(String backend, OutputFormat format) {
+        if (format == null) {
+            return defaultFormat(backend);
+        }
+        if (BACKEND_SVG.equalsIgnoreCase(backend) && format != OutputFormat.SVG && format != OutputFormat.DOT) {
+            throw new IllegalArgumentException("The built-in renderer only draws SVG, not " + format.getFileExtension());
+        }
+        return format;
+    }
+
+    /**
+     * Creates a renderer that forks {@code exec} for every Graphviz render; see
+     * {@link GraphvizRendererPool#forFormat} for one that reuses dot processes.
+     */
+    public static Renderer create(String exec, String backend, OutputFormat format) {
+        format = check(backend, format);
+        if (format == OutputFormat.DOT) {
+            return new DotSourceRenderer();
+        }
+        if (BACKEND_SVG.equalsIgnoreCase(backend)) {
+            return new SvgLatticeRenderer();
+        }
+        return new ProcessRenderer(exec, format);
+    }
+}
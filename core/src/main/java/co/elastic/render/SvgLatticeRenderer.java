@@ -0,0 +1,185 @@
+package co.elastic.render;
+
+import co.elastic.lattice.DotLatticeParser;
+import co.elastic.lattice.Lattice;
+import co.elastic.lattice.LatticeEdge;
+import co.elastic.lattice.LatticeNode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Draws the lattice as SVG inside the JVM, without Graphviz.
+ *
+ * A Viterbi lattice is already layered by character offset, so there's no need for a general
+ * graph layout: every offset becomes a column, the nodes at that offset are stacked in it, and
+ * edges are drawn as curves from column to column. Styles follow the ones GraphvizFormatter asks
+ * dot for, so both backends look alike.
+ */
+public class SvgLatticeRenderer implements Renderer {
+
+    private static final int NODE_WIDTH = 84;
+    private static final int NODE_HEIGHT = 26;
+    private static final int COLUMN_GAP = 150;
+    private static final int ROW_GAP = 18;
+    private static final int MARGIN = 20;
+
+    @Override
+    public void render(String dot, OutputStream out) throws IOException {
+        render(DotLatticeParser.parse(dot), out);
+    }
+
+    public void render(Lattice lattice, OutputStream out) throws IOException {
+        Map<String, int[]> positions = layout(lattice);
+
+        int width = MARGIN * 2;
+        int height = MARGIN * 2;
+        for (int[] position : positions.values()) {
+            width = Math.max(width, position[0] + NODE_WIDTH + MARGIN);
+            height = Math.max(height, position[1] + NODE_HEIGHT + MARGIN);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+                + "\" viewBox=\"0 0 " + width + " " + height + "\" font-family=\"Helvetica, Arial, sans-serif\">\n");
+        writer.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+        // Edges off the best path first, so the best path is drawn on top of them.
+        for (int pass = 0; pass < 2; pass++) {
+            for (LatticeEdge edge : lattice.getEdges()) {
+                if (edge.isBestPath() == (pass == 1)) {
+                    writeEdge(writer, edge, positions.get(edge.getFrom()), positions.get(edge.getTo()));
+                }
+            }
+        }
+        for (LatticeNode node : lattice.getNodes()) {
+            writeNode(writer, node, positions.get(node.getId()));
+        }
+
+        writer.write("</svg>\n");
+        writer.flush();
+    }
+
+    @Override
+    public String getContentType() {
+        return "image/svg+xml";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "svg";
+    }
+
+    private static Map<String, int[]> layout(Lattice lattice) {
+        TreeMap<Integer, List<LatticeNode>> columns = new TreeMap<>();
+        for (LatticeNode node : lattice.getNodes()) {
+            if (!node.isBos() && !node.isEos()) {
+                columns.computeIfAbsent(node.getOffset(), k -> new ArrayList<>()).add(node);
+            }
+        }
+
+        Map<String, int[]> positions = new HashMap<>();
+        int column = 0;
+        positions.put(Lattice.BOS, position(column++, 0));
+        for (List<LatticeNode> nodes : columns.values()) {
+            nodes.sort((a, b) -> Integer.compare(index(a), index(b)));
+            for (int row = 0; row < nodes.size(); row++) {
+                positions.put(nodes.get(row).getId(), position(column, row));
+            }
+            column++;
+        }
+        positions.put(Lattice.EOS, position(column, 0));
+        return positions;
+    }
+
+    private static int[] position(int column, int row) {
+        return new int[] { MARGIN + column * (NODE_WIDTH + COLUMN_GAP), MARGIN + row * (NODE_HEIGHT + ROW_GAP) };
+    }
+
+    private static int index(LatticeNode node) {
+        String id = node.getId();
+        int dot = id.indexOf('.');
+        return dot < 0 ? 0 : Integer.parseInt(id.substring(dot + 1));
+    }
+
+    private static void writeNode(Writer writer, LatticeNode node, int[] position) throws IOException {
+        int x = position[0];
+        int y = position[1];
+        if (node.isBos() || node.isEos()) {
+            writer.write("<text x=\"" + (x + NODE_WIDTH / 2) + "\" y=\"" + (y + NODE_HEIGHT / 2 + 5)
+                    + "\" text-anchor=\"middle\" font-size=\"14\" fill=\"#606060\">"
+                    + (node.isBos() ? "BOS" : "EOS") + "</text>\n");
+            return;
+        }
+        writer.write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + NODE_WIDTH + "\" height=\"" + NODE_HEIGHT
+                + "\" rx=\"8\" fill=\"#e8e8f0\" stroke=\"#000000\"/>\n");
+        String label = node.getContextId() < 0 ? String.valueOf(node.getOffset())
+                : node.getOffset() + ": " + node.getContextId();
+        writer.write("<text x=\"" + (x + NODE_WIDTH / 2) + "\" y=\"" + (y + NODE_HEIGHT / 2 + 5)
+                + "\" text-anchor=\"middle\" font-size=\"13\">" + escape(label) + "</text>\n");
+    }
+
+    private static void writeEdge(Writer writer, LatticeEdge edge, int[] from, int[] to) throws IOException {
+        if (from == null || to == null) {
+            return;
+        }
+        int x1 = from[0] + NODE_WIDTH;
+        int y1 = from[1] + NODE_HEIGHT / 2;
+        int x2 = to[0];
+        int y2 = to[1] + NODE_HEIGHT / 2;
+        int bend = Math.max(40, (x2 - x1) / 3);
+
+        String stroke = edge.isBestPath() ? "#40e050" : "#606060";
+        String strokeWidth = edge.isBestPath() ? "3" : "1";
+        writer.write("<path d=\"M" + x1 + "," + y1 + " C" + (x1 + bend) + "," + y1 + " " + (x2 - bend) + "," + y2
+                + " " + x2 + "," + y2 + "\" fill=\"none\" stroke=\"" + stroke + "\" stroke-width=\"" + strokeWidth
+                + "\"/>\n");
+
+        String label = edge.isBoundary() ? edge.getSurface() : edge.getSurface() + " " + edge.getWordCost()
+                + (edge.getConnectionCost() < 0 ? "" : "+") + edge.getConnectionCost();
+        // Midpoint of the symmetric cubic curve.
+        int lx = (x1 + x2) / 2;
+        int ly = (y1 + y2) / 2 - 4;
+        if (edge.isBestPath()) {
+            writer.write("<text x=\"" + lx + "\" y=\"" + ly + "\" text-anchor=\"middle\" font-size=\"16\""
+                    + " font-weight=\"bold\" fill=\"#40a050\">" + escape(label) + "</text>\n");
+        } else {
+            writer.write("<text x=\"" + lx + "\" y=\"" + ly + "\" text-anchor=\"middle\" font-size=\"12\""
+                    + " fill=\"red\">" + escape(label) + "</text>\n");
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package co.elastic.corpus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkReaderTest {
+
+    @Test
+    void cutsAfterTheLastSentenceEnd() throws IOException {
+        assertEquals(Arrays.asList("가나. 다라!", " 마바"), chunks("가나. 다라! 마바", 9));
+    }
+
+    @Test
+    void fallsBackToTheLastWhitespace() throws IOException {
+        assertEquals(Arrays.asList("가나 다라 ", "마바사"), chunks("가나 다라 마바사", 8));
+    }
+
+    @Test
+    void cutsAnywhereWithoutSentenceEndOrWhitespace() throws IOException {
+        assertEquals(Arrays.asList("가나다", "라마바", "사"), chunks("가나다라마바사", 3));
+    }
+
+    @Test
+    void neverSplitsASurrogatePair() throws IOException {
+        String emoji = new String(Character.toChars(0x1F600));
+        // The pair would straddle the end of the first chunk.
+        List<String> chunks = chunks("가나" + emoji + "다라", 3);
+        assertEquals(Arrays.asList("가나", emoji + "다", "라"), chunks);
+
+        String text = emoji + emoji + emoji + emoji;
+        for (int size = 2; size <= 5; size++) {
+            List<String> cut = chunks(text, size);
+            assertEquals(text, String.join("", cut));
+            for (String chunk : cut) {
+                assertFalse(Character.isHighSurrogate(chunk.charAt(chunk.length() - 1)), "size " + size);
+                assertFalse(Character.isLowSurrogate(chunk.charAt(0)), "size " + size);
+            }
+        }
+    }
+
+    @Test
+    void keepsEveryCharacterOfAReaderThatReturnsLittleAtATime() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append(i % 7 == 0 ? "끝. " : "가나다").append(i % 3 == 0 ? " " : "");
+        }
+        Reader trickle = new Reader() {
+            private final Reader in = new StringReader(text.toString());
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return in.read(buffer, offset, Math.min(length, 2));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        CorpusAnalyzer.ChunkReader reader = new CorpusAnalyzer.ChunkReader(trickle, 16);
+        StringBuilder joined = new StringBuilder();
+        String chunk;
+        while ((chunk = reader.next()) != null) {
+            assertTrue(chunk.length() <= 16);
+            joined.append(chunk);
+        }
+        assertEquals(text.toString(), joined.toString());
+    }
+
+    @Test
+    void readsNothingFromAnEmptyText() throws IOException {
+        assertNull(new CorpusAnalyzer.ChunkReader(new StringReader(""), 4).next());
+    }
+
+    private static List<String> chunks(String text, int chunkChars) throws IOException {
+        CorpusAnalyzer.ChunkReader reader = new CorpusAnalyzer.ChunkReader(new StringReader(text), chunkChars);
+        List<String> chunks = new ArrayList<>();
+        String chunk;
+        while ((chunk = reader.next()) != null) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
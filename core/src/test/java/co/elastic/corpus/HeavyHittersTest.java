@@ -0,0 +1,118 @@
+package co.elastic.corpus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class HeavyHittersTest {
+
+    @Test
+    void isExactWhileEveryTermFits() {
+        HeavyHitters sketch = new HeavyHitters(8);
+        String[] stream = { "b", "a", "c", "a", "b", "a", "d" };
+        for (String term : stream) {
+            sketch.add(term, 1);
+        }
+
+        List<HeavyHitters.Entry> top = sketch.top(10);
+        assertEquals(4, top.size());
+        assertEntry(top.get(0), "a", 3, 0);
+        assertEntry(top.get(1), "b", 2, 0);
+        // Equal counts are listed by term.
+        assertEntry(top.get(2), "c", 1, 0);
+        assertEntry(top.get(3), "d", 1, 0);
+        assertEquals(0, sketch.floor());
+        assertEquals(2, sketch.top(2).size());
+    }
+
+    @Test
+    void boundsEveryCountOnceTermsAreEvicted() {
+        Map<String, Long> exact = new HashMap<>();
+        HeavyHitters sketch = new HeavyHitters(20);
+        long total = feed(sketch, exact, new Random(1), 20_000);
+
+        checkBounds(sketch, exact, total, 20);
+        assertTrue(sketch.floor() > 0);
+    }
+
+    @Test
+    void mergedSketchesBoundTheCountsOfBothStreams() {
+        Map<String, Long> exact = new HashMap<>();
+        HeavyHitters first = new HeavyHitters(20);
+        HeavyHitters second = new HeavyHitters(20);
+        long total = feed(first, exact, new Random(2), 10_000);
+        // A stream with other heavy terms, so that each sketch misses some of the other's.
+        total += feedShifted(second, exact, new Random(3), 10_000);
+
+        first.merge(second);
+        checkBounds(first, exact, total, 20);
+    }
+
+    @Test
+    void mergesExactSketchesExactly() {
+        HeavyHitters first = new HeavyHitters(4);
+        HeavyHitters second = new HeavyHitters(4);
+        first.add("a", 5);
+        first.add("b", 2);
+        second.add("a", 1);
+        second.add("c", 4);
+
+        first.merge(second);
+        List<HeavyHitters.Entry> top = first.top(4);
+        assertEntry(top.get(0), "a", 6, 0);
+        assertEntry(top.get(1), "c", 4, 0);
+        assertEntry(top.get(2), "b", 2, 0);
+    }
+
+    /** Zipf-like terms t0, t1, ... where t0 is the most frequent. */
+    private static long feed(HeavyHitters sketch, Map<String, Long> exact, Random random, int n) {
+        for (int i = 0; i < n; i++) {
+            String term = "t" + (int) Math.floor(Math.pow(500, random.nextDouble()));
+            sketch.add(term, 1);
+            exact.merge(term, 1L, Long::sum);
+        }
+        return n;
+    }
+
+    private static long feedShifted(HeavyHitters sketch, Map<String, Long> exact, Random random, int n) {
+        for (int i = 0; i < n; i++) {
+            String term = "t" + (500 - (int) Math.floor(Math.pow(500, random.nextDouble())));
+            sketch.add(term, 1);
+            exact.merge(term, 1L, Long::sum);
+        }
+        return n;
+    }
+
+    /**
+     * count - error <= true count <= count for every reported term, and every term more frequent
+     * than total / capacity is reported.
+     */
+    private static void checkBounds(HeavyHitters sketch, Map<String, Long> exact, long total, int capacity) {
+        List<HeavyHitters.Entry> top = sketch.top(capacity);
+        List<String> reported = new ArrayList<>();
+        for (HeavyHitters.Entry entry : top) {
+            long actual = exact.getOrDefault(entry.term, 0L);
+            assertTrue(entry.count - entry.error <= actual, entry.term + " lower bound");
+            assertTrue(actual <= entry.count, entry.term + " upper bound");
+            reported.add(entry.term);
+        }
+        exact.forEach((term, count) -> {
+            if (count > total / capacity) {
+                assertTrue(reported.contains(term), term + " with " + count + " of " + total + " is missing");
+            }
+        });
+    }
+
+    private static void assertEntry(HeavyHitters.Entry entry, String term, long count, long error) {
+        assertEquals(term, entry.term);
+        assertEquals(count, entry.count, term);
+        assertEquals(error, entry.error, term);
+    }
+}
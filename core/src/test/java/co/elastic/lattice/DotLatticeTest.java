@@ -0,0 +1,97 @@
+package co.elastic.lattice;
+
+import static co.elastic.lattice.LatticePruningTest.DOT;
+import static co.elastic.lattice.LatticePruningTest.edges;
+import static co.elastic.lattice.LatticePruningTest.nodes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class DotLatticeTest {
+
+    @Test
+    void parsesNodesEdgesAndCosts() {
+        Lattice lattice = DotLatticeParser.parse(DOT);
+
+        assertEquals(11, lattice.getNodeCount());
+        assertEquals(10, lattice.getEdgeCount());
+        // The start node is never declared; it is added when an edge first reaches it.
+        LatticeNode start = lattice.getNode("0.0");
+        assertEquals(0, start.getOffset());
+        assertEquals(-1, start.getContextId());
+        assertEquals(22, lattice.getNode("2.2").getContextId());
+        assertEquals(2, lattice.getNode(Lattice.EOS).getOffset());
+
+        LatticeEdge bos = edge(lattice, "init", "0.0");
+        assertTrue(bos.isBoundary());
+        assertTrue(bos.isBestPath());
+        assertEquals("BOS", bos.getSurface());
+
+        LatticeEdge negative = edge(lattice, "0.0", "1.1");
+        assertEquals("a", negative.getSurface());
+        assertEquals(150, negative.getWordCost());
+        assertEquals(-20, negative.getConnectionCost());
+        assertEquals(130, negative.getCost());
+        assertFalse(negative.isBestPath());
+
+        assertTrue(edge(lattice, "0.0", "2.0").isBestPath());
+        assertEquals("\"a\"", edge(lattice, "0.0", "1.3").getSurface());
+    }
+
+    @Test
+    void parsesALatticeThatNeverReachesEos() {
+        Lattice lattice = DotLatticeParser.parse("  init -> 0.0 [label=\"BOS\"]\n"
+                + "  0.0 -> 1.0 [label=\"a 5+5\"]\n");
+
+        assertNull(lattice.getNode(Lattice.EOS));
+        // 1.0 wasn't declared either, and has no context.
+        assertEquals(1, lattice.getNode("1.0").getOffset());
+        assertEquals(-1, lattice.getNode("1.0").getContextId());
+    }
+
+    @Test
+    void writesWhatItParses() {
+        Lattice lattice = DotLatticeParser.parse(DOT);
+        String written = DotLatticeWriter.write(lattice);
+        Lattice reread = DotLatticeParser.parse(written);
+
+        assertEquals(nodes(lattice), nodes(reread));
+        assertEquals(edges(lattice), edges(reread));
+        for (LatticeEdge edge : lattice.getEdges()) {
+            LatticeEdge copy = edge(reread, edge.getFrom(), edge.getTo());
+            assertEquals(edge.getSurface(), copy.getSurface());
+            assertEquals(edge.getWordCost(), copy.getWordCost());
+            assertEquals(edge.getConnectionCost(), copy.getConnectionCost());
+            assertEquals(edge.isBestPath(), copy.isBestPath());
+        }
+        assertTrue(written.contains("0.0 -> 1.0 [label=\"a 100+0\"]"));
+        assertTrue(written.contains("0.0 -> 1.1 [label=\"a 150-20\"]"));
+        assertTrue(written.contains("0.0 -> 1.3 [label=\"\\\"a\\\" 90+10\"]"));
+        assertTrue(written.contains("init -> 0.0 [label=\"BOS\"]"));
+        assertTrue(written.contains("0.0 -> 2.0 [label=\"ab 100+50\" color=\"#40e050\""));
+    }
+
+    @Test
+    void writesAPrunedLatticeWithoutTheDroppedCandidates() {
+        Lattice pruned = LatticePruning.bestPath().prune(DotLatticeParser.parse(DOT));
+        String written = DotLatticeWriter.write(pruned);
+
+        assertFalse(written.contains("1.0"));
+        assertEquals(edges(pruned), edges(DotLatticeParser.parse(written)));
+    }
+
+    private static LatticeEdge edge(Lattice lattice, String from, String to) {
+        List<LatticeEdge> edges = lattice.getEdges();
+        for (LatticeEdge edge : edges) {
+            if (edge.getFrom().equals(from) && edge.getTo().equals(to)) {
+                return edge;
+            }
+        }
+        throw new AssertionError("No edge " + from + " -> " + to);
+    }
+}
@@ -0,0 +1,125 @@
+package co.elastic.lattice;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class LatticePruningTest {
+
+    /**
+     * Costs from BOS: 1.0 and 1.3 tie at 100, 1.1 130, 1.2 300; 2.0 150 (best path), 2.1 160,
+     * 2.2 180, 2.3 310.
+     */
+    static final String DOT = "digraph viterbi {\n"
+            + "  init [style=invis]\n"
+            + "  init -> 0.0 [label=\"BOS\"]\n"
+            + "  1.0 [label=\"1: 10\"]\n"
+            + "  1.1 [label=\"1: 11\"]\n"
+            + "  1.2 [label=\"1: 12\"]\n"
+            + "  1.3 [label=\"1: 13\"]\n"
+            + "  2.0 [label=\"2: 20\"]\n"
+            + "  2.1 [label=\"2: 21\"]\n"
+            + "  2.2 [label=\"2: 22\"]\n"
+            + "  2.3 [label=\"2: 23\"]\n"
+            + "  0.0 -> 1.0 [label=\"a 100+0\"]\n"
+            + "  0.0 -> 1.1 [label=\"a 150-20\"]\n"
+            + "  0.0 -> 1.2 [label=\"a 300+0\"]\n"
+            + "  0.0 -> 1.3 [label=\"\\\"a\\\" 90+10\"]\n"
+            + "  0.0 -> 2.0 [label=\"ab 100+50\" color=\"#40e050\" fontcolor=\"#40a050\" penwidth=3 fontsize=20]\n"
+            + "  1.0 -> 2.1 [label=\"b 40+20\"]\n"
+            + "  1.1 -> 2.2 [label=\"b 60-10\"]\n"
+            + "  1.2 -> 2.3 [label=\"b 0+10\"]\n"
+            + "  fini [style=invis]\n"
+            + "  2.0 -> fini [label=\"EOS\"]}";
+
+    @Test
+    void bestKeepsOnlyTheViterbiPath() {
+        Lattice pruned = LatticePruning.bestPath().prune(DotLatticeParser.parse(DOT));
+
+        assertEquals(ids("init", "0.0", "2.0", "fini"), nodes(pruned));
+        assertEquals(ids("init->0.0", "0.0->2.0", "2.0->fini"), edges(pruned));
+    }
+
+    @Test
+    void topKeepsTheCheapestNodesAtEachOffset() {
+        Lattice lattice = DotLatticeParser.parse(DOT);
+
+        // 1.0 and 1.3 tie; the one declared first wins.
+        Lattice top1 = LatticePruning.topPaths(1).prune(lattice);
+        assertEquals(ids("init", "0.0", "1.0", "2.0", "fini"), nodes(top1));
+        assertEquals(ids("init->0.0", "0.0->1.0", "0.0->2.0", "2.0->fini"), edges(top1));
+
+        Lattice top2 = LatticePruning.topPaths(2).prune(lattice);
+        assertEquals(ids("init", "0.0", "1.0", "1.3", "2.0", "2.1", "fini"), nodes(top2));
+        assertEquals(ids("init->0.0", "0.0->1.0", "0.0->1.3", "0.0->2.0", "1.0->2.1", "2.0->fini"),
+                edges(top2));
+
+        Lattice top3 = LatticePruning.topPaths(3).prune(lattice);
+        assertEquals(ids("init", "0.0", "1.0", "1.1", "1.3", "2.0", "2.1", "2.2", "fini"), nodes(top3));
+    }
+
+    @Test
+    void costKeepsNodesWithinTheMarginAndThePathsToThem() {
+        Lattice lattice = DotLatticeParser.parse(DOT);
+
+        // Offset 1 is compared with the best path at offset 0 (cost 0), offset 2 with 2.0 (150).
+        // 1.0 is over the margin but kept, since the edge to 2.1 starts there.
+        Lattice cost20 = LatticePruning.costMargin(20).prune(lattice);
+        assertEquals(ids("init", "0.0", "1.0", "2.0", "2.1", "fini"), nodes(cost20));
+        assertEquals(ids("init->0.0", "0.0->1.0", "0.0->2.0", "1.0->2.1", "2.0->fini"), edges(cost20));
+
+        // The margin is inclusive: 1.0 and 1.3 are exactly 100 over.
+        Lattice cost100 = LatticePruning.costMargin(100).prune(lattice);
+        assertEquals(ids("init", "0.0", "1.0", "1.1", "1.3", "2.0", "2.1", "2.2", "fini"), nodes(cost100));
+
+        Lattice cost0 = LatticePruning.costMargin(0).prune(lattice);
+        assertEquals(edges(LatticePruning.bestPath().prune(lattice)), edges(cost0));
+    }
+
+    @Test
+    void keepsBosAndEosEvenWithoutEdges() {
+        Lattice lattice = new Lattice();
+        lattice.addNode(new LatticeNode(Lattice.BOS, 0, -1));
+        lattice.addNode(new LatticeNode("1.0", 1, 5));
+        lattice.addNode(new LatticeNode(Lattice.EOS, 1, -1));
+        lattice.addEdge(new LatticeEdge("0.0", "1.0", "a", 1, 1, false));
+
+        assertEquals(ids("init", "fini"), nodes(LatticePruning.bestPath().prune(lattice)));
+    }
+
+    @Test
+    void parsesSpecs() {
+        assertSame(LatticePruning.NONE, LatticePruning.parse(null));
+        assertSame(LatticePruning.NONE, LatticePruning.parse(" none "));
+        assertEquals("best", LatticePruning.parse("BEST").toString());
+        assertEquals("top:3", LatticePruning.parse("top: 3").toString());
+        assertEquals("cost:0", LatticePruning.parse("cost:0").toString());
+        for (String illegal : new String[] { "top:0", "cost:-1", "top:x", "top", "cheap:3" }) {
+            assertThrows(IllegalArgumentException.class, () -> LatticePruning.parse(illegal), illegal);
+        }
+        Lattice lattice = DotLatticeParser.parse(DOT);
+        assertSame(lattice, LatticePruning.NONE.prune(lattice));
+    }
+
+    static Set<String> ids(String... ids) {
+        return new LinkedHashSet<>(Arrays.asList(ids));
+    }
+
+    static Set<String> nodes(Lattice lattice) {
+        Set<String> ids = new LinkedHashSet<>();
+        lattice.getNodes().forEach(node -> ids.add(node.getId()));
+        return ids;
+    }
+
+    static Set<String> edges(Lattice lattice) {
+        Set<String> ids = new LinkedHashSet<>();
+        lattice.getEdges().forEach(edge -> ids.add(edge.getFrom() + "->" + edge.getTo()));
+        return ids;
+    }
+}
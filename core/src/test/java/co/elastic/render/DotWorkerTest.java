@@ -0,0 +1,104 @@
+package co.elastic.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DotWorkerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void splitsConsecutiveImagesOfEveryFormat() throws Exception {
+        Map<String, String> env = new HashMap<>();
+        // Padding makes the frames larger than any single read of the worker's stdout.
+        env.put("STUB_DOT_SIZE", "100000");
+        String exec = StubDot.create(dir, env);
+
+        for (OutputFormat format : new OutputFormat[] { OutputFormat.JPG, OutputFormat.PNG, OutputFormat.SVG }) {
+            byte[] expected = withoutTrailingNewline(StubDot.image(exec, format, dir));
+            DotWorker worker = new DotWorker(exec, format);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    worker.render("digraph {\n  n" + i + " -> m" + i + "\n}", out);
+                    assertArrayEquals(expected, out.toByteArray(), format + " image " + i);
+                }
+                assertEquals(3, worker.getJobs());
+                assertTrue(worker.isAlive());
+            } finally {
+                worker.destroy();
+            }
+        }
+    }
+
+    @Test
+    void failsWhenTheProcessExits() throws Exception {
+        String exec = StubDot.create(dir, Collections.singletonMap("STUB_DOT_FAIL_ON", "crash"));
+        DotWorker worker = new DotWorker(exec, OutputFormat.JPG);
+        try {
+            assertThrows(IOException.class, () -> worker.render("digraph { crash }", new ByteArrayOutputStream()));
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (worker.isAlive() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(worker.isAlive());
+        } finally {
+            worker.destroy();
+        }
+    }
+
+    @Test
+    void doesNotBlameAFailureOnTheWarningsOfAnEarlierGraph() throws Exception {
+        Map<String, String> env = new HashMap<>();
+        env.put("STUB_DOT_WARN_ON", "warn");
+        env.put("STUB_DOT_DELAY_MS", "1000");
+        String exec = StubDot.create(dir, env);
+        DotWorker worker = new DotWorker(exec, OutputFormat.JPG);
+        try {
+            worker.render("digraph { warn }", new ByteArrayOutputStream());
+            // Let the warning reach the stderr drainer before the next graph starts.
+            Thread.sleep(100);
+
+            // Killed while drawing, so the next graph fails without a word on stderr.
+            Thread killer = new Thread(() -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                worker.destroy();
+            });
+            killer.start();
+            IOException e = assertThrows(IOException.class,
+                    () -> worker.render("digraph { a -> b }", new ByteArrayOutputStream()));
+            killer.join();
+            assertFalse(String.valueOf(e.getMessage()).contains("Warning"), e.getMessage());
+        } finally {
+            worker.destroy();
+        }
+    }
+
+    /** The stub ends an SVG document with a newline, which the frame reader leaves for the next one. */
+    private static byte[] withoutTrailingNewline(byte[] image) {
+        int length = image.length;
+        while (length > 0 && image[length - 1] == '\n') {
+            length--;
+        }
+        return Arrays.copyOf(image, length);
+    }
+}
@@ -0,0 +1,144 @@
+package co.elastic.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GraphvizRendererPoolTest {
+
+    private static final String GRAPH = "digraph {\n  a -> b\n}";
+
+    @TempDir
+    Path dir;
+
+    private final ExecutorService clients = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopClients() {
+        clients.shutdownNow();
+    }
+
+    @Test
+    void rendersEveryFormatOnTheSameWorkers() throws Exception {
+        String exec = StubDot.create(dir, Collections.emptyMap());
+        try (GraphvizRendererPool pool = new GraphvizRendererPool(exec, 1, 4, 100, 5000)) {
+            for (OutputFormat format : new OutputFormat[] { OutputFormat.JPG, OutputFormat.SVG, OutputFormat.JPG }) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                pool.forFormat(format).render(GRAPH, out);
+                assertTrue(out.size() > 0);
+            }
+            assertEquals(3L, pool.getStats().get("completed"));
+        }
+    }
+
+    @Test
+    void replacesAWorkerThatCrashed() throws Exception {
+        String exec = StubDot.create(dir, Collections.singletonMap("STUB_DOT_FAIL_ON", "crash"));
+        byte[] expected = StubDot.image(exec, OutputFormat.JPG, dir);
+        try (GraphvizRendererPool pool = new GraphvizRendererPool(exec, 1, 4, 100, 5000)) {
+            assertThrows(IOException.class, () -> pool.render("digraph { crash }", new ByteArrayOutputStream()));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            pool.render(GRAPH, out);
+            assertArrayEquals(expected, out.toByteArray());
+            assertEquals(1L, pool.getStats().get("failed"));
+            assertEquals(1L, pool.getStats().get("recycled"));
+        }
+    }
+
+    @Test
+    void timesOutARenderThatTakesTooLong() throws Exception {
+        String exec = StubDot.create(dir, Collections.singletonMap("STUB_DOT_DELAY_MS", "3000"));
+        try (GraphvizRendererPool pool = new GraphvizRendererPool(exec, 1, 4, 100, 300)) {
+            long start = System.nanoTime();
+            assertThrows(RenderTimeoutException.class, () -> pool.render(GRAPH, new ByteArrayOutputStream()));
+            assertTrue(System.nanoTime() - start < 2_000_000_000L, "the render wasn't cut short");
+        }
+    }
+
+    @Test
+    void leavesNoPartOfAnImageThatTimedOut() throws Exception {
+        // Takes about a second to write, so the timeout hits halfway through the image.
+        String exec = StubDot.create(dir, Collections.singletonMap("STUB_DOT_SIZE", "50000000"));
+        try (GraphvizRendererPool pool = new GraphvizRendererPool(exec, 1, 4, 100, 200)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertThrows(RenderTimeoutException.class, () -> pool.render(GRAPH, out));
+            Thread.sleep(200);
+            assertEquals(0, out.size());
+        }
+    }
+
+    @Test
+    void doesNotCountQueueWaitAgainstTheTimeout() throws Exception {
+        // Each render takes 400 ms of an 800 ms timeout, and the third waits behind two others.
+        String exec = StubDot.create(dir, Collections.singletonMap("STUB_DOT_DELAY_MS", "400"));
+        try (GraphvizRendererPool pool = new GraphvizRendererPool(exec, 1, 4, 100, 800)) {
+            List<Future<?>> renders = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                renders.add(clients.submit(() -> {
+                    pool.render(GRAPH, new ByteArrayOutputStream());
+                    return null;
+                }));
+            }
+            for (Future<?> render : renders) {
+                render.get();
+            }
+            assertEquals(3L, pool.getStats().get("completed"));
+            assertEquals(0L, pool.getStats().get("failed"));
+        }
+    }
+
+    @Test
+    void rejectsRendersWhenTheQueueIsFull() throws Exception {
+        String exec = StubDot.create(dir, Collections.singletonMap("STUB_DOT_DELAY_MS", "1000"));
+        try (GraphvizRendererPool pool = new GraphvizRendererPool(exec, 1, 1, 100, 5000)) {
+            // One render on the only thread, the next in the only queue slot.
+            List<Future<?>> renders = new ArrayList<>();
+            renders.add(clients.submit(() -> {
+                pool.render(GRAPH, new ByteArrayOutputStream());
+                return null;
+            }));
+            waitFor(() -> Integer.valueOf(1).equals(pool.getStats().get("active")));
+            renders.add(clients.submit(() -> {
+                pool.render(GRAPH, new ByteArrayOutputStream());
+                return null;
+            }));
+            waitFor(() -> pool.getQueueDepth() == 1);
+
+            assertThrows(RenderQueueFullException.class, () -> pool.render(GRAPH, new ByteArrayOutputStream()));
+            assertEquals(1L, pool.getStats().get("rejected"));
+            for (Future<?> render : renders) {
+                try {
+                    render.get();
+                } catch (ExecutionException e) {
+                    throw new AssertionError("an admitted render failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for the pool");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package co.elastic.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class ImageFramesTest {
+
+    /** SOI, a COM segment holding an EOI marker, a scan with stuffed and restart bytes, EOI. */
+    private static final byte[] JPEG = bytes(
+            0xFF, 0xD8,
+            0xFF, 0xFE, 0x00, 0x06, 0xFF, 0xD9, 0xFF, 0xD9,
+            0xFF, 0xDA, 0x00, 0x03, 0x01,
+            0x12, 0xFF, 0x00, 0x34, 0xFF, 0xD0, 0x56,
+            0xFF, 0xD9);
+
+    @Test
+    void splitsJpegAtTheRealEndOfImage() throws IOException {
+        InputStream in = new ByteArrayInputStream(concat(JPEG, JPEG));
+        assertArrayEquals(JPEG, frame(OutputFormat.JPG, in));
+        assertArrayEquals(JPEG, frame(OutputFormat.JPG, in));
+    }
+
+    @Test
+    void splitsPngAfterIend() throws IOException {
+        byte[] png = bytes(
+                0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n',
+                0x00, 0x00, 0x00, 0x04, 'I', 'D', 'A', 'T', 'I', 'E', 'N', 'D', 0x01, 0x02, 0x03, 0x04,
+                0x00, 0x00, 0x00, 0x00, 'I', 'E', 'N', 'D', 0xAE, 0x42, 0x60, 0x82);
+        InputStream in = new ByteArrayInputStream(concat(png, png));
+        assertArrayEquals(png, frame(OutputFormat.PNG, in));
+        assertArrayEquals(png, frame(OutputFormat.PNG, in));
+    }
+
+    @Test
+    void splitsSvgAndSkipsTheWhitespaceBetweenDocuments() throws IOException {
+        byte[] svg = "<svg><text>&lt;/svg&gt;</text></svg>".getBytes(StandardCharsets.UTF_8);
+        InputStream in = new ByteArrayInputStream(concat(svg, "\n".getBytes(StandardCharsets.UTF_8), svg));
+        assertArrayEquals(svg, frame(OutputFormat.SVG, in));
+        assertArrayEquals(svg, frame(OutputFormat.SVG, in));
+    }
+
+    @Test
+    void failsOnATruncatedImage() {
+        InputStream in = new ByteArrayInputStream(Arrays.copyOf(JPEG, JPEG.length - 1));
+        assertThrows(EOFException.class, () -> frame(OutputFormat.JPG, in));
+    }
+
+    private static byte[] frame(OutputFormat format, InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageFrames.copy(format, in, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
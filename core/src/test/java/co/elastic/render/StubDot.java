@@ -0,0 +1,47 @@
+package co.elastic.render;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/** Wrappers around scripts/stub-dot.sh that run it with a given environment. */
+final class StubDot {
+
+    private static final Path SCRIPT = Paths.get("..", "scripts", "stub-dot.sh").toAbsolutePath().normalize();
+
+    private StubDot() {
+    }
+
+    /** Writes an executable script to {@code dir} that runs the stub with {@code env} set. */
+    static String create(Path dir, Map<String, String> env) throws IOException {
+        assumeTrue(Files.isReadable(SCRIPT), "scripts/stub-dot.sh is not available");
+        assumeTrue(Files.isExecutable(Paths.get("/bin/sh")), "the stub needs /bin/sh");
+
+        StringBuilder script = new StringBuilder("#!/bin/sh\n");
+        env.forEach((name, value) -> script.append("export ").append(name).append("='").append(value).append("'\n"));
+        script.append("exec /bin/sh '").append(SCRIPT).append("' \"$@\"\n");
+
+        Path wrapper = Files.createTempFile(dir, "dot", ".sh");
+        Files.write(wrapper, script.toString().getBytes(StandardCharsets.UTF_8));
+        assumeTrue(wrapper.toFile().setExecutable(true), "cannot make the stub executable");
+        return wrapper.toString();
+    }
+
+    /** The image the stub draws for any single graph, read from its one-shot file mode. */
+    static byte[] image(String exec, OutputFormat format, Path dir) throws IOException, InterruptedException {
+        Path input = Files.createTempFile(dir, "graph", ".dot");
+        Files.write(input, "digraph { a -> b }\n".getBytes(StandardCharsets.UTF_8));
+        Path output = dir.resolve("image." + format.getFileExtension());
+        Process process = new ProcessBuilder(exec, "-T" + format.getFileExtension(), input.toString(),
+                "-o", output.toString()).start();
+        if (process.waitFor() != 0) {
+            throw new IOException("The stub failed with status " + process.exitValue());
+        }
+        return Files.readAllBytes(output);
+    }
+}
@@ -0,0 +1,50 @@
+#!/bin/sh
+#
+# Compares the wall time of CLI runs from the lean CLI jar and from the web jar.
+#
+# Each jar is run RUNS times with the same arguments, rendering with the built-in SVG renderer so
+# that dot doesn't skew the numbers, and the average, fastest and slowest runs are printed along
+# with the size of each jar.
+#
+# Usage:
+#   scripts/cli-startup.sh
+#   RUNS=20 scripts/cli-startup.sh -l ja -t "シンプルさは究極の洗練である"
+#
+# Environment:
+#   RUNS       runs per jar (default: 10)
+#   JAVA_OPTS  JVM options for both jars
+
+RUNS=${RUNS:-10}
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+
+if [ $# -eq 0 ]; then
+  set -- -t "뿌리가 깊은 나무"
+fi
+
+now_ms() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+measure() {
+  jar=$1
+  shift
+  times=""
+  i=0
+  while [ $i -lt "$RUNS" ]; do
+    start=$(now_ms)
+    # shellcheck disable=SC2086
+    java $JAVA_OPTS -jar "$jar" -o "$OUT/" -r svg "$@" > /dev/null 2>&1 || { echo "$jar failed" >&2; exit 1; }
+    times="$times $(($(now_ms) - start))"
+    i=$((i + 1))
+  done
+  size=$(($(wc -c < "$jar") / 1024 / 1024))
+  echo "$times" | tr ' ' '\n' | awk -v jar="$jar" -v size="$size" 'NF {
+    sum += $1; if (min == "" || $1 < min) min = $1; if ($1 > max) max = $1; n++
+  } END {
+    printf "%-28s %3d MB  avg=%d ms  min=%d ms  max=%d ms\n", jar, size, sum / n, min, max
+  }'
+}
+
+measure target/TokenVisualizer-cli.jar "$@"
+measure target/TokenVisualizer.jar "$@"
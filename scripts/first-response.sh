@@ -0,0 +1,53 @@
+#!/bin/sh
+#
+# Measures how long a freshly started server takes to answer its first visualize requests.
+#
+# Starts the jar, polls until it reports ready, then sends one Korean and one Japanese
+# /api/visualize request and prints, in milliseconds since the JVM was launched:
+#   ready     the readiness probe (or READY_PATH) answered 200
+#   first_ko  the first Korean request, measured on its own
+#   first_ja  the first Japanese request, measured on its own
+#   total     launch until both responses were received
+#
+# Usage:
+#   scripts/first-response.sh
+#   JAVA_OPTS="-XX:SharedArchiveFile=target/TokenVisualizer.jsa" scripts/first-response.sh
+#
+# Environment:
+#   JAR         the jar to start (default: target/TokenVisualizer.jar)
+#   PORT        port to start it on (default: 18090)
+#   JAVA_OPTS   JVM options
+#   APP_ARGS    application arguments, e.g. --visualizer.render.dot-path=scripts/stub-dot.sh
+#   READY_PATH  path polled for readiness (default: /actuator/health/readiness)
+
+JAR=${JAR:-target/TokenVisualizer.jar}
+PORT=${PORT:-18090}
+READY_PATH=${READY_PATH:-/actuator/health/readiness}
+BASE="http://localhost:$PORT"
+
+now_ms() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+start=$(now_ms)
+# shellcheck disable=SC2086
+java $JAVA_OPTS -jar "$JAR" --server.port="$PORT" $APP_ARGS > first-response.log 2>&1 &
+pid=$!
+trap 'kill $pid 2>/dev/null' EXIT
+
+until [ "$(curl -s -o /dev/null -w '%{http_code}' "$BASE$READY_PATH")" = "200" ]; do
+  if ! kill -0 $pid 2>/dev/null; then
+    echo "server exited, see first-response.log" >&2
+    exit 1
+  fi
+  sleep 0.05
+done
+ready=$(now_ms)
+
+ko=$(curl -s -o /dev/null -w '%{time_total}' --data-urlencode "text=뿌리가 깊은 나무" -d language=ko "$BASE/api/visualize")
+ja=$(curl -s -o /dev/null -w '%{time_total}' --data-urlencode "text=シンプルさは究極の洗練である" -d language=ja "$BASE/api/visualize")
+done_at=$(now_ms)
+
+awk -v ready=$((ready - start)) -v ko="$ko" -v ja="$ja" -v total=$((done_at - start)) 'BEGIN {
+  printf "ready=%d first_ko=%d first_ja=%d total=%d\n", ready, ko * 1000, ja * 1000, total
+}'
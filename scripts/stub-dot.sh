@@ -0,0 +1,137 @@
+#!/bin/sh
+#
+# Stand-in for Graphviz `dot` for testing renderers and load on machines without Graphviz.
+#
+# It accepts the same invocations the visualizer uses:
+#   stub-dot.sh -Tjpg input.dot -o output.jpg   (one graph from a file)
+#   stub-dot.sh -Tjpg < graphs                  (persistent worker: one image per graph on stdin)
+#
+# Every graph produces the same 1x1 JPEG, or with -Tpng the same 1x1 PNG and with -Tsvg the same
+# empty SVG document. A graph ends at the first line ending with "}".
+#
+# Environment:
+#   STUB_DOT_DELAY_MS      milliseconds to sleep before emitting each image (default: 0)
+#   STUB_DOT_DELAY_MAX_MS  if above STUB_DOT_DELAY_MS, sleep a uniformly random time between the two
+#   STUB_DOT_SIZE          pad JPEG and SVG images with a comment to at least this many bytes (default: 0)
+#   STUB_DOT_FAIL_ON       exit with status 1, as dot does on a syntax error, at a line containing this text
+#   STUB_DOT_WARN_ON       print a warning on stderr, as dot does, at a line containing this text, and carry on
+
+DELAY_MS=${STUB_DOT_DELAY_MS:-0}
+DELAY_MAX_MS=${STUB_DOT_DELAY_MAX_MS:-0}
+SIZE=${STUB_DOT_SIZE:-0}
+FAIL_ON=${STUB_DOT_FAIL_ON:-}
+WARN_ON=${STUB_DOT_WARN_ON:-}
+COUNT=0
+INPUT=""
+OUTPUT=""
+FORMAT=jpg
+
+while [ $# -gt 0 ]; do
+  case "$1" in
+    -o) shift; OUTPUT="$1" ;;
+    -o*) OUTPUT="${1#-o}" ;;
+    -T*) FORMAT="${1#-T}" ;;
+    -*) ;;
+    *) INPUT="$1" ;;
+  esac
+  shift
+done
+
+# Writes $1 bytes of filler.
+filler() {
+  head -c "$1" /dev/zero | tr '\000' ' '
+}
+
+# COM segments right after SOI, at most 65533 bytes of comment each.
+pad_jpeg() {
+  remaining=$SIZE
+  while [ "$remaining" -gt 0 ]; do
+    n=$remaining
+    [ "$n" -gt 65533 ] && n=65533
+    length=$((n + 2))
+    printf "\377\376\\$(printf '%03o' $((length / 256)))\\$(printf '%03o' $((length % 256)))"
+    filler "$n"
+    remaining=$((remaining - n))
+  done
+}
+
+emit_jpeg() {
+  printf '\377\330'
+  pad_jpeg
+  printf '\377\340\000\020\112\106\111\106\000\001\002\000\000\001\000\001\000\000\377\333\000\103\000\010\006\006\007\006\005\010'
+  printf '\007\007\007\011\011\010\012\014\024\015\014\013\013\014\031\022\023\017\024\035\032\037\036\035\032\034\034\040\044\056\047\040'
+  printf '\042\054\043\034\034\050\067\051\054\060\061\064\064\064\037\047\071\075\070\062\074\056\063\064\062\377\333\000\103\001\011\011'
+  printf '\011\014\013\014\030\015\015\030\062\041\034\041\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062'
+  printf '\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\062\377\300'
+  printf '\000\021\010\000\001\000\001\003\001\042\000\002\021\001\003\021\001\377\304\000\037\000\000\001\005\001\001\001\001\001\001\000'
+  printf '\000\000\000\000\000\000\000\001\002\003\004\005\006\007\010\011\012\013\377\304\000\265\020\000\002\001\003\003\002\004\003\005'
+  printf '\005\004\004\000\000\001\175\001\002\003\000\004\021\005\022\041\061\101\006\023\121\141\007\042\161\024\062\201\221\241\010\043'
+  printf '\102\261\301\025\122\321\360\044\063\142\162\202\011\012\026\027\030\031\032\045\046\047\050\051\052\064\065\066\067\070\071\072'
+  printf '\103\104\105\106\107\110\111\112\123\124\125\126\127\130\131\132\143\144\145\146\147\150\151\152\163\164\165\166\167\170\171\172'
+  printf '\203\204\205\206\207\210\211\212\222\223\224\225\226\227\230\231\232\242\243\244\245\246\247\250\251\252\262\263\264\265\266\267'
+  printf '\270\271\272\302\303\304\305\306\307\310\311\312\322\323\324\325\326\327\330\331\332\341\342\343\344\345\346\347\350\351\352\361'
+  printf '\362\363\364\365\366\367\370\371\372\377\304\000\037\001\000\003\001\001\001\001\001\001\001\001\001\000\000\000\000\000\000\001'
+  printf '\002\003\004\005\006\007\010\011\012\013\377\304\000\265\021\000\002\001\002\004\004\003\004\007\005\004\004\000\001\002\167\000'
+  printf '\001\002\003\021\004\005\041\061\006\022\101\121\007\141\161\023\042\062\201\010\024\102\221\241\261\301\011\043\063\122\360\025'
+  printf '\142\162\321\012\026\044\064\341\045\361\027\030\031\032\046\047\050\051\052\065\066\067\070\071\072\103\104\105\106\107\110\111'
+  printf '\112\123\124\125\126\127\130\131\132\143\144\145\146\147\150\151\152\163\164\165\166\167\170\171\172\202\203\204\205\206\207\210'
+  printf '\211\212\222\223\224\225\226\227\230\231\232\242\243\244\245\246\247\250\251\252\262\263\264\265\266\267\270\271\272\302\303\304'
+  printf '\305\306\307\310\311\312\322\323\324\325\326\327\330\331\332\342\343\344\345\346\347\350\351\352\362\363\364\365\366\367\370\371'
+  printf '\372\377\332\000\014\003\001\000\002\021\003\021\000\077\000\367\372\050\242\200\077\377\331'
+}
+
+emit_png() {
+  printf '\211\120\116\107\015\012\032\012\000\000\000\015\111\110\104\122\000\000\000\001\000\000\000\001\010\006\000\000\000\037\025\304\211\000\000\000\012\111\104\101\124\170\234\143\000\001\000\000\005\000\001\015\012\055\264\000\000\000\000\111\105\116\104\256\102\140\202'
+}
+
+emit_svg() {
+  printf '<?xml version="1.0" encoding="UTF-8" standalone="no"?>\n'
+  printf '<svg width="8pt" height="8pt" viewBox="0.00 0.00 8.00 8.00" xmlns="http://www.w3.org/2000/svg">\n'
+  printf '<g id="graph0" class="graph"></g>\n'
+  if [ "$SIZE" -gt 0 ]; then
+    printf '<!--'
+    filler "$SIZE"
+    printf -- '-->\n'
+  fi
+  printf '</svg>\n'
+}
+
+emit() {
+  COUNT=$((COUNT + 1))
+  if [ "$DELAY_MAX_MS" -gt "$DELAY_MS" ]; then
+    sleep "$(awk -v seed="$$$COUNT" "BEGIN { srand(seed); print ($DELAY_MS + rand() * ($DELAY_MAX_MS - $DELAY_MS)) / 1000 }")"
+  elif [ "$DELAY_MS" -gt 0 ]; then
+    sleep "$(awk "BEGIN { print $DELAY_MS / 1000 }")"
+  fi
+  case "$FORMAT" in
+    png) emit_png ;;
+    svg) emit_svg ;;
+    *) emit_jpeg ;;
+  esac
+}
+
+if [ -n "$INPUT" ]; then
+  [ -r "$INPUT" ] || { echo "stub-dot: cannot read $INPUT" >&2; exit 2; }
+  if [ -n "$OUTPUT" ]; then
+    emit > "$OUTPUT"
+  else
+    emit
+  fi
+  exit 0
+fi
+
+while IFS= read -r line || [ -n "$line" ]; do
+  if [ -n "$FAIL_ON" ]; then
+    case "$line" in
+      *"$FAIL_ON"*) echo "stub-dot: syntax error in line: $line" >&2; exit 1 ;;
+    esac
+  fi
+  if [ -n "$WARN_ON" ]; then
+    case "$line" in
+      *"$WARN_ON"*) echo "Warning: stub-dot: line: $line" >&2 ;;
+    esac
+  fi
+  case "$line" in
+    *"}") emit ;;
+  esac
+done
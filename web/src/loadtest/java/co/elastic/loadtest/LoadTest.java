@@ -0,0 +1,454 @@
+package co.elastic.loadtest;
+
+import co.elastic.TokenVisualizerApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of {@code /api/visualize}.
+ *
+ * Starts the web app on a random port with the stub {@code dot} from {@code scripts/}, then sends
+ * mixed Korean and Japanese requests at a fixed average rate with exponentially distributed gaps
+ * (an open model: requests keep arriving however slow the responses are, as they would from real
+ * users). Latency is measured from when a request was due to be sent, so time spent waiting for a
+ * client thread counts as well. Requests due during the warm-up are sent but not counted.
+ *
+ * Writes a JSON report of throughput, latency percentiles and error rates, and with
+ * {@code --baseline} compares it with an earlier report and exits with 1 on a regression.
+ *
+ * Options (defaults in brackets):
+ * <pre>
+ *   --rate N              requests per second [20]
+ *   --duration S          seconds of measured load [30]
+ *   --warmup S            seconds of load before measuring [5]
+ *   --ja-ratio F          fraction of Japanese requests [0.5]
+ *   --repeat-ratio F      fraction of requests for a text sent before, i.e. render cache hits [0.2]
+ *   --length N            characters per text [60]
+ *   --format F            jpg, png, svg or dot [jpg]
+ *   --renderer R          graphviz or svg [graphviz]
+ *   --stub PATH           the stub dot script [scripts/stub-dot.sh]
+ *   --stub-delay-ms N     stub delay per image [0]
+ *   --stub-delay-max-ms N random stub delay between --stub-delay-ms and this
+ *   --stub-size N         stub image size in bytes, for jpg and svg [0]
+ *   --report PATH         where to write the report [target/loadtest-report.json]
+ *   --baseline PATH       report to compare with
+ *   --tolerance F         allowed relative regression against the baseline [0.1]
+ *   --seed N              seed for arrivals and texts [42]
+ *   --visualizer.*, --server.*, --spring.*   passed on to the app
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final String[] KOREAN = {
+        "뿌리가 깊은 나무는 바람에 아니 뮐세.",
+        "샘이 깊은 물은 가뭄에 아니 그칠세.",
+        "세종시는 대한민국의 행정 수도입니다.",
+        "엘라스틱서치는 분산 검색 엔진으로 널리 쓰인다.",
+        "형태소 분석기는 문장을 의미 있는 단위로 나눈다.",
+        "오늘 서울의 날씨는 맑고 기온이 조금 높겠습니다."
+    };
+
+    private static final String[] JAPANESE = {
+        "シンプルさは究極の洗練である。",
+        "関西国際空港から東京駅まで新幹線で移動した。",
+        "形態素解析は日本語の検索に欠かせない処理です。",
+        "今日の東京は晴れ、最高気温は二十五度の予想です。",
+        "吾輩は猫である。名前はまだ無い。",
+        "分散検索エンジンは大量の文書を高速に検索する。"
+    };
+
+    private static final int TIMEOUT_MILLIS = 120_000;
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final List<String> appArgs = new ArrayList<>();
+
+    private final double rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final double jaRatio;
+    private final double repeatRatio;
+    private final int length;
+    private final Random random;
+
+    private final Results all = new Results();
+    private final Map<String, Results> byLanguage = new LinkedHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private int maxInFlight;
+
+    private LoadTest(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--visualizer.") || arg.startsWith("--server.") || arg.startsWith("--spring.")
+                    || arg.startsWith("--logging.")) {
+                appArgs.add(arg);
+            } else if (arg.startsWith("--") && i + 1 < args.length) {
+                options.put(arg.substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        this.rate = Double.parseDouble(option("rate", "20"));
+        this.durationSeconds = Integer.parseInt(option("duration", "30"));
+        this.warmupSeconds = Integer.parseInt(option("warmup", "5"));
+        this.jaRatio = Double.parseDouble(option("ja-ratio", "0.5"));
+        this.repeatRatio = Double.parseDouble(option("repeat-ratio", "0.2"));
+        this.length = Integer.parseInt(option("length", "60"));
+        this.random = new Random(Long.parseLong(option("seed", "42")));
+        byLanguage.put("ko", new Results());
+        byLanguage.put("ja", new Results());
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new LoadTest(args).run());
+    }
+
+    private int run() throws Exception {
+        Path stub = writeStubWrapper();
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--web",
+                "--server.port=0",
+                "--visualizer.render.dot-path=" + stub));
+        // A single client would otherwise be held to one client's quota.
+        if (appArgs.stream().noneMatch(arg -> arg.startsWith("--visualizer.admission.enabled="))) {
+            args.add("--visualizer.admission.enabled=false");
+        }
+        args.addAll(appArgs);
+
+        ConfigurableApplicationContext context = SpringApplication.run(TokenVisualizerApplication.class,
+                args.toArray(new String[0]));
+        Map<String, Object> report;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String base = "http://localhost:" + port;
+            drive(base + "/api/visualize");
+            report = report(fetchStats(base + "/api/stats"));
+        } finally {
+            context.close();
+        }
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        File reportFile = new File(option("report", "target/loadtest-report.json"));
+        int exitCode = 0;
+        if (options.containsKey("baseline")) {
+            JsonNode baseline = mapper.readTree(new File(options.get("baseline")));
+            Map<String, Object> comparison = compare(baseline, report,
+                    Double.parseDouble(option("tolerance", "0.1")));
+            report.put("comparison", comparison);
+            exitCode = Boolean.TRUE.equals(comparison.get("regressed")) ? 1 : 0;
+        }
+        if (reportFile.getParentFile() != null) {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+        }
+        mapper.writeValue(reportFile, report);
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("Report written to " + reportFile);
+        return exitCode;
+    }
+
+    /** Writes a script that runs the stub dot with the configured delay and size. */
+    private Path writeStubWrapper() throws IOException {
+        File stub = new File(option("stub", "scripts/stub-dot.sh")).getAbsoluteFile();
+        if (!stub.canRead()) {
+            throw new IllegalArgumentException("No stub dot at " + stub);
+        }
+        Path wrapper = Files.createTempFile("loadtest-dot", ".sh");
+        wrapper.toFile().deleteOnExit();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(wrapper))) {
+            out.println("#!/bin/sh");
+            out.println("export STUB_DOT_DELAY_MS=" + Integer.parseInt(option("stub-delay-ms", "0")));
+            out.println("export STUB_DOT_DELAY_MAX_MS=" + Integer.parseInt(option("stub-delay-max-ms", "0")));
+            out.println("export STUB_DOT_SIZE=" + Integer.parseInt(option("stub-size", "0")));
+            out.println("exec sh '" + stub + "' \"$@\"");
+        }
+        if (!wrapper.toFile().setExecutable(true)) {
+            throw new IOException("Can't make " + wrapper + " executable");
+        }
+        return wrapper;
+    }
+
+    /** Sends requests at exponentially distributed intervals until the warm-up and run are over. */
+    private void drive(String url) throws InterruptedException {
+        ExecutorService clients = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "loadtest-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<String> sent = new ArrayList<>();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        long due = start;
+        for (int sequence = 0; ; sequence++) {
+            due += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+            if (due >= end) {
+                break;
+            }
+            String language = random.nextDouble() < jaRatio ? "ja" : "ko";
+            String text;
+            if (!sent.isEmpty() && random.nextDouble() < repeatRatio) {
+                text = sent.get(random.nextInt(sent.size()));
+                language = text.startsWith("ja:") ? "ja" : "ko";
+            } else {
+                text = language + ":" + text(language, sequence);
+                sent.add(text);
+            }
+            long scheduled = due;
+            boolean measured = due >= measureFrom;
+            String lang = language;
+            String body = text.substring(3);
+
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            maxInFlight = Math.max(maxInFlight, inFlight.incrementAndGet());
+            clients.execute(() -> {
+                String outcome = send(url, lang, body);
+                long latency = System.nanoTime() - scheduled;
+                inFlight.decrementAndGet();
+                if (measured) {
+                    all.record(outcome, latency);
+                    byLanguage.get(lang).record(outcome, latency);
+                }
+            });
+        }
+        clients.shutdown();
+        if (!clients.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            System.err.println(inFlight.get() + " requests were still running at the end");
+        }
+    }
+
+    /** A text of about {@code length} characters, made unique by its sequence number. */
+    private String text(String language, int sequence) {
+        String[] sentences = language.equals("ja") ? JAPANESE : KOREAN;
+        StringBuilder sb = new StringBuilder();
+        int i = random.nextInt(sentences.length);
+        while (sb.length() < length) {
+            if (sb.length() > 0 && language.equals("ko")) {
+                sb.append(' ');
+            }
+            sb.append(sentences[i++ % sentences.length]);
+        }
+        sb.setLength(length);
+        return sb.append(' ').append(sequence).toString();
+    }
+
+    /** Posts one request and returns its status code, or the name of the exception that failed it. */
+    private String send(String url, String language, String text) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+            String form = "language=" + language
+                    + "&format=" + option("format", "jpg")
+                    + "&renderer=" + option("renderer", "graphviz")
+                    + "&text=" + URLEncoder.encode(text, "UTF-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                try (InputStream body = in) {
+                    byte[] buffer = new byte[8192];
+                    while (body.read(buffer) >= 0) {
+                        // Drain the image, as a browser would.
+                    }
+                }
+            }
+            return String.valueOf(status);
+        } catch (IOException e) {
+            return e.getClass().getSimpleName();
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static Map<String, Object> fetchStats(String url) {
+        try (InputStream in = new URL(url).openStream()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> stats = new ObjectMapper().readValue(in, Map.class);
+            Map<String, Object> server = new LinkedHashMap<>();
+            for (String name : new String[] { "renderer", "renderCache", "tokenizerPool" }) {
+                if (stats.containsKey(name)) {
+                    server.put(name, stats.get(name));
+                }
+            }
+            return server;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Map<String, Object> report(Map<String, Object> server) {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("rate", rate);
+        config.put("durationSeconds", durationSeconds);
+        config.put("warmupSeconds", warmupSeconds);
+        config.put("jaRatio", jaRatio);
+        config.put("repeatRatio", repeatRatio);
+        config.put("length", length);
+        config.put("format", option("format", "jpg"));
+        config.put("renderer", option("renderer", "graphviz"));
+        config.put("stubDelayMs", Integer.parseInt(option("stub-delay-ms", "0")));
+        config.put("stubDelayMaxMs", Integer.parseInt(option("stub-delay-max-ms", "0")));
+        config.put("stubSize", Integer.parseInt(option("stub-size", "0")));
+        config.put("appArgs", appArgs);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.putAll(all.summary(durationSeconds));
+        report.put("maxInFlight", maxInFlight);
+        Map<String, Object> languages = new LinkedHashMap<>();
+        byLanguage.forEach((language, results) -> languages.put(language, results.summary(durationSeconds)));
+        report.put("languages", languages);
+        if (server != null) {
+            report.put("server", server);
+        }
+        return report;
+    }
+
+    /**
+     * Compares throughput, error rate and latency percentiles with a baseline report. Latency and
+     * throughput may be off by {@code tolerance}, relative, and the error rate by a percentage
+     * point, before they count as a regression.
+     */
+    private static Map<String, Object> compare(JsonNode baseline, Map<String, Object> report, double tolerance) {
+        Map<String, Object> comparison = new LinkedHashMap<>();
+        List<String> regressions = new ArrayList<>();
+
+        double baseThroughput = baseline.path("throughput").asDouble();
+        double throughput = (Double) report.get("throughput");
+        comparison.put("throughput", delta(baseThroughput, throughput));
+        if (throughput < baseThroughput * (1 - tolerance)) {
+            regressions.add("throughput");
+        }
+
+        double baseErrors = baseline.path("errorRate").asDouble();
+        double errors = (Double) report.get("errorRate");
+        comparison.put("errorRate", delta(baseErrors, errors));
+        if (errors > baseErrors + 0.01) {
+            regressions.add("errorRate");
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> latency = (Map<String, Object>) report.get("latencyMillis");
+        Map<String, Object> latencyDeltas = new LinkedHashMap<>();
+        for (String name : new String[] { "p50", "p95", "p99", "max" }) {
+            double base = baseline.path("latencyMillis").path(name).asDouble();
+            double current = ((Number) latency.get(name)).doubleValue();
+            latencyDeltas.put(name, delta(base, current));
+            // The maximum is a single sample, too noisy to fail a run on.
+            if (!name.equals("max") && current > base * (1 + tolerance)) {
+                regressions.add("latency." + name);
+            }
+        }
+        comparison.put("latencyMillis", latencyDeltas);
+        comparison.put("tolerance", tolerance);
+        comparison.put("regressions", regressions);
+        comparison.put("regressed", !regressions.isEmpty());
+        return comparison;
+    }
+
+    private static Map<String, Object> delta(double baseline, double current) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("baseline", baseline);
+        delta.put("current", current);
+        delta.put("change", baseline == 0 ? null : round((current - baseline) / baseline));
+        return delta;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    /** Outcomes and latencies of the measured requests. */
+    private static final class Results {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+        private final Map<String, Integer> outcomes = new LinkedHashMap<>();
+
+        synchronized void record(String outcome, long latencyNanos) {
+            outcomes.merge(outcome, 1, Integer::sum);
+            if (!outcome.startsWith("2") && !outcome.equals("304")) {
+                errors++;
+                return;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        synchronized Map<String, Object> summary(int durationSeconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int total = count + errors;
+
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("p50", percentile(sorted, 0.50));
+            latency.put("p95", percentile(sorted, 0.95));
+            latency.put("p99", percentile(sorted, 0.99));
+            latency.put("max", count == 0 ? 0.0 : sorted[count - 1] / 1e6);
+            latency.put("mean", count == 0 ? 0.0 : round(Arrays.stream(sorted).average().orElse(0) / 1e6));
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("requests", total);
+            summary.put("succeeded", count);
+            summary.put("errors", errors);
+            summary.put("errorRate", total == 0 ? 0.0 : round((double) errors / total));
+            summary.put("throughput", round((double) count / durationSeconds));
+            summary.put("latencyMillis", latency);
+            summary.put("outcomes", new LinkedHashMap<>(outcomes));
+            return summary;
+        }
+
+        /** Nearest-rank percentile, in milliseconds. */
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int rank = (int) Math.ceil(p * sorted.length);
+            return round(sorted[Math.max(0, rank - 1)] / 1e6);
+        }
+    }
+}
@@ -33,7 +33,7 @@ public class TokenVisualizerApplication {
     private static boolean hasCliOptions(String[] args) {
         for (String arg : args) {
             if (arg.equals("-t") || arg.equals("-l") || arg.equals("-m") || 
-                arg.equals("-o") || arg.equals("-d") || arg.equals("-h") || 
+                arg.equals("-o") || arg.equals("-d") || arg.equals("-r") || arg.equals("-e") || arg.equals("-p") || arg.equals("-f") || arg.equals("-w") || arg.equals("-s") || arg.equals("-a") || arg.equals("-n") || arg.equals("-h") || 
                 arg.equals("--help")) {
                 return true;
             }
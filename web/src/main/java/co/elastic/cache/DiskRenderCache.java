@@ -0,0 +1,578 @@
+package co.elastic.cache;
+
+import co.elastic.render.ImageBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk LRU tier of rendered lattices that survives restarts.
+ *
+ * Images are appended to segment files of at most {@code segmentBytes} by a writer thread, so
+ * rendering never waits for the disk. Only the newest segment is written to; once it is full it
+ * is sealed and memory-mapped, so reads are served from the page cache. The newest segment is
+ * read and written through a {@link RandomAccessFile} rather than a {@link FileChannel}, which
+ * an interrupted request thread would close for everyone. An in-memory index maps each key to its
+ * record. Evicting an entry only drops it from the index, and a background compaction copies the
+ * live records of mostly dead segments to the newest one and deletes them. On startup the
+ * segments are scanned and the index rebuilt from every intact record, so the cache comes back
+ * warm, and the newest segment is appended to again if it isn't full; a record torn by a crash
+ * fails its checksum and ends the scan of its segment.
+ *
+ * A record is the magic number, the record length, the key, the image properties, the image, and
+ * a CRC32 of everything after the magic number.
+ */
+public class DiskRenderCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DiskRenderCache.class);
+
+    private static final int MAGIC = 0x4c415454;
+    private static final int HEADER_BYTES = 8;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".dat";
+    private static final int WRITE_QUEUE_CAPACITY = 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final double compactionThreshold;
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private Segment active;
+    private long liveBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong droppedWrites = new AtomicLong();
+
+    private final ThreadPoolExecutor writer;
+    private final ScheduledExecutorService compactor;
+
+    public DiskRenderCache(Path directory, long maxBytes, long segmentBytes, double compactionThreshold,
+                           long compactionIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE);
+        this.compactionThreshold = compactionThreshold;
+
+        Files.createDirectories(directory);
+        recover();
+        if (active == null) {
+            active = newSegment();
+        }
+
+        // An image whose write doesn't fit in the queue is still in memory, so it is only dropped.
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY), r -> {
+                    Thread thread = new Thread(r, "render-cache-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, executor) -> droppedWrites.incrementAndGet());
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "render-cache-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(this::compact, compactionIntervalMillis, compactionIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Returns the cached image, or null if it isn't on disk. */
+    public ImageBuffer get(String key) {
+        Entry entry;
+        Segment segment = null;
+        long offset = 0;
+        synchronized (this) {
+            // Compaction may move the entry, so where it is has to be read together.
+            entry = index.get(key);
+            if (entry != null) {
+                segment = entry.segment;
+                offset = entry.offset;
+            }
+        }
+        if (entry != null) {
+            try {
+                ImageBuffer image = decode(read(segment, offset, entry.length), key);
+                if (image != null) {
+                    hits.incrementAndGet();
+                    return image;
+                }
+                log.warn("Dropping corrupt render cache record segment={} offset={}", segment.id, offset);
+                synchronized (this) {
+                    if (index.get(key) == entry) {
+                        remove(key);
+                    }
+                }
+            } catch (IOException e) {
+                // The segment was written to a new one by compaction and closed while we read it.
+                log.debug("Render cache read failed key={}: {}", key, e.toString());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Whether {@code key} is on disk, without refreshing its LRU position. */
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /** Queues the image to be written unless it is there already, and returns without waiting for it. */
+    public void put(String key, ImageBuffer image) {
+        if (contains(key)) {
+            return;
+        }
+        writer.execute(() -> write(key, image));
+    }
+
+    /** Waits for the writes queued so far. */
+    void flush() throws InterruptedException, ExecutionException {
+        writer.submit(() -> { }).get();
+    }
+
+    /**
+     * Appends the image unless it is there already, evicting the least recently used images if
+     * the cache would go over its cap. Images that don't fit in a segment are not stored.
+     */
+    private void write(String key, ImageBuffer image) {
+        if (contains(key)) {
+            return;
+        }
+        byte[] record = encode(key, image);
+        if (record.length > segmentBytes || record.length > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            if (index.containsKey(key)) {
+                return;
+            }
+            Iterator<Entry> eldest = index.values().iterator();
+            while (liveBytes + record.length > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                release(evicted);
+                evictions.incrementAndGet();
+            }
+            try {
+                index.put(key, append(record));
+                liveBytes += record.length;
+                writes.incrementAndGet();
+            } catch (IOException e) {
+                log.warn("Render cache write failed segment={}: {}", active.id, e.toString());
+            }
+        }
+    }
+
+    private Entry append(byte[] record) throws IOException {
+        if (active.size + record.length > segmentBytes) {
+            seal(active);
+            active = newSegment();
+        }
+        long offset = active.size;
+        synchronized (active.file) {
+            active.file.seek(offset);
+            active.file.write(record);
+        }
+        active.size += record.length;
+        active.liveBytes += record.length;
+        return new Entry(active, offset, record.length);
+    }
+
+    private void remove(String key) {
+        Entry entry = index.remove(key);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    /** Marks an entry's record as dead, and deletes its segment once nothing in it is live. */
+    private void release(Entry entry) {
+        entry.removed = true;
+        liveBytes -= entry.length;
+        entry.segment.liveBytes -= entry.length;
+        if (entry.segment != active && entry.segment.liveBytes == 0) {
+            delete(entry.segment);
+        }
+    }
+
+    /**
+     * Copies the live records of every sealed segment that is at least {@code compactionThreshold}
+     * dead to the active segment, then deletes it. Records are moved one at a time, so readers and
+     * writers only wait for a single copy.
+     */
+    void compact() {
+        List<Segment> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.size > 0
+                        && 1 - (double) segment.liveBytes / segment.size >= compactionThreshold) {
+                    candidates.add(segment);
+                }
+            }
+        }
+        for (Segment segment : candidates) {
+            List<Entry> live = new ArrayList<>();
+            synchronized (this) {
+                // Iterating doesn't count as an access, so the LRU order is left as is.
+                for (Entry entry : index.values()) {
+                    if (entry.segment == segment) {
+                        live.add(entry);
+                    }
+                }
+            }
+            beforeMoving(live.size());
+            try {
+                for (Entry entry : live) {
+                    synchronized (this) {
+                        // Entries evicted since the list was made are no longer live; moving one would
+                        // count its record twice. A removed entry is one the index no longer maps its
+                        // key to, checked without the index lookup that would refresh its LRU position.
+                        if (entry.removed || entry.segment != segment || !segments.containsKey(segment.id)) {
+                            continue;
+                        }
+                        ByteBuffer source = read(segment, entry.offset, entry.length);
+                        byte[] record = new byte[entry.length];
+                        source.get(record);
+                        segment.liveBytes -= entry.length;
+                        Entry moved = append(record);
+                        entry.moveTo(moved);
+                    }
+                }
+                synchronized (this) {
+                    if (segments.containsKey(segment.id)) {
+                        delete(segment);
+                    }
+                }
+                compactedSegments.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Render cache compaction failed segment={}: {}", segment.id, e.toString());
+            }
+        }
+    }
+
+    /** The live bytes of every segment together, which add up to the live bytes of the index. */
+    synchronized long segmentLiveBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.liveBytes;
+        }
+        return total;
+    }
+
+    /**
+     * Called by compaction, without the lock, between collecting the live records of a segment and
+     * moving them. Tests override it to evict records in between.
+     */
+    void beforeMoving(int records) {
+    }
+
+    /** Returns a record, from the segment's map if it is sealed or else read from the file. */
+    private static ByteBuffer read(Segment segment, long offset, int length) throws IOException {
+        MappedByteBuffer map = segment.map;
+        if (map != null) {
+            ByteBuffer record = map.duplicate();
+            record.position((int) offset);
+            record.limit((int) offset + length);
+            return record.slice();
+        }
+        byte[] record = new byte[length];
+        synchronized (segment.file) {
+            segment.file.seek(offset);
+            segment.file.readFully(record);
+        }
+        return ByteBuffer.wrap(record);
+    }
+
+    private Segment newSegment() throws IOException {
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path path = directory.resolve(String.format("%s%010d%s", PREFIX, id, SUFFIX));
+        Files.createFile(path);
+        Segment segment = new Segment(id, path);
+        segment.file = new RandomAccessFile(path.toFile(), "rw");
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /** Closes a full segment for writing and maps it, so that its records are read from memory. */
+    private static void seal(Segment segment) throws IOException {
+        FileChannel channel = segment.file.getChannel();
+        channel.force(false);
+        segment.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        segment.file.close();
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.id);
+        try {
+            if (segment.file != null) {
+                segment.file.close();
+            }
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // Windows doesn't delete files that are still mapped; the next startup will.
+            log.debug("Could not delete render cache segment {}: {}", segment.path, e.toString());
+        }
+    }
+
+    /**
+     * Rebuilds the index from the segments on disk, oldest first, so later records win, and makes
+     * the newest one active again if it ends in an intact record and has room.
+     */
+    private void recover() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file in the render cache directory: {}", path);
+                }
+            }
+        }
+
+        Segment intactTail = null;
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            Segment segment = new Segment(file.getKey(), file.getValue());
+            long fileSize;
+            try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                fileSize = channel.size();
+                segment.size = Math.min(fileSize, segmentBytes);
+                segment.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+            }
+            segments.put(segment.id, segment);
+
+            ByteBuffer map = segment.map.duplicate();
+            long offset = 0;
+            while (offset + HEADER_BYTES <= segment.size) {
+                map.position((int) offset);
+                int length = map.getInt((int) offset + 4);
+                if (map.getInt((int) offset) != MAGIC || length <= HEADER_BYTES || offset + length > segment.size) {
+                    break;
+                }
+                map.limit((int) (offset + length));
+                String key = readKey(map.slice());
+                map.limit(map.capacity());
+                if (key == null) {
+                    break;
+                }
+                Entry previous = index.put(key, new Entry(segment, offset, length));
+                if (previous != null) {
+                    previous.segment.liveBytes -= previous.length;
+                    liveBytes -= previous.length;
+                }
+                segment.liveBytes += length;
+                liveBytes += length;
+                offset += length;
+            }
+            if (offset < segment.size) {
+                log.warn("Render cache segment {} ends in {} unreadable bytes", segment.path, segment.size - offset);
+            }
+            intactTail = offset == fileSize ? segment : null;
+        }
+
+        // Segments that only hold replaced records or a torn tail are of no use any more.
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.liveBytes == 0) {
+                delete(segment);
+            }
+        }
+        Iterator<Entry> eldest = index.values().iterator();
+        while (liveBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            release(evicted);
+        }
+        if (intactTail != null && segments.containsKey(intactTail.id) && intactTail.size < segmentBytes) {
+            intactTail.file = new RandomAccessFile(intactTail.path.toFile(), "rw");
+            intactTail.map = null;
+            active = intactTail;
+        }
+        recovered.set(index.size());
+        if (!index.isEmpty()) {
+            log.info("Render cache recovered {} images ({} bytes) from {}", index.size(), liveBytes, directory);
+        }
+    }
+
+    private static byte[] encode(String key, ImageBuffer image) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> properties = new ArrayList<>();
+        int length = HEADER_BYTES + 2 + keyBytes.length + 2;
+        for (Map.Entry<String, String> property : image.getProperties().entrySet()) {
+            byte[] name = property.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = property.getValue().getBytes(StandardCharsets.UTF_8);
+            properties.add(name);
+            properties.add(value);
+            length += 4 + name.length + value.length;
+        }
+        length += 4 + (int) image.size() + 4;
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(MAGIC).putInt(length);
+        record.putShort((short) keyBytes.length).put(keyBytes);
+        record.putShort((short) (properties.size() / 2));
+        for (byte[] field : properties) {
+            record.putShort((short) field.length).put(field);
+        }
+        record.putInt((int) image.size());
+        record.put(image.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length - 8);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    /** Returns the key of a record, or null if its checksum doesn't match. */
+    private static String readKey(ByteBuffer record) {
+        if (!checksumMatches(record)) {
+            return null;
+        }
+        record.position(HEADER_BYTES);
+        return readString(record);
+    }
+
+    /** Returns the image of a record, or null if it is corrupt or belongs to another key. */
+    private static ImageBuffer decode(ByteBuffer record, String key) {
+        if (!checksumMatches(record)) {
+            return null;
+        }
+        record.position(HEADER_BYTES);
+        if (!key.equals(readString(record))) {
+            return null;
+        }
+        ImageBuffer image = new ImageBuffer();
+        for (int count = record.getShort(); count > 0; count--) {
+            image.setProperty(readString(record), readString(record));
+        }
+        int size = record.getInt();
+        byte[] chunk = new byte[Math.min(size, 64 * 1024)];
+        while (size > 0) {
+            int n = Math.min(size, chunk.length);
+            record.get(chunk, 0, n);
+            image.write(chunk, 0, n);
+            size -= n;
+        }
+        return image;
+    }
+
+    private static boolean checksumMatches(ByteBuffer record) {
+        int length = record.remaining();
+        CRC32 crc = new CRC32();
+        ByteBuffer body = record.duplicate();
+        body.position(4).limit(length - 4);
+        crc.update(body);
+        return (int) crc.getValue() == record.getInt(length - 4);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long fileBytes = 0;
+        for (Segment segment : segments.values()) {
+            fileBytes += segment.size;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", index.size());
+        stats.put("bytes", liveBytes);
+        stats.put("fileBytes", fileBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("segments", segments.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("writes", writes.get());
+        stats.put("queuedWrites", writer.getQueue().size());
+        stats.put("droppedWrites", droppedWrites.get());
+        stats.put("evictions", evictions.get());
+        stats.put("compactedSegments", compactedSegments.get());
+        stats.put("recovered", recovered.get());
+        return stats;
+    }
+
+    /** Finishes the queued writes and any compaction in progress, then closes the active segment. */
+    @Override
+    public void close() {
+        writer.shutdown();
+        compactor.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                active.file.getFD().sync();
+                active.file.close();
+            } catch (IOException e) {
+                log.warn("Could not close render cache segment {}: {}", active.path, e.toString());
+            }
+        }
+    }
+
+    /** A segment file: written and read through its file while active, read through its map once sealed. */
+    private static final class Segment {
+        final long id;
+        final Path path;
+        RandomAccessFile file;
+        volatile MappedByteBuffer map;
+        long size;
+        long liveBytes;
+
+        Segment(long id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+    }
+
+    /** Where a key's record is. Compaction moves it in place, so its LRU position is kept. */
+    private static final class Entry {
+        Segment segment;
+        long offset;
+        final int length;
+        boolean removed;
+
+        Entry(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        void moveTo(Entry other) {
+            this.segment = other.segment;
+            this.offset = other.offset;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package co.elastic.cache;
+
+import co.elastic.CompiledUserDictionary;
+import co.elastic.render.ImageBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory LRU cache of rendered lattices, bounded by the total number of image bytes it holds.
+ *
+ * Concurrent requests for a key that is not cached yet are coalesced: the first caller renders,
+ * and everyone else arriving before it finishes waits for and shares its result.
+ *
+ * With a {@link DiskRenderCache}, misses are looked up on disk before rendering, and every
+ * rendered image is also written there in the background, so that it outlives both eviction and
+ * restarts.
+ */
+public class RenderCache {
+
+    public interface Loader {
+        ImageBuffer load() throws Exception;
+    }
+
+    public interface AsyncLoader {
+        CompletableFuture<ImageBuffer> load();
+    }
+
+    private final long maxBytes;
+    private final DiskRenderCache disk;
+
+    private final LinkedHashMap<String, ImageBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final ConcurrentHashMap<String, CompletableFuture<ImageBuffer>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RenderCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    public RenderCache(long maxBytes, DiskRenderCache disk) {
+        this.maxBytes = maxBytes;
+        this.disk = disk;
+    }
+
+    /**
+     * Builds a cache key from the inputs that determine a render. The key is also used as the
+     * response's strong ETag, so it must change whenever the rendered bytes could.
+     */
+    public static String key(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            sb.append(part == null ? "" : part).append('\0');
+        }
+        return CompiledUserDictionary.sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ImageBuffer get(String key, Loader loader) throws Exception {
+        ImageBuffer cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<ImageBuffer> render = new CompletableFuture<>();
+        CompletableFuture<ImageBuffer> leader = inFlight.putIfAbsent(key, render);
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            return await(leader);
+        }
+
+        try {
+            // The previous leader may have finished between our lookup and putIfAbsent.
+            ImageBuffer value = lookup(key);
+            if (value == null) {
+                value = loadFromDisk(key);
+            }
+            if (value == null) {
+                misses.incrementAndGet();
+                value = loader.load();
+                put(key, value);
+                store(key, value);
+            } else {
+                hits.incrementAndGet();
+            }
+            render.complete(value);
+            return value;
+        } catch (Exception e) {
+            render.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, render);
+        }
+    }
+
+    /**
+     * Like {@link #get}, but never blocks: the loader starts the render on its own executors, and
+     * callers coalesced onto a render in progress get a future of its result.
+     */
+    public CompletableFuture<ImageBuffer> getAsync(String key, AsyncLoader loader) {
+        ImageBuffer cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<ImageBuffer> render = new CompletableFuture<>();
+        CompletableFuture<ImageBuffer> leader = inFlight.putIfAbsent(key, render);
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            return leader;
+        }
+
+        ImageBuffer value = lookup(key);
+        if (value == null) {
+            value = loadFromDisk(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+            inFlight.remove(key, render);
+            render.complete(value);
+            return render;
+        }
+
+        misses.incrementAndGet();
+        CompletableFuture<ImageBuffer> loaded;
+        try {
+            loaded = loader.load();
+        } catch (RuntimeException e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+        loaded.whenComplete((image, error) -> {
+            if (error == null) {
+                put(key, image);
+                store(key, image);
+            }
+            inFlight.remove(key, render);
+            if (error == null) {
+                render.complete(image);
+            } else {
+                render.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            }
+        });
+        return render;
+    }
+
+    private static ImageBuffer await(CompletableFuture<ImageBuffer> leader) throws Exception {
+        try {
+            return leader.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Whether {@code key} is cached, without counting a hit or refreshing its LRU position. */
+    public boolean contains(String key) {
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return true;
+            }
+        }
+        return disk != null && disk.contains(key);
+    }
+
+    /** Reads a memory miss back from disk, and keeps it in memory again. */
+    private ImageBuffer loadFromDisk(String key) {
+        if (disk == null) {
+            return null;
+        }
+        ImageBuffer value = disk.get(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    private void store(String key, ImageBuffer value) {
+        if (disk != null) {
+            disk.put(key, value);
+        }
+    }
+
+    private synchronized ImageBuffer lookup(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(String key, ImageBuffer value) {
+        if (value.size() > maxBytes) {
+            return;
+        }
+        ImageBuffer previous = entries.put(key, value);
+        if (previous != null) {
+            totalBytes -= previous.size();
+        }
+        totalBytes += value.size();
+
+        Iterator<ImageBuffer> it = entries.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            ImageBuffer eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.size();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("evictions", evictions.get());
+        if (disk != null) {
+            stats.put("disk", disk.getStats());
+        }
+        return stats;
+    }
+}
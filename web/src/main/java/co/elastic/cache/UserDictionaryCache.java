@@ -0,0 +1,103 @@
+package co.elastic.cache;
+
+import co.elastic.CompiledUserDictionary;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of compiled user dictionaries keyed by language and the SHA-256 hash of their source.
+ *
+ * The cache is bounded by the total size of the dictionary sources it holds, which is what the
+ * FST size grows with, rather than by entry count: one 50k-entry dictionary weighs as much as
+ * thousands of small ones.
+ */
+public class UserDictionaryCache {
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, CompiledUserDictionary> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public UserDictionaryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the compiled dictionary for the given source, compiling and caching it on a miss.
+     */
+    public CompiledUserDictionary getOrCompile(String lang, byte[] source) throws IOException {
+        String hash = CompiledUserDictionary.sha256(source);
+        CompiledUserDictionary cached = lookup(lang, hash);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        // Compiled outside the lock; two concurrent uploads of the same file just compile twice.
+        CompiledUserDictionary compiled = CompiledUserDictionary.compile(lang, source, hash);
+        put(compiled);
+        return compiled;
+    }
+
+    /**
+     * Returns a previously registered dictionary, or null if it was never registered or has been
+     * evicted since.
+     */
+    public CompiledUserDictionary get(String lang, String hash) {
+        CompiledUserDictionary cached = lookup(lang, hash);
+        if (cached != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return cached;
+    }
+
+    private synchronized CompiledUserDictionary lookup(String lang, String hash) {
+        return entries.get(key(lang, hash));
+    }
+
+    private synchronized void put(CompiledUserDictionary compiled) {
+        CompiledUserDictionary previous = entries.put(key(compiled.getLang(), compiled.getHash()), compiled);
+        if (previous != null) {
+            totalBytes -= previous.getSourceBytes();
+        }
+        totalBytes += compiled.getSourceBytes();
+
+        Iterator<Map.Entry<String, CompiledUserDictionary>> it = entries.entrySet().iterator();
+        // Always keep the entry that was just added, even if it alone exceeds the budget.
+        while (totalBytes > maxBytes && entries.size() > 1 && it.hasNext()) {
+            CompiledUserDictionary eldest = it.next().getValue();
+            if (eldest == compiled) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= eldest.getSourceBytes();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static String key(String lang, String hash) {
+        return (lang.equalsIgnoreCase("ja") ? "ja" : "ko") + ":" + hash;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
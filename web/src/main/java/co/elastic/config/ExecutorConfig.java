@@ -0,0 +1,92 @@
+package co.elastic.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the asynchronous visualize path, so that servlet threads only parse requests and
+ * write responses.
+ *
+ * Tokenization is CPU-bound and runs on a pool sized to the cores. Rendering mostly waits on dot,
+ * so it gets its own larger pool and can't starve tokenization. Both have bounded queues; a full
+ * queue is answered with 503 like a full render queue.
+ *
+ * With {@code visualizer.virtual-threads.enabled=true} on a JDK that has virtual threads (21+),
+ * Tomcat's request handling and the render executor run on virtual threads instead. The build
+ * targets Java 8, so they're looked up reflectively, and the setting is ignored on older JDKs.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutorConfig.class);
+
+    @Value("${visualizer.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService tokenizeExecutor(
+            @Value("${visualizer.executor.tokenize-threads:0}") int threads,
+            @Value("${visualizer.executor.tokenize-queue-capacity:256}") int queueCapacity) {
+        return boundedPool("tokenize", threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                queueCapacity);
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService renderExecutor(
+            @Value("${visualizer.executor.render-threads:32}") int threads,
+            @Value("${visualizer.executor.render-queue-capacity:256}") int queueCapacity) {
+        if (virtualThreads) {
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            if (executor != null) {
+                return executor;
+            }
+        }
+        return boundedPool("render", threads, queueCapacity);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "visualizer.virtual-threads.enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> {
+            if (executor != null) {
+                protocolHandler.setExecutor(executor);
+            }
+        };
+    }
+
+    private static ExecutorService boundedPool(String name, int threads, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /** Returns {@code Executors.newVirtualThreadPerTaskExecutor()}, or null if this JDK lacks it. */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Virtual threads are not available on Java {}, using platform threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
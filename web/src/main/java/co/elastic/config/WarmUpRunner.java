@@ -0,0 +1,52 @@
+package co.elastic.config;
+
+import co.elastic.service.TokenVisualizerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Warms the service up before it reports ready.
+ *
+ * Application runners finish before Spring Boot publishes the readiness state, so with the
+ * readiness probe enabled ({@code /actuator/health/readiness}) no traffic is routed to the
+ * instance until the dictionaries of both languages are loaded and a sample has been tokenized
+ * and rendered. With {@code visualizer.warmup.exit=true} the application exits right after the
+ * warm-up, which is how the {@code appcds} build profile records the classes it loaded.
+ */
+@Component
+@ConditionalOnProperty(name = "visualizer.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class WarmUpRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUpRunner.class);
+
+    @Autowired
+    private TokenVisualizerService visualizerService;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Value("${visualizer.warmup.render:true}")
+    private boolean render;
+
+    @Value("${visualizer.warmup.exit:false}")
+    private boolean exit;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        visualizerService.warmUp(render);
+        log.info("Warm-up finished in {} ms", (System.nanoTime() - start) / 1000000);
+
+        if (exit) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
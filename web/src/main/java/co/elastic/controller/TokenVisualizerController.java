@@ -0,0 +1,701 @@
+package co.elastic.controller;
+
+import co.elastic.CompiledUserDictionary;
+import co.elastic.analysis.TokenStreamWriter;
+import co.elastic.corpus.CorpusAnalyzer;
+import co.elastic.lattice.LatticeJsonWriter;
+import co.elastic.lattice.LatticePruning;
+import co.elastic.render.ImageBuffer;
+import co.elastic.render.OutputFormat;
+import co.elastic.render.RenderQueueFullException;
+import co.elastic.render.RenderTimeoutException;
+import co.elastic.service.AdmissionControl;
+import co.elastic.service.AdmissionRejectedException;
+import co.elastic.service.ModeComparison;
+import co.elastic.service.SessionDelta;
+import co.elastic.service.TokenVisualizerService;
+import co.elastic.service.UnknownDictionaryException;
+import co.elastic.service.UnknownSessionException;
+import co.elastic.service.VisualizeRequest;
+import co.elastic.service.WindowPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+@Controller
+public class TokenVisualizerController {
+
+    private static final String PRUNED_NODES_HEADER = "X-Lattice-Pruned-Nodes";
+    private static final String PRUNED_EDGES_HEADER = "X-Lattice-Pruned-Edges";
+
+    @Autowired
+    private TokenVisualizerService visualizerService;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Value("${visualizer.batch.timeout-ms:600000}")
+    private long batchTimeoutMillis;
+
+    @GetMapping("/")
+    public String index() {
+        return "index";
+    }
+
+    @PostMapping("/api/visualize")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> visualize(
+            @RequestParam("text") String text,
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "mode", defaultValue = "") String mode,
+            @RequestParam(value = "userDict", required = false) MultipartFile userDict,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "renderer", required = false) String renderer,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "prune", required = false) String prune,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest servletRequest) {
+        
+        VisualizeRequest request;
+        try {
+            if (format == null || format.isEmpty()) {
+                OutputFormat negotiated = negotiateFormat(accept, visualizerService.getFormats(renderer));
+                if (negotiated == null) {
+                    return CompletableFuture.completedFuture(
+                            ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).<StreamingResponseBody>build());
+                }
+                format = negotiated.getFileExtension();
+            }
+            request = visualizerService.prepare(text, language, mode, userDict, userDictHash, userDictName, renderer,
+                    format)
+                    .withPruning(LatticePruning.parse(prune));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+
+        // JPEG and PNG are compressed already; SVG and DOT are compressed here rather than by the
+        // container, so that each encoding is cached and gets an ETag of its own.
+        String contentEncoding = request.getFormat().isText() ? negotiateEncoding(acceptEncoding) : null;
+        String etag = request.getETag(contentEncoding);
+
+        // The ETag only depends on the inputs, so a match is answered without rendering anything.
+        if (matchesETag(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                    .<StreamingResponseBody>build());
+        }
+
+        AdmissionControl.Permit permit;
+        try {
+            permit = admissionControl.admit(servletRequest, admissionControl.estimate(request,
+                    uploadedBytes(userDict), true, visualizerService.isCached(request)));
+        } catch (AdmissionRejectedException e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+
+        return visualizerService.visualizeAsync(request.withPermit(permit), contentEncoding)
+                .whenComplete((image, error) -> permit.close())
+                .thenApply(image -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.setContentType(MediaType.parseMediaType(
+                            visualizerService.getRenderer(request).getContentType()));
+                    headers.setContentLength(image.size());
+                    headers.setETag(etag);
+                    headers.setVary(Arrays.asList(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING));
+                    if (contentEncoding != null) {
+                        headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+                    }
+                    setPrunedHeaders(headers, image.getProperties().get(TokenVisualizerService.PRUNED_NODES),
+                            image.getProperties().get(TokenVisualizerService.PRUNED_EDGES));
+
+                    return ResponseEntity.ok()
+                            .headers(headers)
+                            .<StreamingResponseBody>body(image::writeTo);
+                })
+                .exceptionally(TokenVisualizerController::errorResponse);
+    }
+
+    /** Reports how much of the lattice a pruned render left out, when it was pruned. */
+    private static void setPrunedHeaders(HttpHeaders headers, String nodes, String edges) {
+        if (nodes != null && edges != null) {
+            headers.set(PRUNED_NODES_HEADER, nodes);
+            headers.set(PRUNED_EDGES_HEADER, edges);
+        }
+    }
+
+    /**
+     * Picks the first of {@code formats} that {@code accept} allows, most preferred media range
+     * first; wildcards select the default, which comes first in {@code formats}. Returns null if
+     * none is acceptable.
+     */
+    private static OutputFormat negotiateFormat(String accept, List<OutputFormat> formats) {
+        if (accept == null || accept.trim().isEmpty()) {
+            return formats.get(0);
+        }
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return formats.get(0);
+        }
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.getQualityValue() == 0) {
+                continue;
+            }
+            for (OutputFormat format : formats) {
+                if (mediaType.includes(MediaType.parseMediaType(format.getContentType()))) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns {@code gzip} or {@code deflate} if {@code acceptEncoding} allows it, preferring gzip. */
+    private static String negotiateEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String selected = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String coding = fields[0].trim().toLowerCase();
+            if (!coding.equals("gzip") && !coding.equals("deflate")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < fields.length; i++) {
+                String param = fields[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (!refused && (selected == null || coding.equals("gzip"))) {
+                selected = coding;
+            }
+        }
+        return selected;
+    }
+
+    @PostMapping("/api/visualize/batch")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> visualizeBatch(
+            @RequestParam("text") List<String> texts,
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "mode", defaultValue = "") String mode,
+            @RequestParam(value = "userDict", required = false) MultipartFile userDict,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "renderer", required = false) String renderer,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "prune", required = false) String prune,
+            HttpServletRequest servletRequest) {
+
+        try {
+            LatticePruning pruning = LatticePruning.parse(prune);
+            List<VisualizeRequest> requests = new ArrayList<>();
+            double cost = 0;
+            long dictionaryBytes = uploadedBytes(userDict);
+            for (VisualizeRequest request : visualizerService.prepareBatch(texts, language, mode, userDict,
+                    userDictHash, userDictName, renderer, format)) {
+                request = request.withPruning(pruning);
+                requests.add(request);
+                cost += admissionControl.estimate(request, dictionaryBytes, true, visualizerService.isCached(request));
+                dictionaryBytes = 0;
+            }
+            AdmissionControl.Permit permit = admissionControl.admit(servletRequest, cost);
+            requests.replaceAll(request -> request.withPermit(permit));
+
+            // A batch streams for as long as its items take to render, far past the usual async timeout.
+            setAsyncTimeout(servletRequest, batchTimeoutMillis);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/zip"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"lattices.zip\"")
+                    .body(out -> {
+                        try {
+                            visualizerService.visualizeBatch(requests, out);
+                        } finally {
+                            permit.close();
+                        }
+                    });
+
+        } catch (Exception e) {
+            return errorResponse(e);
+        }
+    }
+
+    @PostMapping("/api/visualize/windows")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> visualizeWindows(
+            @RequestParam("text") String text,
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "mode", defaultValue = "") String mode,
+            @RequestParam(value = "userDict", required = false) MultipartFile userDict,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "renderer", required = false) String renderer,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "prune", required = false) String prune,
+            @RequestParam(value = "output", defaultValue = "image") String output,
+            @RequestParam(value = "windowChars", defaultValue = "0") int windowChars,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "pageSize", defaultValue = "5") int pageSize,
+            HttpServletRequest servletRequest) {
+
+        CompletableFuture<WindowPage> windowPage;
+        AdmissionControl.Permit permit;
+        try {
+            VisualizeRequest request = visualizerService.prepare(text, language, mode, userDict, userDictHash,
+                    userDictName, renderer, format)
+                    .withPruning(LatticePruning.parse(prune));
+            permit = admissionControl.admit(servletRequest, admissionControl.estimate(request,
+                    uploadedBytes(userDict), !output.equalsIgnoreCase("lattice"), false));
+            try {
+                windowPage = visualizerService.visualizeWindows(request.withPermit(permit), windowChars, page,
+                        pageSize, output.equalsIgnoreCase("lattice"));
+            } catch (RuntimeException e) {
+                permit.close();
+                throw e;
+            }
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+
+        return windowPage
+                .whenComplete((result, error) -> permit.close())
+                .thenApply(result -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .<StreamingResponseBody>body(result::write))
+                .exceptionally(TokenVisualizerController::errorResponse);
+    }
+
+    @PostMapping("/api/compare")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> compare(
+            @RequestParam("text") String text,
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "modes", required = false) List<String> modes,
+            @RequestParam(value = "userDict", required = false) MultipartFile userDict,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "compareUserDict", defaultValue = "false") boolean compareUserDict,
+            HttpServletRequest servletRequest) {
+
+        CompletableFuture<ModeComparison> comparison;
+        AdmissionControl.Permit permit;
+        try {
+            VisualizeRequest request = visualizerService.prepare(text, language, "", userDict, userDictHash,
+                    userDictName, null, null);
+            // Every mode, with and without the user dictionary, tokenizes the text once more.
+            int runs = (modes == null || modes.isEmpty() ? request.getSupportedModes().size() : modes.size())
+                    * (compareUserDict && request.getUserDict() != null ? 2 : 1);
+            permit = admissionControl.admit(servletRequest, admissionControl.estimate(request,
+                    uploadedBytes(userDict), false, false) + (runs - 1) * admissionControl.estimate(text.length()));
+            try {
+                comparison = visualizerService.compare(request.withPermit(permit), modes, compareUserDict);
+            } catch (RuntimeException e) {
+                permit.close();
+                throw e;
+            }
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+
+        return comparison
+                .whenComplete((result, error) -> permit.close())
+                .thenApply(result -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .<StreamingResponseBody>body(result::write))
+                .exceptionally(TokenVisualizerController::errorResponse);
+    }
+
+    @PostMapping("/api/sessions")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> createSession(
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "mode", defaultValue = "") String mode,
+            @RequestParam(value = "userDict", required = false) MultipartFile userDict,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "renderer", required = false) String renderer,
+            @RequestParam(value = "format", required = false) String format,
+            HttpServletRequest servletRequest) {
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            VisualizeRequest template = visualizerService.prepare("", language, mode, userDict, userDictHash,
+                    userDictName, renderer, format);
+            // Opening a session renders nothing; only an uploaded dictionary costs more than the base.
+            admissionControl.admit(servletRequest,
+                    admissionControl.estimate(template, uploadedBytes(userDict), false, true)).close();
+            response.put("session", visualizerService.createSession(template));
+            response.put("ttlSeconds", visualizerService.getSessionTtlMillis() / 1000);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            return errorResponse(e);
+        }
+    }
+
+    @PostMapping("/api/sessions/{session}/text")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> updateSession(
+            @PathVariable("session") String session,
+            @RequestParam("text") String text,
+            HttpServletRequest servletRequest) {
+
+        try {
+            // An edit is charged for the sentences it renders again, not for the whole text.
+            double cost = admissionControl.estimate(0);
+            for (VisualizeRequest segment : visualizerService.pendingSegments(session, text)) {
+                cost += admissionControl.estimate(segment, 0, true, visualizerService.isCached(segment));
+            }
+            AdmissionControl.Permit permit = admissionControl.admit(servletRequest, cost);
+            CompletableFuture<SessionDelta> update;
+            try {
+                update = visualizerService.updateSession(session, text, permit);
+            } catch (RuntimeException e) {
+                permit.close();
+                throw e;
+            }
+            return update
+                    .whenComplete((result, error) -> permit.close())
+                    .thenApply(delta -> ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .<StreamingResponseBody>body(delta::write))
+                    .exceptionally(TokenVisualizerController::errorResponse);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    @GetMapping("/api/sessions/{session}/segments/{hash}")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> sessionSegment(
+            @PathVariable("session") String session,
+            @PathVariable("hash") String hash,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        try {
+            ImageBuffer image = visualizerService.getSessionSegment(session, hash);
+            if (image == null) {
+                return ResponseEntity.notFound().build();
+            }
+            // Segment hashes are render cache keys, so they double as the image's ETag.
+            String etag = "\"" + hash + "\"";
+            if (matchesETag(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(visualizerService.getSessionContentType(session)))
+                    .contentLength(image.size())
+                    .eTag(etag)
+                    .body(image::writeTo);
+        } catch (Exception e) {
+            return errorResponse(e);
+        }
+    }
+
+    @DeleteMapping("/api/sessions/{session}")
+    @ResponseBody
+    public ResponseEntity<Void> deleteSession(@PathVariable("session") String session) {
+        visualizerService.deleteSession(session);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/api/lattice")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> lattice(
+            @RequestParam("text") String text,
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "mode", defaultValue = "") String mode,
+            @RequestParam(value = "userDict", required = false) MultipartFile userDict,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "prune", required = false) String prune,
+            HttpServletRequest servletRequest) {
+
+        VisualizeRequest request;
+        AdmissionControl.Permit permit;
+        try {
+            request = visualizerService.prepare(text, language, mode, userDict, userDictHash, userDictName, null, null)
+                    .withPruning(LatticePruning.parse(prune));
+            permit = admissionControl.admit(servletRequest,
+                    admissionControl.estimate(request, uploadedBytes(userDict), false, false));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+
+        return visualizerService.analyzeAsync(request.withPermit(permit))
+                .whenComplete((analysis, error) -> permit.close())
+                .thenApply(analysis -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .<StreamingResponseBody>body(out -> LatticeJsonWriter.write(analysis, out)))
+                .exceptionally(TokenVisualizerController::errorResponse);
+    }
+
+    /**
+     * Streams the tokens of {@code text}, or of the raw request body when there is no {@code text}
+     * parameter, as NDJSON or, with {@code format=sse} or an {@code Accept: text/event-stream}
+     * header, as Server-Sent Events. The body is read as it is tokenized, so documents of any size
+     * can be posted.
+     */
+    @PostMapping("/api/tokens")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> tokens(
+            @RequestParam(value = "text", required = false) String text,
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "mode", defaultValue = "") String mode,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletRequest servletRequest) {
+
+        if (format == null || format.isEmpty()) {
+            format = accept != null && accept.contains("text/event-stream")
+                    ? TokenStreamWriter.SSE : TokenStreamWriter.NDJSON;
+        }
+        String resolvedFormat = format;
+        try {
+            VisualizeRequest request = visualizerService.prepare("", language, mode, null, userDictHash, userDictName,
+                    null, null);
+            Reader reader = text != null ? new StringReader(text) : new InputStreamReader(
+                    servletRequest.getInputStream(), servletRequest.getCharacterEncoding() != null
+                            ? Charset.forName(servletRequest.getCharacterEncoding()) : StandardCharsets.UTF_8);
+            // A streamed body is charged by its declared length, as a character per byte at most, and
+            // whatever a chunked body sends beyond that as it is read.
+            long chars = text != null ? text.length() : Math.max(0, servletRequest.getContentLengthLong());
+            AdmissionControl.Permit permit = admissionControl.admit(servletRequest, admissionControl.estimate(chars));
+            VisualizeRequest charged = request.withPermit(permit);
+            Reader input = permit.meter(reader, chars, 1);
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(TokenStreamWriter.contentType(resolvedFormat)))
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                    .<StreamingResponseBody>body(out -> {
+                        try {
+                            visualizerService.streamTokens(charged, input, out, resolvedFormat);
+                        } finally {
+                            permit.close();
+                        }
+                    });
+        } catch (Exception e) {
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Token, part-of-speech, unknown-word and compound-split statistics of an uploaded
+     * {@code file}, or of the raw request body when there is none, under each of {@code modes} or
+     * every mode of the language. The text is read in chunks while it is tokenized, so corpora of
+     * any size can be posted as a body; multipart uploads are bounded by the multipart limits.
+     */
+    @PostMapping("/api/corpus")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> corpus(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam(value = "modes", required = false) List<String> modes,
+            @RequestParam(value = "userDict", required = false) MultipartFile userDict,
+            @RequestParam(value = "userDictHash", required = false) String userDictHash,
+            @RequestParam(value = "userDictName", required = false) String userDictName,
+            @RequestParam(value = "top", defaultValue = "100") int top,
+            HttpServletRequest servletRequest) {
+
+        try {
+            if (top < 1) {
+                throw new IllegalArgumentException("The number of top tokens should be a positive number: " + top);
+            }
+            VisualizeRequest request = visualizerService.prepare("", language, "", userDict, userDictHash,
+                    userDictName, null, null);
+            List<String> selected = CorpusAnalyzer.modes(request.getLanguage(), modes);
+            Charset charset = servletRequest.getCharacterEncoding() != null
+                    ? Charset.forName(servletRequest.getCharacterEncoding()) : StandardCharsets.UTF_8;
+            Reader reader = file != null && !file.isEmpty()
+                    ? new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)
+                    : new InputStreamReader(servletRequest.getInputStream(), charset);
+            // Charged like a token stream of the same length for every mode. A chunked body has no
+            // declared length, so it is charged chunk by chunk as the analyzer reads it.
+            long chars = file != null && !file.isEmpty() ? file.getSize()
+                    : Math.max(0, servletRequest.getContentLengthLong());
+            AdmissionControl.Permit permit = admissionControl.admit(servletRequest,
+                    admissionControl.estimate(chars) * selected.size() + admissionControl.estimate(
+                            request, uploadedBytes(userDict), false, true));
+            VisualizeRequest charged = request.withPermit(permit);
+            Reader metered = permit.meter(reader, chars, selected.size());
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .<StreamingResponseBody>body(out -> {
+                        try (Reader input = metered) {
+                            visualizerService.analyzeCorpus(charged, selected, top, input).write(out);
+                        } finally {
+                            permit.close();
+                        }
+                    });
+        } catch (Exception e) {
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Maps a failed request to its status: 400 for bad input, 404 for an unknown dictionary or
+     * session, 429 or 503 when it was rejected or the renderer is overloaded, 504 when the render
+     * timed out, and 500 for anything else, such as a renderer that failed.
+     */
+    private static <T> ResponseEntity<T> errorResponse(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof IllegalArgumentException) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (e instanceof UnknownDictionaryException || e instanceof UnknownSessionException) {
+            return ResponseEntity.notFound().build();
+        }
+        if (e instanceof AdmissionRejectedException) {
+            AdmissionRejectedException rejected = (AdmissionRejectedException) e;
+            return ResponseEntity.status(rejected.isOverloaded() ? HttpStatus.SERVICE_UNAVAILABLE
+                            : HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(rejected.getRetryAfterSeconds()))
+                    .build();
+        }
+        if (e instanceof RenderQueueFullException || e instanceof RejectedExecutionException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (e instanceof RenderTimeoutException) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+    @GetMapping("/api/dictionaries")
+    @ResponseBody
+    public ResponseEntity<List<Map<String, Object>>> namedDictionaries() {
+        return ResponseEntity.ok(visualizerService.getNamedDictionaries());
+    }
+
+    @PostMapping("/api/dictionaries")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> registerDictionary(
+            @RequestParam(value = "language", defaultValue = "ko") String language,
+            @RequestParam("userDict") MultipartFile userDict) {
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CompiledUserDictionary compiled = visualizerService.registerUserDictionary(language, userDict);
+            response.put("hash", compiled.getHash());
+            response.put("language", compiled.getLang());
+            response.put("bytes", compiled.getSourceBytes());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            return errorResponse(e);
+        }
+    }
+
+    @PostMapping("/api/validate")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> validate(@RequestBody Map<String, String> request) {
+        String text = request.get("text");
+        String language = request.get("language");
+        
+        Map<String, Object> response = visualizerService.validateInput(text, language);
+        
+        if ((Boolean) response.get("valid")) {
+            return ResponseEntity.ok(response);
+        } else {
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // Weak comparison (RFC 7232 3.2), as proxies that compress mark the ETags they pass on weak.
+            if (candidate.equals("*") || stripWeak(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Overrides {@code spring.mvc.async.request-timeout} for the streaming body this request returns. The
+     * timeout is set on the async request just before processing starts, as a {@code WebAsyncTask} would.
+     */
+    private static void setAsyncTimeout(HttpServletRequest request, long timeoutMillis) {
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(CallableProcessingInterceptor.class.getName(),
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void beforeConcurrentHandling(NativeWebRequest webRequest, Callable<T> task) {
+                        if (webRequest instanceof AsyncWebRequest) {
+                            ((AsyncWebRequest) webRequest).setTimeout(timeoutMillis);
+                        }
+                    }
+                });
+    }
+
+    private static long uploadedBytes(MultipartFile userDict) {
+        return userDict == null || userDict.isEmpty() ? 0 : userDict.getSize();
+    }
+
+    @GetMapping("/api/stats")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> stats() {
+        Map<String, Object> stats = visualizerService.getStats();
+        stats.put("admission", admissionControl.getStats());
+        return ResponseEntity.ok(stats);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,336 @@
+package co.elastic.service;
+
+import co.elastic.render.OutputFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Admits requests by their estimated cost rather than by count.
+ *
+ * Costs are in milliseconds of work. Each request's cost is estimated up front from its text
+ * length, the size of an uploaded user dictionary and the size of the lattice it is expected to
+ * draw, then charged against the client's token bucket and a global one. A client over its quota
+ * is answered {@code 429}, and a server over its budget {@code 503}, both with the time until the
+ * cost fits. Once a request is done, its actual cost is recorded next to the estimate and the
+ * buckets are settled with the difference, so quotas follow what requests really cost even where
+ * the estimate is off.
+ *
+ * The actual cost is the base cost plus the time the server spent tokenizing and rendering for the
+ * request, as reported to its {@link Permit}. Time spent queued for a thread or a dot process, or
+ * waiting for the client to send its body or read the response, is not work, so a slow client
+ * isn't charged for the network and doesn't use up the global budget of everyone else.
+ */
+@Component
+public class AdmissionControl {
+
+    /** Roughly how many candidate edges the lattice of one character of text has. */
+    private static final int EDGES_PER_CHAR = 12;
+
+    private final boolean enabled;
+    private final String clientHeader;
+    private final double baseCost;
+    private final double costPerChar;
+    private final double costPerDictionaryKb;
+    private final double costPerGraphvizEdge;
+    private final double costPerEdge;
+    private final double clientRate;
+    private final double clientBurst;
+    private final int maxClients;
+
+    private final TokenBucket global;
+    // In access order, so the client last seen longest ago is the one forgotten at the cap.
+    private final LinkedHashMap<String, TokenBucket> clients;
+
+    private final MeterRegistry registry;
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedClient = new AtomicLong();
+    private final AtomicLong rejectedGlobal = new AtomicLong();
+    private final AtomicLong estimatedTotal = new AtomicLong();
+    private final AtomicLong actualTotal = new AtomicLong();
+
+    public AdmissionControl(
+            MeterRegistry meterRegistry,
+            @Value("${visualizer.admission.enabled:true}") boolean enabled,
+            @Value("${visualizer.admission.client-header:}") String clientHeader,
+            @Value("${visualizer.admission.cost.base-ms:2}") double baseCost,
+            @Value("${visualizer.admission.cost.per-char-ms:0.05}") double costPerChar,
+            @Value("${visualizer.admission.cost.per-dictionary-kb-ms:1}") double costPerDictionaryKb,
+            @Value("${visualizer.admission.cost.per-graphviz-edge-ms:1}") double costPerGraphvizEdge,
+            @Value("${visualizer.admission.cost.per-edge-ms:0.01}") double costPerEdge,
+            @Value("${visualizer.admission.client.rate-ms-per-second:1000}") double clientRate,
+            @Value("${visualizer.admission.client.burst-ms:10000}") double clientBurst,
+            @Value("${visualizer.admission.client.max-clients:10000}") int maxClients,
+            @Value("${visualizer.admission.global.rate-ms-per-second:0}") double globalRate,
+            @Value("${visualizer.admission.global.burst-ms:0}") double globalBurst) {
+        this.registry = meterRegistry;
+        this.enabled = enabled;
+        this.clientHeader = clientHeader;
+        this.baseCost = baseCost;
+        this.costPerChar = costPerChar;
+        this.costPerDictionaryKb = costPerDictionaryKb;
+        this.costPerGraphvizEdge = costPerGraphvizEdge;
+        this.costPerEdge = costPerEdge;
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.maxClients = maxClients;
+        this.clients = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > AdmissionControl.this.maxClients;
+            }
+        };
+        // By default the server can do one second of work per core every second.
+        double rate = globalRate > 0 ? globalRate : Runtime.getRuntime().availableProcessors() * 1000.0;
+        this.global = new TokenBucket(rate, globalBurst > 0 ? globalBurst : rate * 5, System.nanoTime());
+    }
+
+    /**
+     * Estimates what it costs to tokenize the request's text and, with {@code draw}, to render it
+     * in its format, plus compiling {@code uploadedDictionaryBytes} of user dictionary. Serving a
+     * cached image only costs the base.
+     */
+    public double estimate(VisualizeRequest request, long uploadedDictionaryBytes, boolean draw, boolean cached) {
+        double cost = baseCost + uploadedDictionaryBytes / 1024.0 * costPerDictionaryKb;
+        if (cached) {
+            return cost;
+        }
+        int chars = request.getText().length();
+        cost += chars * costPerChar;
+        if (draw) {
+            int edges = request.getPruning().expectedEdges(chars * EDGES_PER_CHAR, chars);
+            boolean graphviz = request.getBackend().equals(VisualizeRequest.BACKEND_GRAPHVIZ)
+                    && request.getFormat() != OutputFormat.DOT;
+            cost += edges * (graphviz ? costPerGraphvizEdge : costPerEdge);
+        }
+        return cost;
+    }
+
+    /** Estimates the cost of tokenizing {@code chars} characters without drawing anything. */
+    public double estimate(long chars) {
+        return baseCost + chars * costPerChar;
+    }
+
+    /**
+     * Charges {@code estimatedCost} to the client of {@code servletRequest} and to the global
+     * budget, or throws {@link AdmissionRejectedException} if either can't take it. The returned
+     * permit has to be closed once the request's work is done.
+     */
+    public Permit admit(HttpServletRequest servletRequest, double estimatedCost) {
+        return admit(enabled ? clientId(servletRequest) : null, estimatedCost);
+    }
+
+    Permit admit(String clientId, double estimatedCost) {
+        if (!enabled) {
+            return new Permit(null, 0, 0);
+        }
+        long now = System.nanoTime();
+        TokenBucket client = clientBucket(clientId, now);
+
+        long clientWait = client.tryTake(estimatedCost, now);
+        if (clientWait > 0) {
+            rejectedClient.incrementAndGet();
+            rejected("client");
+            throw new AdmissionRejectedException(false, toSeconds(clientWait));
+        }
+        long globalWait = global.tryTake(estimatedCost, now);
+        if (globalWait > 0) {
+            client.give(estimatedCost, now);
+            rejectedGlobal.incrementAndGet();
+            rejected("global");
+            throw new AdmissionRejectedException(true, toSeconds(globalWait));
+        }
+
+        admitted.incrementAndGet();
+        return new Permit(client, estimatedCost, baseCost);
+    }
+
+    private String clientId(HttpServletRequest request) {
+        if (!clientHeader.isEmpty()) {
+            String id = request.getHeader(clientHeader);
+            if (id != null && !id.isEmpty()) {
+                return id;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * The bucket of a client, new and full if it hasn't been seen or was forgotten. Beyond
+     * {@code maxClients} the least recently seen client is forgotten; with a cap well above the
+     * number of active clients, that is one whose bucket has long refilled anyway.
+     */
+    private TokenBucket clientBucket(String id, long now) {
+        synchronized (clients) {
+            TokenBucket bucket = clients.get(id);
+            if (bucket == null) {
+                bucket = new TokenBucket(clientRate, clientBurst, now);
+                clients.put(id, bucket);
+            }
+            return bucket;
+        }
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, (nanos + 999_999_999L) / 1_000_000_000L);
+    }
+
+    private void rejected(String budget) {
+        Counter.builder("visualizer.admission.rejected")
+                .tag("budget", budget)
+                .register(registry)
+                .increment();
+    }
+
+    private void record(double estimated, double actual) {
+        estimatedTotal.addAndGet(Math.round(estimated));
+        actualTotal.addAndGet(Math.round(actual));
+        summary("estimated").record(estimated);
+        summary("actual").record(actual);
+        if (estimated > 0) {
+            DistributionSummary.builder("visualizer.admission.cost.ratio")
+                    .description("Actual over estimated cost")
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(actual / estimated);
+        }
+    }
+
+    private DistributionSummary summary(String kind) {
+        return DistributionSummary.builder("visualizer.admission.cost")
+                .baseUnit("milliseconds")
+                .tag("kind", kind)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public Map<String, Object> getStats() {
+        long now = System.nanoTime();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("admitted", admitted.get());
+        stats.put("rejectedClient", rejectedClient.get());
+        stats.put("rejectedGlobal", rejectedGlobal.get());
+        synchronized (clients) {
+            stats.put("clients", clients.size());
+        }
+        stats.put("globalBudgetMillis", Math.round(global.getTokens(now)));
+        stats.put("estimatedMillis", estimatedTotal.get());
+        stats.put("actualMillis", actualTotal.get());
+        return stats;
+    }
+
+    /**
+     * An admitted request. The work done for it is added as it is timed, from whichever threads do
+     * it; closing the permit records the actual cost and settles the difference with the estimate.
+     * Closing it again does nothing.
+     */
+    public final class Permit implements AutoCloseable {
+        private final TokenBucket client;
+        private final double estimatedCost;
+        private final double baseCost;
+        private final DoubleAdder extraCost = new DoubleAdder();
+        private final AtomicLong workNanos = new AtomicLong();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(TokenBucket client, double estimatedCost, double baseCost) {
+            this.client = client;
+            this.estimatedCost = estimatedCost;
+            this.baseCost = baseCost;
+        }
+
+        /** Adds time spent working for the request, e.g. a tokenize or render stage. */
+        public void addWork(long nanos) {
+            workNanos.addAndGet(nanos);
+        }
+
+        /** Takes back part of a stage added with {@link #addWork} that was spent waiting instead. */
+        public void excludeWait(long nanos) {
+            workNanos.addAndGet(-nanos);
+        }
+
+        /**
+         * Wraps a streamed body that was admitted for {@code admittedChars} characters, e.g. by its
+         * Content-Length or 0 for a chunked body, so that every character read beyond that is
+         * charged as it is read, {@code passes} times for text tokenized more than once. The charge
+         * goes to the client and the global budget right away, without waiting for the request to
+         * end, so a long upload leaves its client in debt rather than running for free.
+         */
+        public Reader meter(Reader reader, long admittedChars, int passes) {
+            if (client == null) {
+                return reader;
+            }
+            return new FilterReader(reader) {
+                private long read;
+
+                @Override
+                public int read() throws IOException {
+                    int c = super.read();
+                    if (c >= 0) {
+                        counted(1);
+                    }
+                    return c;
+                }
+
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    int n = super.read(buffer, offset, length);
+                    if (n > 0) {
+                        counted(n);
+                    }
+                    return n;
+                }
+
+                private void counted(int n) {
+                    long unpaid = Math.min(n, read + n - admittedChars);
+                    read += n;
+                    if (unpaid > 0) {
+                        charge(unpaid * costPerChar * passes);
+                    }
+                }
+            };
+        }
+
+        private void charge(double cost) {
+            if (closed.get()) {
+                return;
+            }
+            long now = System.nanoTime();
+            extraCost.add(cost);
+            client.charge(cost, now);
+            global.charge(cost, now);
+        }
+
+        @Override
+        public void close() {
+            if (client == null || !closed.compareAndSet(false, true)) {
+                return;
+            }
+            long now = System.nanoTime();
+            double charged = estimatedCost + extraCost.sum();
+            double actualCost = baseCost + Math.max(0, workNanos.get()) / 1e6;
+            record(charged, actualCost);
+
+            double difference = actualCost - charged;
+            if (difference > 0) {
+                client.charge(difference, now);
+                global.charge(difference, now);
+            } else {
+                client.give(-difference, now);
+                global.give(-difference, now);
+            }
+        }
+    }
+}
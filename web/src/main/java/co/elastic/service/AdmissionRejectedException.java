@@ -0,0 +1,27 @@
+package co.elastic.service;
+
+/**
+ * Thrown when a request is turned away by {@link AdmissionControl}: either its client used up its
+ * quota, or the server as a whole has no budget left.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final boolean overloaded;
+    private final long retryAfterSeconds;
+
+    AdmissionRejectedException(boolean overloaded, long retryAfterSeconds) {
+        super(overloaded ? "The server is over its budget" : "The client is over its quota");
+        this.overloaded = overloaded;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** Whether the global budget, rather than the client's quota, was exhausted. */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /** When the request's cost will fit again, in whole seconds. */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
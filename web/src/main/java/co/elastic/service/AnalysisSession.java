@@ -0,0 +1,69 @@
+package co.elastic.service;
+
+import co.elastic.render.ImageBuffer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state the editor works against: the request settings and the rendered segments of the
+ * current text, keyed by segment hash.
+ */
+class AnalysisSession {
+
+    private final String id;
+    private final VisualizeRequest template;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    private Map<String, ImageBuffer> segments = Collections.emptyMap();
+    private List<String> order = Collections.emptyList();
+    private long bytes;
+
+    AnalysisSession(String id, VisualizeRequest template) {
+        this.id = id;
+        this.template = template;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    VisualizeRequest getTemplate() {
+        return template;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    synchronized ImageBuffer getSegment(String hash) {
+        return segments.get(hash);
+    }
+
+    synchronized List<String> getOrder() {
+        return order;
+    }
+
+    /** Replaces the segments and returns the change in bytes held. */
+    synchronized long replaceSegments(List<String> newOrder, LinkedHashMap<String, ImageBuffer> newSegments) {
+        long newBytes = 0;
+        for (ImageBuffer image : newSegments.values()) {
+            newBytes += image.size();
+        }
+        long delta = newBytes - bytes;
+        order = newOrder;
+        segments = newSegments;
+        bytes = newBytes;
+        return delta;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+}
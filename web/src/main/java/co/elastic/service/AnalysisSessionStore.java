@@ -0,0 +1,152 @@
+package co.elastic.service;
+
+import co.elastic.render.ImageBuffer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the analysis sessions of the web editor.
+ *
+ * Sessions that haven't been used for {@code ttlMillis} are dropped by a background evictor.
+ * The segments of all sessions together are bounded by {@code maxBytes}; when an update goes
+ * over, the least recently used other sessions are dropped until the total fits again. At most
+ * {@code maxSessions} are open at a time; beyond that new sessions are turned away until idle ones
+ * expire, rather than closing sessions that are in use.
+ */
+class AnalysisSessionStore implements AutoCloseable {
+
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final int maxSessions;
+    private final long evictionPeriodMillis;
+
+    private final ConcurrentHashMap<String, AnalysisSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final ScheduledExecutorService evictor;
+
+    AnalysisSessionStore(long ttlMillis, long maxBytes, int maxSessions) {
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+        this.maxSessions = maxSessions;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "analysis-session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictionPeriodMillis = Math.max(1000L, ttlMillis / 4);
+        this.evictor.scheduleWithFixedDelay(this::expireIdle, evictionPeriodMillis, evictionPeriodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a session, or throws {@link AdmissionRejectedException} with the time until the next
+     * expiry run if {@code maxSessions} are open already.
+     */
+    AnalysisSession create(VisualizeRequest template) {
+        if (sessions.size() >= maxSessions) {
+            rejected.incrementAndGet();
+            throw new AdmissionRejectedException(true, Math.max(1, evictionPeriodMillis / 1000));
+        }
+        AnalysisSession session = new AnalysisSession(UUID.randomUUID().toString(), template);
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    AnalysisSession get(String id) {
+        AnalysisSession session = sessions.get(id);
+        if (session == null) {
+            throw new UnknownSessionException(id);
+        }
+        session.touch();
+        return session;
+    }
+
+    void remove(String id) {
+        AnalysisSession session = sessions.get(id);
+        if (session != null) {
+            drop(session);
+        }
+    }
+
+    /** Replaces a session's segments, then evicts other sessions if the store is over its cap. */
+    void update(AnalysisSession session, List<String> order, LinkedHashMap<String, ImageBuffer> segments) {
+        synchronized (session) {
+            if (sessions.get(session.getId()) != session) {
+                // Removed or expired while it was being rendered.
+                return;
+            }
+            totalBytes.addAndGet(session.replaceSegments(order, segments));
+        }
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+
+        List<AnalysisSession> candidates = new ArrayList<>(sessions.values());
+        candidates.sort(Comparator.comparingLong(AnalysisSession::getLastAccess));
+        for (AnalysisSession candidate : candidates) {
+            if (totalBytes.get() <= maxBytes) {
+                break;
+            }
+            if (candidate != session && drop(candidate)) {
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    void expireIdle() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        for (AnalysisSession session : sessions.values()) {
+            if (session.getLastAccess() < cutoff && drop(session)) {
+                expired.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean drop(AnalysisSession session) {
+        synchronized (session) {
+            if (!sessions.remove(session.getId(), session)) {
+                return false;
+            }
+            totalBytes.addAndGet(-session.getBytes());
+            return true;
+        }
+    }
+
+    long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("maxSessions", maxSessions);
+        stats.put("bytes", totalBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("expired", expired.get());
+        stats.put("evicted", evicted.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        sessions.clear();
+        totalBytes.set(0);
+    }
+}
@@ -0,0 +1,118 @@
+package co.elastic.service;
+
+import co.elastic.render.ImageBuffer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders a list of requests in parallel and streams them into a zip as they finish.
+ *
+ * All batches share one fixed pool of {@code parallelism} threads, and a single batch never has
+ * more than {@code parallelism} items in flight, so a large batch neither buffers its whole output
+ * nor floods the render queue. Entries are named after the item's position in the batch
+ * ({@code 0001.jpg}, {@code 0002.jpg}, ...); an item that fails gets a {@code 0002.error.txt}
+ * entry instead, and the rest of the batch carries on.
+ */
+class BatchVisualizer implements AutoCloseable {
+
+    interface ItemRenderer {
+        ImageBuffer render(VisualizeRequest request) throws Exception;
+    }
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    BatchVisualizer(int parallelism) {
+        this.parallelism = parallelism;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "batch-visualizer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void write(List<VisualizeRequest> requests, ItemRenderer renderer, String extension, OutputStream out)
+            throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // JPEGs don't shrink any further, so only spend the minimum on SVG output.
+        zip.setLevel(Deflater.BEST_SPEED);
+
+        CompletionService<Item> completion = new ExecutorCompletionService<>(executor);
+        int next = 0;
+        int pending = 0;
+        try {
+            while (next < requests.size() || pending > 0) {
+                while (pending < parallelism && next < requests.size()) {
+                    int index = next++;
+                    VisualizeRequest request = requests.get(index);
+                    completion.submit(() -> render(index, request, renderer));
+                    pending++;
+                }
+                Item item = completion.take().get();
+                pending--;
+                writeEntry(zip, item, extension);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrupted");
+        } catch (ExecutionException e) {
+            // render() catches everything, so this is an Error escaping a worker.
+            throw new IOException(e.getCause());
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private static Item render(int index, VisualizeRequest request, ItemRenderer renderer) {
+        try {
+            return new Item(index, renderer.render(request), null);
+        } catch (Exception e) {
+            return new Item(index, null, e);
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream zip, Item item, String extension) throws IOException {
+        String name = String.format("%04d", item.index + 1);
+        if (item.image != null) {
+            zip.putNextEntry(new ZipEntry(name + "." + extension));
+            item.image.writeTo(zip);
+        } else {
+            zip.putNextEntry(new ZipEntry(name + ".error.txt"));
+            zip.write((item.error.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        zip.closeEntry();
+        // Push each finished item to the client rather than waiting for the deflater's buffer to fill.
+        zip.flush();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static class Item {
+        final int index;
+        final ImageBuffer image;
+        final Exception error;
+
+        Item(int index, ImageBuffer image, Exception error) {
+            this.index = index;
+            this.image = image;
+            this.error = error;
+        }
+    }
+}
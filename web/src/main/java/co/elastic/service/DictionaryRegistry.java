@@ -0,0 +1,299 @@
+package co.elastic.service;
+
+import co.elastic.CompiledUserDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * User dictionaries kept in a directory on the server and referred to by name.
+ *
+ * A file named {@code <name>.ko.txt} or {@code <name>.ja.txt} is the nori or kuromoji dictionary
+ * {@code name}. The directory is scanned at startup and then watched: a file that changes is
+ * compiled again in the background, once it has been quiet for {@code settleMillis}, and the new
+ * version replaces the old one in a single swap of the registry's snapshot. Requests hold on to
+ * the dictionary they resolved, so those in flight finish with the old version while new ones get
+ * the new one. A file that fails to compile leaves the working version in place, if there is one,
+ * and is reported with its error until it compiles again; a name that has never compiled is listed
+ * with its error but can't be used. Deleting a file removes its dictionary.
+ */
+class DictionaryRegistry implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DictionaryRegistry.class);
+
+    private static final String[] LANGUAGES = { "ko", "ja" };
+    private static final String SUFFIX = ".txt";
+
+    private final Path directory;
+    private final long settleMillis;
+
+    private final AtomicReference<Map<String, NamedDictionary>> dictionaries =
+            new AtomicReference<>(Collections.emptyMap());
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private final ScheduledExecutorService compiler;
+    private final Map<Path, ScheduledFuture<?>> pending = new HashMap<>();
+    private final WatchService watchService;
+    private final Thread watcher;
+
+    DictionaryRegistry(Path directory, long settleMillis) throws IOException {
+        this.directory = directory;
+        this.settleMillis = settleMillis;
+        Files.createDirectories(directory);
+
+        // Registered before the scan, so that nothing written in between is missed.
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        scan();
+
+        this.compiler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dictionary-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watcher = new Thread(this::watch, "dictionary-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /** Returns the current version of a dictionary, or null if none by that name has compiled. */
+    CompiledUserDictionary get(String language, String name) {
+        NamedDictionary dictionary = dictionaries.get().get(key(language, name));
+        return dictionary == null ? null : dictionary.compiled;
+    }
+
+    private static String key(String language, String name) {
+        return (language.equalsIgnoreCase("ja") ? "ja" : "ko") + "/" + name;
+    }
+
+    /** Loads every dictionary in the directory. */
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                reload(file);
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, so every file may have changed.
+                        compiler.execute(this::rescan);
+                    } else {
+                        schedule(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    log.warn("Dictionary directory {} is no longer watched", directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed.
+        }
+    }
+
+    /** Reloads a file once it hasn't changed for {@code settleMillis}, as editors write in steps. */
+    private void schedule(Path file) {
+        if (parse(file) == null) {
+            return;
+        }
+        synchronized (pending) {
+            ScheduledFuture<?> previous = pending.get(file);
+            if (previous != null) {
+                previous.cancel(false);
+            }
+            pending.put(file, compiler.schedule(() -> {
+                synchronized (pending) {
+                    pending.remove(file);
+                }
+                reload(file);
+            }, settleMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void rescan() {
+        try {
+            Map<String, NamedDictionary> current = dictionaries.get();
+            for (NamedDictionary dictionary : current.values()) {
+                if (!Files.exists(dictionary.file)) {
+                    reload(dictionary.file);
+                }
+            }
+            scan();
+        } catch (IOException e) {
+            log.warn("Could not scan dictionary directory {}: {}", directory, e.toString());
+        }
+    }
+
+    /**
+     * Compiles a file and swaps it in, removes its dictionary if it was deleted, or records why it
+     * failed to compile. Only the compiler thread and startup call this, so swaps don't race.
+     */
+    private void reload(Path file) {
+        String[] parsed = parse(file);
+        if (parsed == null) {
+            return;
+        }
+        String name = parsed[0];
+        String language = parsed[1];
+        String key = key(language, name);
+        NamedDictionary current = dictionaries.get().get(key);
+
+        if (!Files.exists(file)) {
+            if (current != null) {
+                swap(key, null);
+                log.info("Removed user dictionary name={} language={}", name, language);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            byte[] source = Files.readAllBytes(file);
+            String hash = CompiledUserDictionary.sha256(source);
+            if (current != null && current.compiled != null && current.compiled.getHash().equals(hash)) {
+                if (current.error != null) {
+                    // Changed back to the version in use.
+                    swap(key, current.failed(null));
+                }
+                return;
+            }
+            CompiledUserDictionary compiled = CompiledUserDictionary.compile(language, source, hash);
+            long millis = (System.nanoTime() - start) / 1000000;
+            int version = current == null ? 1 : current.version + 1;
+            swap(key, new NamedDictionary(name, language, file, compiled, version, System.currentTimeMillis(),
+                    millis, null));
+            reloads.incrementAndGet();
+            log.info("Loaded user dictionary name={} language={} version={} bytes={} compileMs={}", name,
+                    language, version, compiled.getSourceBytes(), millis);
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            log.warn("User dictionary name={} language={} failed to compile, keeping version {}: {}", name,
+                    language, current == null ? "none" : current.version, e.toString());
+            swap(key, current != null ? current.failed(e.toString())
+                    : new NamedDictionary(name, language, file, null, 0, 0, 0, e.toString()));
+        }
+    }
+
+    private void swap(String key, NamedDictionary dictionary) {
+        Map<String, NamedDictionary> next = new TreeMap<>(dictionaries.get());
+        if (dictionary == null) {
+            next.remove(key);
+        } else {
+            next.put(key, dictionary);
+        }
+        dictionaries.set(Collections.unmodifiableMap(next));
+    }
+
+    /** Returns the name and language of a dictionary file, or null if it isn't one. */
+    private static String[] parse(Path file) {
+        String fileName = file.getFileName().toString();
+        for (String language : LANGUAGES) {
+            String suffix = "." + language + SUFFIX;
+            if (fileName.endsWith(suffix) && fileName.length() > suffix.length()) {
+                return new String[] { fileName.substring(0, fileName.length() - suffix.length()), language };
+            }
+        }
+        return null;
+    }
+
+    /** Every dictionary with its version, when it was loaded and how long it took to compile. */
+    List<Map<String, Object>> list() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (NamedDictionary dictionary : dictionaries.get().values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", dictionary.name);
+            entry.put("language", dictionary.language);
+            entry.put("version", dictionary.version);
+            if (dictionary.compiled != null) {
+                entry.put("hash", dictionary.compiled.getHash());
+                entry.put("bytes", dictionary.compiled.getSourceBytes());
+                entry.put("loadedAt", dictionary.loadedAt);
+                entry.put("compileMillis", dictionary.compileMillis);
+            }
+            if (dictionary.error != null) {
+                entry.put("error", dictionary.error);
+            }
+            list.add(entry);
+        }
+        return list;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("dictionaries", dictionaries.get().size());
+        stats.put("reloads", reloads.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        watcher.interrupt();
+        compiler.shutdownNow();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Could not close the dictionary watcher: {}", e.toString());
+        }
+    }
+
+    /** One version of a named dictionary; {@code compiled} is null, and {@code version} 0, until one compiles. */
+    private static final class NamedDictionary {
+        final String name;
+        final String language;
+        final Path file;
+        final CompiledUserDictionary compiled;
+        final int version;
+        final long loadedAt;
+        final long compileMillis;
+        final String error;
+
+        NamedDictionary(String name, String language, Path file, CompiledUserDictionary compiled, int version,
+                        long loadedAt, long compileMillis, String error) {
+            this.name = name;
+            this.language = language;
+            this.file = file;
+            this.compiled = compiled;
+            this.version = version;
+            this.loadedAt = loadedAt;
+            this.compileMillis = compileMillis;
+            this.error = error;
+        }
+
+        /** The same version, with why the file's latest content didn't compile, or null once it does. */
+        NamedDictionary failed(String error) {
+            return new NamedDictionary(name, language, file, compiled, version, loadedAt, compileMillis, error);
+        }
+    }
+}
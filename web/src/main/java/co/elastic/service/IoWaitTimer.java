@@ -0,0 +1,80 @@
+package co.elastic.service;
+
+import java.io.FilterOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times how long a request waits on its client: reading a streamed body and writing the response.
+ * That time is spent inside the tokenize stage of a token stream, but it is the network's, not the
+ * server's work.
+ */
+final class IoWaitTimer {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    long getNanos() {
+        return nanos.get();
+    }
+
+    Reader time(Reader reader) {
+        return new FilterReader(reader) {
+            @Override
+            public int read() throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read();
+                } finally {
+                    nanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read(buffer, offset, length);
+                } finally {
+                    nanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    OutputStream time(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    out.write(b);
+                } finally {
+                    nanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    out.write(bytes, offset, length);
+                } finally {
+                    nanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                long start = System.nanoTime();
+                try {
+                    out.flush();
+                } finally {
+                    nanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+}
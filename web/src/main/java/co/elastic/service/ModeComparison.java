@@ -0,0 +1,157 @@
+package co.elastic.service;
+
+import co.elastic.analysis.AnalyzedToken;
+import co.elastic.lattice.LatticeAnalysis;
+import co.elastic.lattice.LatticeJsonWriter;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The analyses of one text under several modes, with and without the user dictionary, and where
+ * their tokens differ, written as JSON:
+ *
+ * <pre>
+ * {"language":"ko",
+ *  "variants":[{"name":"none","mode":"none","userDict":false,"lattice":{"nodes":[...],"edges":[...],"tokens":[...]}},
+ *              {"name":"discard","mode":"discard","userDict":false,"lattice":{...}},
+ *              {"name":"mixed","mode":"mixed","userDict":false,"error":"..."}],
+ *  "diff":{"boundaries":[{"offset":2,"variants":["discard"]}],
+ *          "tokens":[{"term":"세종시","start":0,"end":3,"variants":["none"]},...]}}
+ * </pre>
+ *
+ * The diff only lists what the variants disagree on: offsets where some but not all of them end
+ * a token, and tokens that some but not all of them produce. Failed variants are left out of it.
+ */
+public class ModeComparison {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static class Variant {
+        final String name;
+        final VisualizeRequest request;
+        LatticeAnalysis analysis;
+        Throwable error;
+
+        Variant(String name, VisualizeRequest request) {
+            this.name = name;
+            this.request = request;
+        }
+    }
+
+    private final String language;
+    private final List<Variant> variants = new ArrayList<>();
+
+    ModeComparison(String language) {
+        this.language = language;
+    }
+
+    void add(Variant variant) {
+        variants.add(variant);
+    }
+
+    public void write(OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartObject();
+            json.writeStringField("language", language);
+
+            json.writeArrayFieldStart("variants");
+            for (Variant variant : variants) {
+                json.writeStartObject();
+                json.writeStringField("name", variant.name);
+                json.writeStringField("mode", variant.request.getMode());
+                json.writeBooleanField("userDict", variant.request.getUserDict() != null);
+                if (variant.error != null) {
+                    json.writeStringField("error", String.valueOf(variant.error.getMessage()));
+                } else {
+                    json.writeFieldName("lattice");
+                    LatticeJsonWriter.write(variant.analysis, json);
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+
+            writeDiff(json);
+            json.writeEndObject();
+        }
+    }
+
+    private void writeDiff(JsonGenerator json) throws IOException {
+        List<Variant> compared = new ArrayList<>();
+        for (Variant variant : variants) {
+            if (variant.analysis != null) {
+                compared.add(variant);
+            }
+        }
+
+        // Keyed by offset, and by start, end and term, so both lists come out in text order.
+        TreeMap<Integer, List<String>> boundaries = new TreeMap<>();
+        TreeMap<String, TokenSpan> spans = new TreeMap<>();
+        for (Variant variant : compared) {
+            for (AnalyzedToken token : variant.analysis.getTokens()) {
+                addOnce(boundaries.computeIfAbsent(token.getStartOffset(), k -> new ArrayList<>()), variant.name);
+                addOnce(boundaries.computeIfAbsent(token.getEndOffset(), k -> new ArrayList<>()), variant.name);
+                String key = String.format("%010d:%010d:%s", token.getStartOffset(), token.getEndOffset(),
+                        token.getTerm());
+                addOnce(spans.computeIfAbsent(key, k -> new TokenSpan(token)).variants, variant.name);
+            }
+        }
+
+        json.writeObjectFieldStart("diff");
+        json.writeArrayFieldStart("boundaries");
+        for (Map.Entry<Integer, List<String>> boundary : boundaries.entrySet()) {
+            if (boundary.getValue().size() < compared.size()) {
+                json.writeStartObject();
+                json.writeNumberField("offset", boundary.getKey());
+                writeNames(json, boundary.getValue());
+                json.writeEndObject();
+            }
+        }
+        json.writeEndArray();
+
+        json.writeArrayFieldStart("tokens");
+        for (TokenSpan span : spans.values()) {
+            if (span.variants.size() < compared.size()) {
+                json.writeStartObject();
+                json.writeStringField("term", span.token.getTerm());
+                json.writeNumberField("start", span.token.getStartOffset());
+                json.writeNumberField("end", span.token.getEndOffset());
+                writeNames(json, span.variants);
+                json.writeEndObject();
+            }
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private static void addOnce(List<String> names, String name) {
+        if (names.isEmpty() || !names.get(names.size() - 1).equals(name)) {
+            names.add(name);
+        }
+    }
+
+    private static void writeNames(JsonGenerator json, List<String> names) throws IOException {
+        json.writeArrayFieldStart("variants");
+        for (String name : names) {
+            json.writeString(name);
+        }
+        json.writeEndArray();
+    }
+
+    private static class TokenSpan {
+        final AnalyzedToken token;
+        final List<String> variants = new ArrayList<>();
+
+        TokenSpan(AnalyzedToken token) {
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package co.elastic.service;
+
+import co.elastic.TextWindows;
+import co.elastic.render.ImageBuffer;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of an edit in an analysis session, written as JSON:
+ *
+ * <pre>
+ * {"session":"...","contentType":"image/jpeg",
+ *  "segments":[{"index":0,"start":0,"end":21,"hash":"...","changed":false,"bytes":18211},
+ *              {"index":1,"start":22,"end":40,"hash":"...","changed":true,"bytes":15320}],
+ *  "removed":["..."]}
+ * </pre>
+ *
+ * {@code segments} is the full, ordered list for the new text, but only segments marked
+ * {@code changed} were rendered for this edit and need to be fetched again; {@code removed} lists
+ * the hashes of segments the text no longer has.
+ */
+public class SessionDelta {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static class Segment {
+        final TextWindows.Window window;
+        final String hash;
+        final boolean changed;
+        ImageBuffer image;
+        Throwable error;
+
+        Segment(TextWindows.Window window, String hash, boolean changed) {
+            this.window = window;
+            this.hash = hash;
+            this.changed = changed;
+        }
+    }
+
+    private final String sessionId;
+    private final String contentType;
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+
+    SessionDelta(String sessionId, String contentType) {
+        this.sessionId = sessionId;
+        this.contentType = contentType;
+    }
+
+    void addSegment(Segment segment) {
+        segments.add(segment);
+    }
+
+    void addRemoved(String hash) {
+        removed.add(hash);
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartObject();
+            json.writeStringField("session", sessionId);
+            json.writeStringField("contentType", contentType);
+
+            json.writeArrayFieldStart("segments");
+            for (Segment segment : segments) {
+                json.writeStartObject();
+                json.writeNumberField("index", segment.window.getIndex());
+                json.writeNumberField("start", segment.window.getStart());
+                json.writeNumberField("end", segment.window.getEnd());
+                json.writeStringField("hash", segment.hash);
+                json.writeBooleanField("changed", segment.changed);
+                if (segment.error != null) {
+                    json.writeStringField("error", String.valueOf(segment.error.getMessage()));
+                } else {
+                    json.writeNumberField("bytes", segment.image.size());
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+
+            json.writeArrayFieldStart("removed");
+            for (String hash : removed) {
+                json.writeString(hash);
+            }
+            json.writeEndArray();
+
+            json.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package co.elastic.service;
+
+/**
+ * A token bucket of cost units that refills at {@code rate} units per second up to {@code burst}.
+ *
+ * A charge is admitted once the bucket holds as much as the charge, or is full, so that requests
+ * costing more than the burst are still admitted one at a time. The balance may then go negative,
+ * and that debt is paid off by the refill before the next charge fits.
+ */
+final class TokenBucket {
+
+    private final double rate;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double rate, double burst, long now) {
+        this.rate = rate;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Takes {@code cost} units if they are available and returns 0, or else leaves the bucket as
+     * is and returns the nanoseconds until they will be.
+     */
+    synchronized long tryTake(double cost, long now) {
+        refill(now);
+        double needed = Math.min(cost, burst);
+        if (tokens >= needed) {
+            tokens -= cost;
+            return 0;
+        }
+        return (long) Math.ceil((needed - tokens) / rate * 1e9);
+    }
+
+    /** Adds {@code units} back, e.g. when a request turned out cheaper than estimated. */
+    synchronized void give(double units, long now) {
+        refill(now);
+        tokens = Math.min(burst, tokens + units);
+    }
+
+    /** Charges {@code units} without checking the balance, e.g. when a request cost more than estimated. */
+    synchronized void charge(double units, long now) {
+        refill(now);
+        tokens -= units;
+    }
+
+    synchronized double getTokens(long now) {
+        refill(now);
+        return tokens;
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * rate);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,703 @@
+package co.elastic.service;
+
+import co.elastic.CompiledUserDictionary;
+import co.elastic.TextWindows;
+import co.elastic.TokenizerPool;
+import co.elastic.LatticeVisualizer;
+import co.elastic.StageListener;
+import co.elastic.analysis.TokenStreamWriter;
+import co.elastic.cache.DiskRenderCache;
+import co.elastic.cache.RenderCache;
+import co.elastic.cache.UserDictionaryCache;
+import co.elastic.corpus.CorpusAnalyzer;
+import co.elastic.corpus.CorpusStats;
+import co.elastic.lattice.LatticeAnalysis;
+import co.elastic.render.GraphvizExecutable;
+import co.elastic.render.GraphvizRendererPool;
+import co.elastic.render.ImageBuffer;
+import co.elastic.render.DotSourceRenderer;
+import co.elastic.render.OutputFormat;
+import co.elastic.render.ProcessRenderer;
+import co.elastic.render.Renderer;
+import co.elastic.render.SvgLatticeRenderer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class TokenVisualizerService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenVisualizerService.class);
+
+    /** {@link ImageBuffer} properties with the number of lattice nodes and edges a pruned render dropped. */
+    public static final String PRUNED_NODES = "prunedNodes";
+    public static final String PRUNED_EDGES = "prunedEdges";
+
+    private final TokenizerPool tokenizerPool;
+    private final UserDictionaryCache userDictionaryCache;
+    private final DictionaryRegistry dictionaryRegistry;
+    private final DiskRenderCache diskRenderCache;
+    private final RenderCache renderCache;
+    private final GraphvizRendererPool rendererPool;
+    private final Map<OutputFormat, Renderer> graphvizRenderers = new EnumMap<>(OutputFormat.class);
+    private final Renderer svgRenderer = new SvgLatticeRenderer();
+    private final Renderer dotSourceRenderer = new DotSourceRenderer();
+    private final String defaultBackend;
+    private final OutputFormat defaultFormat;
+    private final BatchVisualizer batchVisualizer;
+    private final int batchMaxItems;
+    private final VisualizerMetrics metrics;
+    private final ExecutorService tokenizeExecutor;
+    private final ExecutorService renderExecutor;
+    private final int windowMaxChars;
+    private final int windowMaxPageSize;
+    private final AnalysisSessionStore sessionStore;
+    private final CorpusAnalyzer corpusAnalyzer;
+    private final int corpusMaxTop;
+
+    public TokenVisualizerService(
+            MeterRegistry meterRegistry,
+            @Qualifier("tokenizeExecutor") ExecutorService tokenizeExecutor,
+            @Qualifier("renderExecutor") ExecutorService renderExecutor,
+            @Value("${visualizer.tokenizer-pool.max-idle-per-key:4}") int maxIdlePerKey,
+            @Value("${visualizer.tokenizer-pool.max-idle-total:32}") int maxIdleTotal,
+            @Value("${visualizer.tokenizer-pool.idle-timeout-ms:300000}") long idleTimeoutMillis,
+            @Value("${visualizer.user-dict-cache.max-bytes:67108864}") long userDictCacheMaxBytes,
+            @Value("${visualizer.dictionaries.path:}") String dictionariesPath,
+            @Value("${visualizer.dictionaries.settle-ms:500}") long dictionariesSettleMillis,
+            @Value("${visualizer.render-cache.max-bytes:67108864}") long renderCacheMaxBytes,
+            @Value("${visualizer.render-cache.disk.path:}") String diskCachePath,
+            @Value("${visualizer.render-cache.disk.max-bytes:1073741824}") long diskCacheMaxBytes,
+            @Value("${visualizer.render-cache.disk.segment-bytes:67108864}") long diskCacheSegmentBytes,
+            @Value("${visualizer.render-cache.disk.compaction-threshold:0.5}") double diskCacheCompactionThreshold,
+            @Value("${visualizer.render-cache.disk.compaction-interval-ms:60000}") long diskCacheCompactionMillis,
+            @Value("${visualizer.render.backend:graphviz}") String defaultBackend,
+            @Value("${visualizer.render.format:jpg}") String defaultFormat,
+            @Value("${visualizer.render.dot-path:}") String dotPath,
+            @Value("${visualizer.render.workers:4}") int renderWorkers,
+            @Value("${visualizer.render.queue-capacity:64}") int renderQueueCapacity,
+            @Value("${visualizer.render.max-jobs-per-worker:500}") int maxJobsPerWorker,
+            @Value("${visualizer.render.timeout-ms:30000}") long renderTimeoutMillis,
+            @Value("${visualizer.batch.parallelism:0}") int batchParallelism,
+            @Value("${visualizer.batch.max-items:1000}") int batchMaxItems,
+            @Value("${visualizer.windows.max-chars:200}") int windowMaxChars,
+            @Value("${visualizer.windows.max-page-size:20}") int windowMaxPageSize,
+            @Value("${visualizer.sessions.ttl-ms:1800000}") long sessionTtlMillis,
+            @Value("${visualizer.sessions.max-bytes:67108864}") long sessionMaxBytes,
+            @Value("${visualizer.sessions.max-sessions:10000}") int sessionMaxSessions,
+            @Value("${visualizer.corpus.parallelism:0}") int corpusParallelism,
+            @Value("${visualizer.corpus.chunk-chars:65536}") int corpusChunkChars,
+            @Value("${visualizer.corpus.sketch-capacity:10000}") int corpusSketchCapacity,
+            @Value("${visualizer.corpus.max-top:1000}") int corpusMaxTop) throws IOException {
+        this.tokenizerPool = new TokenizerPool(maxIdlePerKey, maxIdleTotal, idleTimeoutMillis);
+        this.userDictionaryCache = new UserDictionaryCache(userDictCacheMaxBytes);
+        this.dictionaryRegistry = dictionariesPath.isEmpty() ? null
+                : new DictionaryRegistry(Paths.get(dictionariesPath), dictionariesSettleMillis);
+        this.diskRenderCache = diskCachePath.isEmpty() ? null : new DiskRenderCache(Paths.get(diskCachePath),
+                diskCacheMaxBytes, diskCacheSegmentBytes, diskCacheCompactionThreshold, diskCacheCompactionMillis);
+        this.renderCache = new RenderCache(renderCacheMaxBytes, diskRenderCache);
+        String exec = GraphvizExecutable.resolve(System.getProperty("os.name"), dotPath);
+        // With no workers configured, every render forks its own dot process.
+        this.rendererPool = renderWorkers <= 0 ? null : new GraphvizRendererPool(exec, renderWorkers,
+                renderQueueCapacity, maxJobsPerWorker, renderTimeoutMillis);
+        for (OutputFormat format : new OutputFormat[] { OutputFormat.JPG, OutputFormat.PNG, OutputFormat.SVG }) {
+            graphvizRenderers.put(format, rendererPool != null ? rendererPool.forFormat(format)
+                    : new ProcessRenderer(exec, format));
+        }
+        this.defaultBackend = defaultBackend;
+        this.defaultFormat = OutputFormat.parse(defaultFormat);
+        this.batchVisualizer = new BatchVisualizer(batchParallelism > 0 ? batchParallelism
+                : Runtime.getRuntime().availableProcessors());
+        this.batchMaxItems = batchMaxItems;
+        this.metrics = new VisualizerMetrics(meterRegistry);
+        this.tokenizeExecutor = tokenizeExecutor;
+        this.renderExecutor = renderExecutor;
+        this.windowMaxChars = windowMaxChars;
+        this.windowMaxPageSize = windowMaxPageSize;
+        this.sessionStore = new AnalysisSessionStore(sessionTtlMillis, sessionMaxBytes, sessionMaxSessions);
+        this.corpusAnalyzer = new CorpusAnalyzer(tokenizerPool, corpusParallelism > 0 ? corpusParallelism
+                : Runtime.getRuntime().availableProcessors(), corpusChunkChars, corpusSketchCapacity);
+        this.corpusMaxTop = corpusMaxTop;
+        if (rendererPool != null) {
+            meterRegistry.gauge("visualizer.render.queue.depth", rendererPool, GraphvizRendererPool::getQueueDepth);
+        }
+    }
+
+    /**
+     * Loads the dictionaries and connection costs of both languages and runs a sample of each
+     * through tokenization and, with {@code render}, the default renderer, so that the first real
+     * request doesn't pay for class loading, dictionary loading or starting dot. A sample that
+     * fails to render is only logged, since the app is still useful without Graphviz.
+     */
+    public void warmUp(boolean render) {
+        String[][] samples = { { "ko", "뿌리가 깊은 나무는 바람에 아니 뮐새" }, { "ja", "シンプルさは究極の洗練である" } };
+        for (String[] sample : samples) {
+            VisualizeRequest request = new VisualizeRequest(sample[1], sample[0], "", null, defaultBackend,
+                    resolveFormat(defaultBackend, null));
+            try {
+                analyze(request);
+                if (render) {
+                    visualize(request);
+                }
+            } catch (Exception e) {
+                log.warn("Warm-up failed language={} backend={}: {}", request.getLanguage(), request.getBackend(),
+                        e.toString());
+            }
+        }
+    }
+
+    public VisualizeRequest prepare(String text, String language, String mode, MultipartFile userDict,
+                                    String userDictHash, String backend) throws IOException {
+        return prepare(text, language, mode, userDict, userDictHash, null, backend, null);
+    }
+
+    /**
+     * Prepares a request with the user dictionary uploaded as {@code userDict}, registered under
+     * {@code userDictHash}, or kept on the server as {@code userDictName}, whichever is given, and
+     * rendered in {@code format}, e.g. {@code png}. Without a format, Graphviz renders in the
+     * configured default format and the built-in renderer in SVG.
+     */
+    public VisualizeRequest prepare(String text, String language, String mode, MultipartFile userDict,
+                                    String userDictHash, String userDictName, String backend, String format)
+            throws IOException {
+        long start = System.nanoTime();
+        String resolvedBackend = backend == null || backend.isEmpty() ? defaultBackend : backend;
+        OutputFormat resolvedFormat = resolveFormat(resolvedBackend, format);
+        CompiledUserDictionary dictionary = resolveUserDictionary(language, userDict, userDictHash, userDictName);
+        VisualizeRequest request = new VisualizeRequest(text, language, mode, dictionary, resolvedBackend,
+                resolvedFormat);
+        if (dictionary != null) {
+            metrics.record(VisualizerMetrics.DICTIONARY, request.getLanguage(), request.getMode(),
+                    System.nanoTime() - start);
+        }
+        return request;
+    }
+
+    /** Prepares one request per text, resolving the shared user dictionary only once. */
+    public List<VisualizeRequest> prepareBatch(List<String> texts, String language, String mode,
+                                               MultipartFile userDict, String userDictHash, String userDictName,
+                                               String backend, String format) throws IOException {
+        if (texts.isEmpty() || texts.size() > batchMaxItems) {
+            throw new IllegalArgumentException("A batch must have between 1 and " + batchMaxItems + " texts");
+        }
+        String resolvedBackend = backend == null || backend.isEmpty() ? defaultBackend : backend;
+        OutputFormat resolvedFormat = resolveFormat(resolvedBackend, format);
+        CompiledUserDictionary dictionary = resolveUserDictionary(language, userDict, userDictHash, userDictName);
+        List<VisualizeRequest> requests = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            requests.add(new VisualizeRequest(text, language, mode, dictionary, resolvedBackend, resolvedFormat));
+        }
+        return requests;
+    }
+
+    private OutputFormat resolveFormat(String backend, String format) {
+        if (format != null && !format.isEmpty()) {
+            return OutputFormat.parse(format);
+        }
+        return backend.equalsIgnoreCase(VisualizeRequest.BACKEND_SVG) ? OutputFormat.SVG : defaultFormat;
+    }
+
+    /** The formats {@code backend} (or the default backend for null) renders in, its default first. */
+    public List<OutputFormat> getFormats(String backend) {
+        String resolvedBackend = backend == null || backend.isEmpty() ? defaultBackend : backend;
+        boolean builtin = resolvedBackend.equalsIgnoreCase(VisualizeRequest.BACKEND_SVG);
+        List<OutputFormat> formats = new ArrayList<>();
+        formats.add(resolveFormat(resolvedBackend, null));
+        for (OutputFormat format : OutputFormat.values()) {
+            if (!formats.contains(format) && (!builtin || format.isText())) {
+                formats.add(format);
+            }
+        }
+        return formats;
+    }
+
+    /**
+     * Returns the renderer for the request's backend and format: Graphviz, the built-in SVG
+     * renderer, or the DOT source as is.
+     */
+    public Renderer getRenderer(VisualizeRequest request) {
+        if (request.getFormat() == OutputFormat.DOT) {
+            return dotSourceRenderer;
+        }
+        return request.getBackend().equals(VisualizeRequest.BACKEND_SVG) ? svgRenderer
+                : graphvizRenderers.get(request.getFormat());
+    }
+
+    public ImageBuffer visualize(VisualizeRequest request) throws Exception {
+        return renderCache.get(request.getCacheKey(), () -> render(request));
+    }
+
+    /**
+     * Like {@link #visualize}, but tokenizes on the tokenize executor and renders on the render
+     * executor, so the calling thread is free as soon as the request is handed off.
+     */
+    public CompletableFuture<ImageBuffer> visualizeAsync(VisualizeRequest request) {
+        return renderCache.getAsync(request.getCacheKey(), () -> {
+            LatticeVisualizer visualizer = newVisualizer(request);
+            return CompletableFuture
+                    .supplyAsync(() -> call(visualizer::generateDot), tokenizeExecutor)
+                    .thenApplyAsync(dotContent -> call(() -> {
+                        ImageBuffer image = new ImageBuffer();
+                        renderTracked(request, () -> visualizer.render(dotContent, image), image);
+                        recordPruning(visualizer, request, image);
+                        return image;
+                    }), renderExecutor);
+        });
+    }
+
+    /** Whether the request's image is in the render cache, so that serving it costs next to nothing. */
+    public boolean isCached(VisualizeRequest request) {
+        return renderCache.contains(request.getCacheKey());
+    }
+
+    /**
+     * Like {@link #visualizeAsync}, but compressed with {@code contentEncoding} ({@code gzip} or
+     * {@code deflate}), or as is for null. The compressed image is cached on its own, so repeated
+     * requests are neither rendered nor compressed again.
+     */
+    public CompletableFuture<ImageBuffer> visualizeAsync(VisualizeRequest request, String contentEncoding) {
+        if (contentEncoding == null) {
+            return visualizeAsync(request);
+        }
+        return renderCache.getAsync(request.getCacheKey() + "|" + contentEncoding, () ->
+                visualizeAsync(request).thenApply(image -> call(() -> compress(image, contentEncoding))));
+    }
+
+    private static ImageBuffer compress(ImageBuffer image, String contentEncoding) throws IOException {
+        ImageBuffer compressed = new ImageBuffer();
+        image.getProperties().forEach(compressed::setProperty);
+        try (OutputStream out = contentEncoding.equals("gzip") ? new GZIPOutputStream(compressed, 8192)
+                : new DeflaterOutputStream(compressed)) {
+            image.writeTo(out);
+        }
+        return compressed;
+    }
+
+    /**
+     * Runs {@link #analyze} on the tokenize executor. A full executor queue fails the returned
+     * future rather than throwing, so callers release their permits and report 503 like any other
+     * failure.
+     */
+    public CompletableFuture<LatticeAnalysis> analyzeAsync(VisualizeRequest request) {
+        try {
+            return CompletableFuture.supplyAsync(() -> call(() -> analyze(request)), tokenizeExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<LatticeAnalysis> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Analyzes the request's text under each of {@code modes}, or every mode of its language when
+     * none are given, and with {@code withoutUserDict} also without the request's user dictionary.
+     * The dictionary was already resolved by {@link #prepare}, so it is parsed once for all
+     * variants, which run in parallel. Failed variants are reported in the comparison.
+     */
+    public CompletableFuture<ModeComparison> compare(VisualizeRequest request, List<String> modes,
+                                                     boolean withoutUserDict) {
+        List<String> selected = new ArrayList<>();
+        for (String mode : modes == null || modes.isEmpty() ? request.getSupportedModes() : modes) {
+            String normalized = mode.trim().toLowerCase();
+            if (!request.getSupportedModes().contains(normalized)) {
+                throw new IllegalArgumentException("Unknown mode for " + request.getLanguage() + ": " + mode);
+            }
+            if (!selected.contains(normalized)) {
+                selected.add(normalized);
+            }
+        }
+
+        boolean dictionaryVariants = withoutUserDict && request.getUserDict() != null;
+        ModeComparison comparison = new ModeComparison(request.getLanguage());
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (String mode : selected) {
+            VisualizeRequest variant = request.withMode(mode);
+            pending.add(analyzeVariant(comparison, dictionaryVariants ? mode + "+userDict" : mode, variant));
+            if (dictionaryVariants) {
+                pending.add(analyzeVariant(comparison, mode, variant.withoutUserDict()));
+            }
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenApply(v -> comparison);
+    }
+
+    private CompletableFuture<?> analyzeVariant(ModeComparison comparison, String name, VisualizeRequest request) {
+        ModeComparison.Variant variant = new ModeComparison.Variant(name, request);
+        comparison.add(variant);
+        return analyzeAsync(request).handle((analysis, error) -> {
+            variant.analysis = analysis;
+            variant.error = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            return null;
+        });
+    }
+
+    /**
+     * Splits the text at sentence boundaries into windows of at most {@code windowChars} characters
+     * (0 for the configured default) and renders, or with {@code lattice} analyzes, the windows on
+     * the requested page in parallel. Failed windows are reported on the page rather than failing it.
+     */
+    public CompletableFuture<WindowPage> visualizeWindows(VisualizeRequest request, int windowChars, int page,
+                                                          int pageSize, boolean lattice) {
+        int maxChars = windowChars > 0 ? Math.min(windowChars, windowMaxChars) : windowMaxChars;
+        int size = Math.max(1, Math.min(pageSize, windowMaxPageSize));
+        List<TextWindows.Window> windows = TextWindows.split(request.getText(), maxChars);
+        WindowPage result = new WindowPage(windows.size(), page, size,
+                lattice ? "application/json" : getRenderer(request).getContentType());
+
+        int from = Math.min(windows.size(), Math.max(0, page) * size);
+        int to = Math.min(windows.size(), from + size);
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (TextWindows.Window window : windows.subList(from, to)) {
+            WindowPage.Item item = new WindowPage.Item(window, request.withText(window.getText()));
+            result.add(item);
+            CompletableFuture<?> done = lattice
+                    ? analyzeAsync(item.request).whenComplete((analysis, error) -> item.lattice = analysis)
+                    : visualizeAsync(item.request).whenComplete((image, error) -> item.image = image);
+            pending.add(done.handle((value, error) -> {
+                item.error = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenApply(v -> result);
+    }
+
+    /** Starts an analysis session whose edits are rendered with the settings of {@code template}. */
+    public String createSession(VisualizeRequest template) {
+        return sessionStore.create(template).getId();
+    }
+
+    public long getSessionTtlMillis() {
+        return sessionStore.getTtlMillis();
+    }
+
+    /**
+     * The sentences of {@code text} that {@link #updateSession} would render, because the session
+     * doesn't hold them yet, each once. Lets the caller charge an edit before it is applied.
+     */
+    public List<VisualizeRequest> pendingSegments(String sessionId, String text) {
+        AnalysisSession session = sessionStore.get(sessionId);
+        Map<String, VisualizeRequest> pending = new LinkedHashMap<>();
+        for (TextWindows.Window window : TextWindows.sentences(text, windowMaxChars)) {
+            VisualizeRequest request = session.getTemplate().withText(window.getText());
+            if (session.getSegment(request.getCacheKey()) == null) {
+                pending.putIfAbsent(request.getCacheKey(), request);
+            }
+        }
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Applies an edit to a session: the text is split into sentences, and only sentences whose hash
+     * the session doesn't hold yet are rendered, with the work charged to {@code permit}.
+     */
+    public CompletableFuture<SessionDelta> updateSession(String sessionId, String text,
+                                                         AdmissionControl.Permit permit) {
+        AnalysisSession session = sessionStore.get(sessionId);
+        VisualizeRequest template = session.getTemplate().withPermit(permit);
+        SessionDelta delta = new SessionDelta(sessionId, getRenderer(template).getContentType());
+
+        Map<String, CompletableFuture<ImageBuffer>> renders = new HashMap<>();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (TextWindows.Window window : TextWindows.sentences(text, windowMaxChars)) {
+            VisualizeRequest request = template.withText(window.getText());
+            String hash = request.getCacheKey();
+            ImageBuffer existing = session.getSegment(hash);
+            SessionDelta.Segment segment = new SessionDelta.Segment(window, hash, existing == null);
+            delta.addSegment(segment);
+            if (existing != null) {
+                segment.image = existing;
+                continue;
+            }
+            // The same sentence twice in one edit is rendered once.
+            pending.add(renders.computeIfAbsent(hash, h -> visualizeAsync(request))
+                    .handle((image, error) -> {
+                        segment.image = image;
+                        segment.error = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        return null;
+                    }));
+        }
+
+        List<String> previous = session.getOrder();
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<String> order = new ArrayList<>();
+            LinkedHashMap<String, ImageBuffer> segments = new LinkedHashMap<>();
+            for (SessionDelta.Segment segment : delta.getSegments()) {
+                order.add(segment.hash);
+                if (segment.image != null) {
+                    segments.put(segment.hash, segment.image);
+                }
+            }
+            for (String hash : new LinkedHashSet<>(previous)) {
+                if (!segments.containsKey(hash)) {
+                    delta.addRemoved(hash);
+                }
+            }
+            sessionStore.update(session, order, segments);
+            return delta;
+        });
+    }
+
+    /** Returns a rendered segment of a session, or null if the session's current text has no such segment. */
+    public ImageBuffer getSessionSegment(String sessionId, String hash) {
+        return sessionStore.get(sessionId).getSegment(hash);
+    }
+
+    public String getSessionContentType(String sessionId) {
+        return getRenderer(sessionStore.get(sessionId).getTemplate()).getContentType();
+    }
+
+    public void deleteSession(String sessionId) {
+        sessionStore.remove(sessionId);
+    }
+
+    /** Renders every request and streams the images to {@code out} as a zip, in completion order. */
+    public void visualizeBatch(List<VisualizeRequest> requests, OutputStream out) throws IOException {
+        batchVisualizer.write(requests, this::visualize, getRenderer(requests.get(0)).getFileExtension(), out);
+    }
+
+    private ImageBuffer render(VisualizeRequest request) throws IOException {
+        LatticeVisualizer visualizer = newVisualizer(request);
+        ImageBuffer image = new ImageBuffer();
+        renderTracked(request, () -> visualizer.visualize(image), image);
+        recordPruning(visualizer, request, image);
+        return image;
+    }
+
+    private static void recordPruning(LatticeVisualizer visualizer, VisualizeRequest request, ImageBuffer image) {
+        if (!request.getPruning().isNone()) {
+            image.setProperty(PRUNED_NODES, Integer.toString(visualizer.getPrunedNodes()));
+            image.setProperty(PRUNED_EDGES, Integer.toString(visualizer.getPrunedEdges()));
+        }
+    }
+
+    private LatticeVisualizer newVisualizer(VisualizeRequest request) {
+        LatticeVisualizer visualizer = new LatticeVisualizer(request.getMode(), request.getText(), request.getLanguage(),
+                request.getUserDict(), tokenizerPool, getRenderer(request));
+        visualizer.setStageListener(stageListener(request));
+        visualizer.setPruning(request.getPruning());
+        return visualizer;
+    }
+
+    /**
+     * Records the stages of a request in the metrics and charges them to its permit as work, less
+     * the time a render waited for a dot process.
+     */
+    private StageListener stageListener(VisualizeRequest request) {
+        StageListener metricsListener = metrics.listener(request.getLanguage(), request.getMode());
+        AdmissionControl.Permit permit = request.getPermit();
+        return new StageListener() {
+            @Override
+            public void stageCompleted(String stage, long nanos) {
+                metricsListener.stageCompleted(stage, nanos);
+                // Taken after every render, so a wait is never charged to a later render on this thread.
+                long waitNanos = stage.equals(StageListener.RENDER) ? GraphvizRendererPool.takeWaitNanos() : 0;
+                if (permit != null) {
+                    permit.addWork(nanos - waitNanos);
+                }
+            }
+
+            @Override
+            public void dotGenerated(int length) {
+                metricsListener.dotGenerated(length);
+            }
+        };
+    }
+
+    private interface RenderStep {
+        void run() throws IOException;
+    }
+
+    private void renderTracked(VisualizeRequest request, RenderStep step, ImageBuffer image) throws IOException {
+        long start = System.nanoTime();
+        metrics.renderStarted();
+        try {
+            step.run();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Visualize failed language={} mode={} backend={} textLength={}: {}", request.getLanguage(),
+                    request.getMode(), request.getBackend(), request.getText().length(), e.toString());
+            throw e;
+        } finally {
+            metrics.renderFinished();
+        }
+        metrics.imageRendered(request.getBackend(), image.size());
+        log.debug("Visualized language={} mode={} backend={} textLength={} imageBytes={} elapsedMs={}",
+                request.getLanguage(), request.getMode(), request.getBackend(), request.getText().length(),
+                image.size(), (System.nanoTime() - start) / 1000000);
+    }
+
+    private interface IoCall<T> {
+        T call() throws IOException;
+    }
+
+    /** Rethrows I/O errors unchecked so they can pass through CompletableFuture stages. */
+    private static <T> T call(IoCall<T> call) {
+        try {
+            return call.call();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Tokenizes the text and returns its lattice as data, without rendering anything. */
+    public LatticeAnalysis analyze(VisualizeRequest request) throws IOException {
+        return newVisualizer(request).analyze();
+    }
+
+    /**
+     * Tokenizes {@code reader} with the request's language, mode and dictionary (its text isn't
+     * used) and writes each token to {@code out} as it is emitted, in the given
+     * {@link TokenStreamWriter} format. A failure once tokens have been sent is reported as the
+     * last record of the stream.
+     */
+    public void streamTokens(VisualizeRequest request, Reader reader, OutputStream out, String format)
+            throws IOException {
+        long start = System.nanoTime();
+        // The body is read and the tokens written as the text is tokenized, so the tokenize stage
+        // includes waiting for the client both ways.
+        IoWaitTimer ioWait = new IoWaitTimer();
+        try (TokenStreamWriter writer = new TokenStreamWriter(ioWait.time(out), format)) {
+            try {
+                newVisualizer(request).stream(ioWait.time(reader), writer);
+                if (request.getPermit() != null) {
+                    request.getPermit().excludeWait(ioWait.getNanos());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Token stream failed language={} mode={} tokens={}: {}", request.getLanguage(),
+                        request.getMode(), writer.getTokens(), e.toString());
+                writer.error(e.toString());
+                return;
+            }
+            log.debug("Streamed language={} mode={} tokens={} elapsedMs={}", request.getLanguage(),
+                    request.getMode(), writer.getTokens(), (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    /**
+     * Tokenizes {@code reader} in parallel chunks under each of {@code modes}, or every mode of the
+     * request's language, with the request's dictionary (its text isn't used), and returns the
+     * corpus statistics with the {@code top} most frequent tokens, at most the configured maximum.
+     */
+    public CorpusStats analyzeCorpus(VisualizeRequest request, List<String> modes, int top, Reader reader)
+            throws IOException {
+        CorpusStats stats = corpusAnalyzer.analyze(reader, request.getLanguage(), modes, request.getUserDict(),
+                Math.min(top, corpusMaxTop));
+        log.info("Analyzed corpus language={} chars={} chunks={} tokens={} elapsedMs={}", request.getLanguage(),
+                stats.getChars(), stats.getChunks(), stats.getTokens(), stats.getElapsedMillis());
+        if (request.getPermit() != null) {
+            request.getPermit().addWork(stats.getTokenizeNanos());
+        }
+        return stats;
+    }
+
+    /** The dictionaries kept on the server, with their versions; empty if there is no directory configured. */
+    public List<Map<String, Object>> getNamedDictionaries() {
+        return dictionaryRegistry == null ? new ArrayList<>() : dictionaryRegistry.list();
+    }
+
+    public CompiledUserDictionary registerUserDictionary(String language, MultipartFile userDict) throws IOException {
+        return userDictionaryCache.getOrCompile(language, userDict.getBytes());
+    }
+
+    private CompiledUserDictionary resolveUserDictionary(String language, MultipartFile userDict,
+                                                         String userDictHash, String userDictName)
+            throws IOException {
+        if (userDict != null && !userDict.isEmpty()) {
+            return userDictionaryCache.getOrCompile(language, userDict.getBytes());
+        }
+        if (userDictName != null && !userDictName.isEmpty()) {
+            // Resolved once per request, so a reload never changes the dictionary of a request in flight.
+            CompiledUserDictionary named = dictionaryRegistry == null ? null
+                    : dictionaryRegistry.get(language, userDictName);
+            if (named == null) {
+                throw new UnknownDictionaryException(userDictName);
+            }
+            return named;
+        }
+        if (userDictHash != null && !userDictHash.isEmpty()) {
+            CompiledUserDictionary cached = userDictionaryCache.get(language, userDictHash);
+            if (cached == null) {
+                throw new UnknownDictionaryException(userDictHash);
+            }
+            return cached;
+        }
+        return null;
+    }
+
+    public Map<String, Object> validateInput(String text, String language) {
+        Map<String, Object> response = new HashMap<>();
+        
+        if (text == null || text.trim().isEmpty()) {
+            response.put("valid", false);
+            response.put("message", "Text should not be empty");
+            return response;
+        }
+        
+        if (language != null && !language.equals("ko") && !language.equals("ja")) {
+            response.put("valid", false);
+            response.put("message", "Language must be 'ko' or 'ja'");
+            return response;
+        }
+        
+        response.put("valid", true);
+        response.put("message", "Input is valid");
+        return response;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tokenizerPool", tokenizerPool.getStats());
+        stats.put("userDictionaryCache", userDictionaryCache.getStats());
+        if (dictionaryRegistry != null) {
+            stats.put("dictionaryRegistry", dictionaryRegistry.getStats());
+        }
+        stats.put("renderCache", renderCache.getStats());
+        stats.put("sessions", sessionStore.getStats());
+        if (rendererPool != null) {
+            stats.put("renderer", rendererPool.getStats());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchVisualizer.close();
+        corpusAnalyzer.close();
+        sessionStore.close();
+        tokenizerPool.close();
+        if (rendererPool != null) {
+            rendererPool.close();
+        }
+        if (diskRenderCache != null) {
+            diskRenderCache.close();
+        }
+        if (dictionaryRegistry != null) {
+            dictionaryRegistry.close();
+        }
+    }
+}
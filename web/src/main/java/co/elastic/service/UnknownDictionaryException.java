@@ -0,0 +1,13 @@
+package co.elastic.service;
+
+/**
+ * Thrown when a request refers to a user dictionary hash that was never registered or has since
+ * been evicted, so the client knows to upload the dictionary again, or to a dictionary name the
+ * server has no dictionary for.
+ */
+public class UnknownDictionaryException extends RuntimeException {
+
+    public UnknownDictionaryException(String hashOrName) {
+        super("Unknown user dictionary: " + hashOrName);
+    }
+}
@@ -0,0 +1,12 @@
+package co.elastic.service;
+
+/**
+ * Thrown when a request refers to an analysis session that doesn't exist or has expired, so the
+ * client knows to start a new one.
+ */
+public class UnknownSessionException extends RuntimeException {
+
+    public UnknownSessionException(String id) {
+        super("Unknown analysis session: " + id);
+    }
+}
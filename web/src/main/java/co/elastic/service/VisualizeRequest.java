@@ -0,0 +1,158 @@
+package co.elastic.service;
+
+import co.elastic.CompiledUserDictionary;
+import co.elastic.cache.RenderCache;
+import co.elastic.lattice.LatticePruning;
+import co.elastic.render.OutputFormat;
+import co.elastic.render.Renderers;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A visualize request whose user dictionary has been resolved, along with the cache key that
+ * identifies its rendered output.
+ */
+public class VisualizeRequest {
+
+    public static final String BACKEND_GRAPHVIZ = Renderers.BACKEND_GRAPHVIZ;
+    public static final String BACKEND_SVG = Renderers.BACKEND_SVG;
+
+    private static final List<String> KOREAN_MODES = Arrays.asList("none", "discard", "mixed");
+    private static final List<String> JAPANESE_MODES = Arrays.asList("normal", "search", "extended");
+
+    private final String text;
+    private final String language;
+    private final String mode;
+    private final CompiledUserDictionary userDict;
+    private final String backend;
+    private final OutputFormat format;
+    private final LatticePruning pruning;
+    private final String cacheKey;
+    // The admission permit the work for this request is charged to; not part of the cache key.
+    private final AdmissionControl.Permit permit;
+
+    /** A null {@code format} is the backend's own: JPEG for Graphviz and SVG for the built-in renderer. */
+    VisualizeRequest(String text, String language, String mode, CompiledUserDictionary userDict, String backend,
+                     OutputFormat format) {
+        this(text, language, mode, userDict, backend, format, LatticePruning.NONE, null);
+    }
+
+    private VisualizeRequest(String text, String language, String mode, CompiledUserDictionary userDict,
+                             String backend, OutputFormat format, LatticePruning pruning,
+                             AdmissionControl.Permit permit) {
+        this.text = text;
+        this.language = language.equalsIgnoreCase("ja") ? "ja" : "ko";
+        this.mode = normalizeMode(this.language, mode);
+        this.userDict = userDict;
+        this.backend = backend.equalsIgnoreCase(BACKEND_SVG) ? BACKEND_SVG : BACKEND_GRAPHVIZ;
+        this.format = Renderers.check(this.backend, format);
+        this.pruning = pruning;
+        this.cacheKey = RenderCache.key(text, this.language, this.mode,
+                userDict == null ? null : userDict.getHash(), this.backend, this.format.getFileExtension(),
+                pruning.toString());
+        this.permit = permit;
+    }
+
+    private VisualizeRequest(VisualizeRequest request, AdmissionControl.Permit permit) {
+        this.text = request.text;
+        this.language = request.language;
+        this.mode = request.mode;
+        this.userDict = request.userDict;
+        this.backend = request.backend;
+        this.format = request.format;
+        this.pruning = request.pruning;
+        this.cacheKey = request.cacheKey;
+        this.permit = permit;
+    }
+
+    /** The same request for another text, e.g. one window of a long document. */
+    public VisualizeRequest withText(String text) {
+        return new VisualizeRequest(text, language, mode, userDict, backend, format, pruning, permit);
+    }
+
+    /** The same request in another decompound or search mode. */
+    public VisualizeRequest withMode(String mode) {
+        return new VisualizeRequest(text, language, mode, userDict, backend, format, pruning, permit);
+    }
+
+    /** The same request without its user dictionary. */
+    public VisualizeRequest withoutUserDict() {
+        return new VisualizeRequest(text, language, mode, null, backend, format, pruning, permit);
+    }
+
+    /** The same request with its lattice pruned before it is drawn or returned. */
+    public VisualizeRequest withPruning(LatticePruning pruning) {
+        return new VisualizeRequest(text, language, mode, userDict, backend, format, pruning, permit);
+    }
+
+    /**
+     * The same request with the time spent tokenizing and rendering it, and anything derived from
+     * it, added to {@code permit}.
+     */
+    public VisualizeRequest withPermit(AdmissionControl.Permit permit) {
+        return new VisualizeRequest(this, permit);
+    }
+
+    /** The modes of the request's language: nori's decompound modes or kuromoji's search modes. */
+    public List<String> getSupportedModes() {
+        return language.equals("ja") ? JAPANESE_MODES : KOREAN_MODES;
+    }
+
+    private static String normalizeMode(String language, String mode) {
+        if (mode == null || mode.isEmpty()) {
+            return language.equals("ja") ? "search" : "discard";
+        }
+        return mode.toLowerCase();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public CompiledUserDictionary getUserDict() {
+        return userDict;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    public LatticePruning getPruning() {
+        return pruning;
+    }
+
+    /** The permit the request's work is charged to, or null. */
+    public AdmissionControl.Permit getPermit() {
+        return permit;
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    /** The strong ETag for the rendered image, which only depends on the request inputs. */
+    public String getETag() {
+        return getETag(null);
+    }
+
+    /**
+     * The strong ETag for the image in a content coding such as {@code gzip}, or unencoded for
+     * null. The encodings are different bytes, so they can't share a strong ETag.
+     */
+    public String getETag(String contentEncoding) {
+        return "\"" + cacheKey + (contentEncoding == null ? "" : "-" + contentEncoding) + "\"";
+    }
+}
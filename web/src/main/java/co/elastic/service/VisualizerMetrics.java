@@ -0,0 +1,84 @@
+package co.elastic.service;
+
+import co.elastic.StageListener;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters for the visualize pipeline:
+ *
+ * <ul>
+ *   <li>{@code visualizer.stage} timers for the dictionary, tokenize, finish, prune and render stages,
+ *       tagged with stage, language and mode</li>
+ *   <li>{@code visualizer.dot.length} and {@code visualizer.image.size} distributions</li>
+ *   <li>the {@code visualizer.renders.inflight} gauge</li>
+ * </ul>
+ */
+class VisualizerMetrics {
+
+    static final String DICTIONARY = "dictionary";
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlightRenders = new AtomicInteger();
+
+    VisualizerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        registry.gauge("visualizer.renders.inflight", inFlightRenders);
+    }
+
+    MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /** A listener that records the stages of one request under its language and mode. */
+    StageListener listener(String language, String mode) {
+        return new StageListener() {
+            @Override
+            public void stageCompleted(String stage, long nanos) {
+                record(stage, language, mode, nanos);
+            }
+
+            @Override
+            public void dotGenerated(int length) {
+                DistributionSummary.builder("visualizer.dot.length")
+                        .baseUnit("chars")
+                        .tag("language", language)
+                        .tag("mode", mode)
+                        .publishPercentileHistogram()
+                        .register(registry)
+                        .record(length);
+            }
+        };
+    }
+
+    void record(String stage, String language, String mode, long nanos) {
+        Timer.builder("visualizer.stage")
+                .tag("stage", stage)
+                .tag("language", language)
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void imageRendered(String backend, long bytes) {
+        DistributionSummary.builder("visualizer.image.size")
+                .baseUnit("bytes")
+                .tag("backend", backend)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    void renderStarted() {
+        inFlightRenders.incrementAndGet();
+    }
+
+    void renderFinished() {
+        inFlightRenders.decrementAndGet();
+    }
+}
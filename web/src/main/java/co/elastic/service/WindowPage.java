@@ -0,0 +1,102 @@
+package co.elastic.service;
+
+import co.elastic.TextWindows;
+import co.elastic.lattice.LatticeAnalysis;
+import co.elastic.lattice.LatticeJsonWriter;
+import co.elastic.render.ImageBuffer;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a windowed visualization: the windows on the page, each with its rendered image or
+ * lattice, written as JSON:
+ *
+ * <pre>
+ * {"windows":12,"page":0,"pageSize":5,"pages":3,
+ *  "items":[{"index":0,"start":0,"end":37,"text":"...","etag":"\"...\"","contentType":"image/jpeg","bytes":18211},
+ *           {"index":1,...,"lattice":{"nodes":[...],"edges":[...],"tokens":[...]}},
+ *           {"index":2,...,"error":"..."}]}
+ * </pre>
+ *
+ * Images aren't embedded. They are rendered into the render cache while the page is built, and
+ * clients fetch a window's image from {@code /api/visualize} with the window's text, which is
+ * then answered from the cache (or with 304, using the etag).
+ */
+public class WindowPage {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static class Item {
+        final TextWindows.Window window;
+        final VisualizeRequest request;
+        ImageBuffer image;
+        LatticeAnalysis lattice;
+        Throwable error;
+
+        Item(TextWindows.Window window, VisualizeRequest request) {
+            this.window = window;
+            this.request = request;
+        }
+    }
+
+    private final int windowCount;
+    private final int page;
+    private final int pageSize;
+    private final String contentType;
+    private final List<Item> items = new ArrayList<>();
+
+    WindowPage(int windowCount, int page, int pageSize, String contentType) {
+        this.windowCount = windowCount;
+        this.page = page;
+        this.pageSize = pageSize;
+        this.contentType = contentType;
+    }
+
+    void add(Item item) {
+        items.add(item);
+    }
+
+    List<Item> getItems() {
+        return items;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartObject();
+            json.writeNumberField("windows", windowCount);
+            json.writeNumberField("page", page);
+            json.writeNumberField("pageSize", pageSize);
+            json.writeNumberField("pages", (windowCount + pageSize - 1) / pageSize);
+
+            json.writeArrayFieldStart("items");
+            for (Item item : items) {
+                json.writeStartObject();
+                json.writeNumberField("index", item.window.getIndex());
+                json.writeNumberField("start", item.window.getStart());
+                json.writeNumberField("end", item.window.getEnd());
+                json.writeStringField("text", item.window.getText());
+                if (item.error != null) {
+                    json.writeStringField("error", String.valueOf(item.error.getMessage()));
+                } else if (item.lattice != null) {
+                    json.writeFieldName("lattice");
+                    LatticeJsonWriter.write(item.lattice, json);
+                } else {
+                    json.writeStringField("etag", item.request.getETag());
+                    json.writeStringField("contentType", contentType);
+                    json.writeNumberField("bytes", item.image.size());
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+
+            json.writeEndObject();
+        }
+    }
+}
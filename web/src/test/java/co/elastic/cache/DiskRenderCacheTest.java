@@ -0,0 +1,204 @@
+package co.elastic.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import co.elastic.render.ImageBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskRenderCacheTest {
+
+    private static final long HOUR = 3_600_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void comesBackAfterARestart() throws Exception {
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 1 << 20, 1 << 16, 0.5, HOUR)) {
+            cache.put("a", image('a', 1000));
+            cache.put("b", image('b', 1000));
+        }
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 1 << 20, 1 << 16, 0.5, HOUR)) {
+            assertEquals(2L, cache.getStats().get("recovered"));
+            assertArrayEquals(image('a', 1000).toByteArray(), cache.get("a").toByteArray());
+            assertEquals("b", cache.get("b").getProperties().get("key"));
+            assertNull(cache.get("c"));
+        }
+    }
+
+    @Test
+    void appendsToTheNewestSegmentAfterARestart() throws Exception {
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 1 << 20, 1 << 16, 0.5, HOUR)) {
+            cache.put("a", image('a', 1000));
+        }
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 1 << 20, 1 << 16, 0.5, HOUR)) {
+            cache.put("b", image('b', 1000));
+            cache.flush();
+            assertEquals(1, cache.getStats().get("segments"));
+        }
+        assertEquals(1, segmentFiles());
+
+        // A torn record at the end isn't written after; the next record starts a new segment.
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().get();
+        }
+        Files.write(segment, new byte[] { 0x4c, 0x41 }, StandardOpenOption.APPEND);
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 1 << 20, 1 << 16, 0.5, HOUR)) {
+            cache.put("c", image('c', 1000));
+            cache.flush();
+            assertEquals(2, cache.getStats().get("segments"));
+        }
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 1 << 20, 1 << 16, 0.5, HOUR)) {
+            assertEquals(3L, cache.getStats().get("recovered"));
+            assertArrayEquals(image('a', 1000).toByteArray(), cache.get("a").toByteArray());
+            assertArrayEquals(image('c', 1000).toByteArray(), cache.get("c").toByteArray());
+        }
+    }
+
+    @Test
+    void survivesInterruptedCallers() throws Exception {
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 1 << 20, 1 << 16, 0.5, HOUR)) {
+            cache.put("a", image('a', 1000));
+            cache.flush();
+
+            // Reads the segment being written to, which an interruptible channel would close.
+            Thread.currentThread().interrupt();
+            try {
+                assertNotNull(cache.get("a"));
+                cache.put("b", image('b', 1000));
+            } finally {
+                Thread.interrupted();
+            }
+            cache.flush();
+
+            assertNotNull(cache.get("a"));
+            assertNotNull(cache.get("b"));
+            cache.put("c", image('c', 1000));
+            cache.flush();
+            assertNotNull(cache.get("c"));
+            assertEquals(3L, cache.getStats().get("writes"));
+        }
+    }
+
+    @Test
+    void compactionMovesLiveRecordsAndDeletesDeadSegments() throws Exception {
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 20_000, 4_000, 0.5, HOUR)) {
+            // 1 KB records: the first segments are evicted by the time the twentieth is written.
+            for (int i = 0; i < 40; i++) {
+                cache.put("key" + i, image('x', 900));
+            }
+            cache.flush();
+            cache.compact();
+            assertAccountingHolds(cache);
+            assertNotNull(cache.get("key39"));
+            assertTrue((Long) cache.getStats().get("fileBytes") <= 20_000 + 2 * 4_000,
+                    "dead segments were kept: " + cache.getStats());
+        }
+    }
+
+    @Test
+    void evictionDuringCompactionDoesNotMoveTheEvictedRecord() throws Exception {
+        AtomicBoolean evicting = new AtomicBoolean(true);
+        // 932-byte records, three to a segment and ten to the cache.
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 10_000, 3_000, 0.1, HOUR) {
+            @Override
+            void beforeMoving(int records) {
+                if (evicting.getAndSet(false)) {
+                    assertEquals(2, records);
+                    // Evicts key1, which compaction has already listed as live.
+                    put("key11", image('x', 899));
+                    flushQuietly(this);
+                }
+            }
+        }) {
+            for (int i = 0; i <= 10; i++) {
+                cache.put("key" + i, image('x', i < 10 ? 900 : 899));
+            }
+            cache.flush();
+            assertFalse(cache.contains("key0"));
+
+            cache.compact();
+            assertFalse(evicting.get());
+            assertFalse(cache.contains("key1"));
+            assertNotNull(cache.get("key2"));
+            assertEquals(10, cache.getStats().get("entries"));
+            assertAccountingHolds(cache);
+        }
+    }
+
+    @Test
+    void staysConsistentWhileCompactingUnderLoad() throws Exception {
+        try (DiskRenderCache cache = new DiskRenderCache(dir, 10_000, 3_000, 0.01, HOUR)) {
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread compactor = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        cache.compact();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            compactor.start();
+            try {
+                for (int i = 0; i < 5_000; i++) {
+                    cache.put("key" + i, image((char) ('a' + i % 26), 400 + i % 300));
+                    cache.get("key" + (i - 5));
+                }
+            } finally {
+                done.set(true);
+                compactor.join();
+            }
+            cache.flush();
+            assertNull(failure.get());
+            assertAccountingHolds(cache);
+        }
+    }
+
+    private int segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return (int) files.count();
+        }
+    }
+
+    private static void flushQuietly(DiskRenderCache cache) {
+        try {
+            cache.flush();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void assertAccountingHolds(DiskRenderCache cache) {
+        long live = (Long) cache.getStats().get("bytes");
+        assertTrue(live <= (Long) cache.getStats().get("maxBytes"));
+        assertEquals(live, cache.segmentLiveBytes(), "segments account for records no key points to");
+    }
+
+    private static ImageBuffer image(char fill, int size) {
+        ImageBuffer image = new ImageBuffer();
+        image.setProperty("key", String.valueOf(fill));
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) fill);
+        image.write(bytes, 0, size);
+        return image;
+    }
+}
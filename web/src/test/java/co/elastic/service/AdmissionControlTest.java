@@ -0,0 +1,87 @@
+package co.elastic.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+class AdmissionControlTest {
+
+    /** 2 ms base cost; clients get a 100 ms burst that practically never refills. */
+    private static AdmissionControl admissionControl() {
+        return admissionControl(100);
+    }
+
+    private static AdmissionControl admissionControl(int maxClients) {
+        return new AdmissionControl(new SimpleMeterRegistry(), true, "", 2, 0.05, 1, 1, 0.01,
+                0.001, 100, maxClients, 1000, 10_000);
+    }
+
+    @Test
+    void chargesTheWorkDoneRatherThanTheTimeUntilClose() throws Exception {
+        AdmissionControl admissionControl = admissionControl();
+        AdmissionControl.Permit permit = admissionControl.admit("client", 100);
+        permit.addWork(TimeUnit.MILLISECONDS.toNanos(30));
+        permit.excludeWait(TimeUnit.MILLISECONDS.toNanos(20));
+        // Not working, e.g. waiting for the client to read the response.
+        Thread.sleep(200);
+        permit.close();
+
+        assertEquals(12L, admissionControl.getStats().get("actualMillis"));
+        // 100 - 12 left, so 88 fits and 89 doesn't.
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.admit("client", 89));
+        admissionControl.admit("client", 88).close();
+    }
+
+    @Test
+    void settlesAPermitOnce() {
+        AdmissionControl admissionControl = admissionControl();
+        AdmissionControl.Permit permit = admissionControl.admit("client", 50);
+        permit.close();
+        permit.close();
+        assertEquals(2L, admissionControl.getStats().get("actualMillis"));
+        admissionControl.admit("client", 98).close();
+    }
+
+    @Test
+    void forgetsTheLeastRecentlySeenClientAtTheCap() {
+        AdmissionControl admissionControl = admissionControl(2);
+        // The permits are left open, so the buckets stay drained.
+        admissionControl.admit("a", 100);
+        admissionControl.admit("b", 100);
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.admit("b", 50));
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.admit("a", 50));
+
+        // a came back last, so b is the one forgotten and starts over with a full bucket.
+        admissionControl.admit("c", 100);
+        assertEquals(2, admissionControl.getStats().get("clients"));
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.admit("a", 50));
+        admissionControl.admit("b", 100);
+    }
+
+    @Test
+    void chargesABodyBeyondItsAdmittedLengthAsItIsRead() throws Exception {
+        AdmissionControl admissionControl = admissionControl();
+        AdmissionControl.Permit permit = admissionControl.admit("client", 2);
+        char[] text = new char[1000];
+        Arrays.fill(text, 'a');
+        // Admitted for 200 characters, read twice over: 800 * 0.05 ms * 2 more.
+        try (Reader body = permit.meter(new StringReader(new String(text)), 200, 2)) {
+            char[] buffer = new char[64];
+            while (body.read(buffer, 0, buffer.length) >= 0) {
+                // Read it all.
+            }
+        }
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.admit("client", 19));
+
+        // Settled against everything charged, so the 80 ms are refunded along with the rest.
+        permit.close();
+        admissionControl.admit("client", 98).close();
+    }
+}
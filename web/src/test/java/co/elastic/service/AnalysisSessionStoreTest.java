@@ -0,0 +1,31 @@
+package co.elastic.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AnalysisSessionStoreTest {
+
+    private static final VisualizeRequest TEMPLATE = new VisualizeRequest("", "ko", "", null,
+            VisualizeRequest.BACKEND_SVG, null);
+
+    @Test
+    void turnsAwayNewSessionsOverTheCap() {
+        try (AnalysisSessionStore store = new AnalysisSessionStore(60_000, 1 << 20, 2)) {
+            AnalysisSession first = store.create(TEMPLATE);
+            store.create(TEMPLATE);
+
+            AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                    () -> store.create(TEMPLATE));
+            assertTrue(e.isOverloaded());
+            assertEquals(15L, e.getRetryAfterSeconds());
+            assertEquals(1L, store.getStats().get("rejected"));
+
+            store.remove(first.getId());
+            store.create(TEMPLATE);
+            assertEquals(2, store.getStats().get("sessions"));
+        }
+    }
+}
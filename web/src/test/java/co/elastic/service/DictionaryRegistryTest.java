@@ -0,0 +1,147 @@
+package co.elastic.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import co.elastic.CompiledUserDictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DictionaryRegistryTest {
+
+    private static final long SETTLE_MILLIS = 200;
+
+    private static final String KO = "세종시 세종 시\n";
+    private static final String KO_CHANGED = "세종시 세종 시\n행정수도 행정 수도\n";
+    /** The segmentation is longer than the surface form. */
+    private static final String KO_BROKEN = "세종시 세종시 시\n";
+    private static final String JA = "関西国際空港,関西 国際 空港,カンサイ コクサイ クウコウ,カスタム名詞\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTheDirectoryAtStartup() throws Exception {
+        write("cities.ko.txt", KO);
+        write("airports.ja.txt", JA);
+        write("notes.txt", "not a dictionary");
+
+        try (DictionaryRegistry registry = new DictionaryRegistry(directory, SETTLE_MILLIS)) {
+            assertNotNull(registry.get("ko", "cities"));
+            assertNotNull(registry.get("ja", "airports"));
+            assertNull(registry.get("ja", "cities"));
+            assertNull(registry.get("ko", "notes"));
+
+            List<Map<String, Object>> list = registry.list();
+            assertEquals(2, list.size());
+            assertEquals("airports", list.get(0).get("name"));
+            assertEquals("ja", list.get(0).get("language"));
+            assertEquals(1, list.get(0).get("version"));
+            assertEquals(CompiledUserDictionary.sha256(KO.getBytes(StandardCharsets.UTF_8)),
+                    list.get(1).get("hash"));
+            assertEquals(2L, registry.getStats().get("reloads"));
+        }
+    }
+
+    @Test
+    void swapsInAChangedFileOnceItSettles() throws Exception {
+        write("cities.ko.txt", KO);
+
+        try (DictionaryRegistry registry = new DictionaryRegistry(directory, SETTLE_MILLIS)) {
+            CompiledUserDictionary first = registry.get("ko", "cities");
+
+            // Written in steps closer together than the settle time, so only the last is compiled.
+            write("cities.ko.txt", KO_BROKEN);
+            Thread.sleep(SETTLE_MILLIS / 4);
+            write("cities.ko.txt", KO_CHANGED);
+            await(() -> registry.get("ko", "cities") != first);
+
+            CompiledUserDictionary second = registry.get("ko", "cities");
+            assertEquals(CompiledUserDictionary.sha256(KO_CHANGED.getBytes(StandardCharsets.UTF_8)), second.getHash());
+            assertEquals(2, registry.list().get(0).get("version"));
+            assertEquals(2L, registry.getStats().get("reloads"));
+            assertEquals(0L, registry.getStats().get("failures"));
+            // Whoever resolved the old version keeps it intact.
+            assertEquals(CompiledUserDictionary.sha256(KO.getBytes(StandardCharsets.UTF_8)), first.getHash());
+        }
+    }
+
+    @Test
+    void keepsTheWorkingVersionWhenAChangeFailsToCompile() throws Exception {
+        write("cities.ko.txt", KO);
+
+        try (DictionaryRegistry registry = new DictionaryRegistry(directory, SETTLE_MILLIS)) {
+            CompiledUserDictionary working = registry.get("ko", "cities");
+
+            write("cities.ko.txt", KO_BROKEN);
+            await(() -> registry.list().get(0).containsKey("error"));
+            assertSame(working, registry.get("ko", "cities"));
+            assertEquals(1, registry.list().get(0).get("version"));
+            assertEquals(working.getHash(), registry.list().get(0).get("hash"));
+            assertEquals(1L, registry.getStats().get("failures"));
+
+            // Changed back to the version in use: the error goes away without a recompile.
+            write("cities.ko.txt", KO);
+            await(() -> !registry.list().get(0).containsKey("error"));
+            assertSame(working, registry.get("ko", "cities"));
+            assertEquals(1, registry.list().get(0).get("version"));
+        }
+    }
+
+    @Test
+    void listsANewFileThatHasNeverCompiled() throws Exception {
+        try (DictionaryRegistry registry = new DictionaryRegistry(directory, SETTLE_MILLIS)) {
+            write("cities.ko.txt", KO_BROKEN);
+            await(() -> !registry.list().isEmpty());
+
+            Map<String, Object> entry = registry.list().get(0);
+            assertEquals("cities", entry.get("name"));
+            assertEquals(0, entry.get("version"));
+            assertTrue(entry.containsKey("error"));
+            assertFalse(entry.containsKey("hash"));
+            assertNull(registry.get("ko", "cities"));
+
+            write("cities.ko.txt", KO);
+            await(() -> registry.get("ko", "cities") != null);
+            entry = registry.list().get(0);
+            assertEquals(1, entry.get("version"));
+            assertFalse(entry.containsKey("error"));
+        }
+    }
+
+    @Test
+    void removesADeletedFile() throws Exception {
+        write("cities.ko.txt", KO);
+
+        try (DictionaryRegistry registry = new DictionaryRegistry(directory, SETTLE_MILLIS)) {
+            Files.delete(directory.resolve("cities.ko.txt"));
+            await(() -> registry.list().isEmpty());
+            assertNull(registry.get("ko", "cities"));
+        }
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        Files.write(directory.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the registry");
+            Thread.sleep(10);
+        }
+    }
+}